@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Hands over many small chunks to a fixed number of worker threads and
+ * compares the wait strategies of {@link BlockingQueueExecutor} with the
+ * previous implementation, which polled a queue bounded to twice the number
+ * of threads with a timeout of one second and checked a shared flag for
+ * termination.
+ *
+ * Run with {@code ./gradlew :core:jmh}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@OperationsPerInvocation( BlockingQueueExecutorBenchmark.NUM_CHUNKS )
+public class BlockingQueueExecutorBenchmark {
+    static final int NUM_CHUNKS = 10000;
+
+    @Param( { "2", "8" } )
+    public int numThreads;
+
+    private List<Integer> chunks;
+
+    @Setup
+    public void setUp() {
+        chunks = new ArrayList<>( NUM_CHUNKS );
+        for ( int i = 0; i < NUM_CHUNKS; i++ ) {
+            chunks.add( i );
+        }
+    }
+
+    @Benchmark
+    public long blocking() {
+        return run( QueueWaitStrategy.BLOCKING );
+    }
+
+    @Benchmark
+    public long spinThenBlock() {
+        return run( QueueWaitStrategy.SPIN_THEN_BLOCK );
+    }
+
+    @Benchmark
+    public long legacyPolling() throws InterruptedException {
+        final LongAdder sum = new LongAdder();
+        new LegacyPollingExecutor( numThreads, sum::add ).accept( chunks );
+        return sum.sum();
+    }
+
+    private long run( final QueueWaitStrategy waitStrategy ) {
+        final LongAdder sum = new LongAdder();
+        new BlockingQueueExecutor<Integer>(
+                numThreads, numThreads * 2, waitStrategy, TimeUnit.MINUTES.toMillis( 1 ), sum::add, new ThreadGroup( "bench" )
+        ).accept( chunks );
+        return sum.sum();
+    }
+
+    /**
+     * Copy of the hand-over loop of the previous implementation.
+     */
+    private static final class LegacyPollingExecutor {
+        private final int numThreads;
+        private final Consumer<Integer> processor;
+
+        LegacyPollingExecutor( final int numThreads, final Consumer<Integer> processor ) {
+            this.numThreads = numThreads;
+            this.processor = processor;
+        }
+
+        void accept( final Iterable<Integer> items ) throws InterruptedException {
+            final LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<>( numThreads * 2 );
+            final AtomicBoolean done = new AtomicBoolean();
+            final List<Thread> threads = new ArrayList<>( numThreads );
+            for ( int i = 0; i < numThreads; i++ ) {
+                final Thread t = new Thread( () -> {
+                    while ( true ) {
+                        final Integer item;
+                        try {
+                            item = queue.poll( 1, TimeUnit.SECONDS );
+                        } catch ( final InterruptedException e ) {
+                            return;
+                        }
+                        if ( item != null ) {
+                            processor.accept( item );
+                        } else if ( done.get() ) {
+                            return;
+                        }
+                    }
+                } );
+                threads.add( t );
+                t.start();
+            }
+            for ( final Integer item : items ) {
+                queue.put( item );
+            }
+            done.set( true );
+            for ( final Thread t : threads ) {
+                t.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes a chunk through a chain of five single item stages and compares the
+ * fused processing of {@link ComposedProcessor} with calling the stages one
+ * after another, which collects the output of each stage in a list.
+ * {@code fusedIterated} and {@code columnarIterated} also read each result,
+ * which compares the default fused chain with the columnar opt-in.
+ *
+ * Run with {@code ./gradlew :core:jmh}, add {@code -prof gc} to the JMH
+ * arguments to compare the allocation rates.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+public class SingleItemFusionBenchmark {
+    private static final int NUM_STAGES = 5;
+
+    @Param( { "100", "10000" } )
+    public int chunkSize;
+
+    private List<Result<Integer, Integer>> chunk;
+    private Processor<Integer, Integer, Integer> chained;
+    private Processor<Integer, Integer, Integer> columnar;
+    private List<Processor<?, ?, ?>> stages;
+
+    @Setup
+    public void setUp() {
+        chunk = new ArrayList<>( chunkSize );
+        for ( int i = 0; i < chunkSize; i++ ) {
+            chunk.add( Result.success( i, i ) );
+        }
+        Processor<Integer, Integer, Integer> processor = Processors.<Integer, Integer, Integer>singleItemFunction( ( final Integer i ) -> i + 1 );
+        for ( int i = 1; i < NUM_STAGES; i++ ) {
+            processor = processor.then( Processors.<Integer, Integer, Integer>singleItemFunction( ( final Integer v ) -> v + 1 ) );
+        }
+        chained = processor;
+        Processor<Integer, Integer, Integer> columnarProcessor = Processors.<Integer, Integer, Integer>columnarSingleItemFunction( ( final Integer i ) -> i + 1 );
+        for ( int i = 1; i < NUM_STAGES; i++ ) {
+            columnarProcessor = columnarProcessor.then( Processors.<Integer, Integer, Integer>columnarSingleItemFunction( ( final Integer v ) -> v + 1 ) );
+        }
+        columnar = columnarProcessor;
+        stages = ProcessorStages.flatten( processor );
+    }
+
+    @Benchmark
+    public Iterable<Result<Integer, Integer>> fused() {
+        return chained.process( chunk );
+    }
+
+    @Benchmark
+    public void fusedIterated( final Blackhole blackhole ) {
+        for ( final Result<Integer, Integer> result : chained.process( chunk ) ) {
+            blackhole.consume( result );
+        }
+    }
+
+    @Benchmark
+    public void columnarIterated( final Blackhole blackhole ) {
+        for ( final Result<Integer, Integer> result : columnar.process( chunk ) ) {
+            blackhole.consume( result );
+        }
+    }
+
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    @Benchmark
+    public Iterable<Result<Integer, Integer>> stageByStage() {
+        Iterable results = chunk;
+        for ( final Processor stage : stages ) {
+            results = stage.process( results );
+        }
+        return results;
+    }
+}
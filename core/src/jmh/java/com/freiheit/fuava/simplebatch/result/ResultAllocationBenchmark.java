@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per item of passing successful results without messages
+ * through a stage. {@code mapViaBuilder} copies the result with
+ * {@link Result.Builder}, like {@link Result#map(java.util.function.Function)}
+ * did before it got a fast path for successes without messages.
+ *
+ * Run with {@code ./gradlew :core:jmh} and add {@code -prof gc} to the JMH
+ * arguments: {@code gc.alloc.rate.norm} is the number of bytes allocated per
+ * item.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@OperationsPerInvocation( ResultAllocationBenchmark.NUM_ITEMS )
+public class ResultAllocationBenchmark {
+    static final int NUM_ITEMS = 1000;
+
+    private List<Result<Integer, Integer>> results;
+
+    @Setup
+    public void setUp() {
+        results = new ArrayList<>( NUM_ITEMS );
+        for ( int i = 0; i < NUM_ITEMS; i++ ) {
+            results.add( Result.success( i, i ) );
+        }
+    }
+
+    @Benchmark
+    public void map( final Blackhole blackhole ) {
+        for ( final Result<Integer, Integer> result : results ) {
+            blackhole.consume( result.map( i -> i + 1 ) );
+        }
+    }
+
+    @Benchmark
+    public void mapViaBuilder( final Blackhole blackhole ) {
+        for ( final Result<Integer, Integer> result : results ) {
+            blackhole.consume( Result.<Integer, Integer>builder()
+                    .withInput( result.getInput() )
+                    .withOutput( result.getOutput() + 1 )
+                    .withThrowables( result.getThrowables() )
+                    .withWarningMessages( result.getWarningMessages() )
+                    .withFailureMessages( result.getFailureMessages() )
+                    .success() );
+        }
+    }
+
+    @Benchmark
+    public void success( final Blackhole blackhole ) {
+        for ( final Result<Integer, Integer> result : results ) {
+            blackhole.consume( Result.success( result.getInput(), result.getOutput() + 1 ) );
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds a good chunk size while the job is running, using an
+ * additive-increase/multiplicative-decrease controller on the measured
+ * throughput (items per second) of each processed chunk.
+ *
+ * <ul>
+ * <li>As long as the throughput does not drop below the smoothed throughput
+ * of the previous chunks, the chunk size is increased by a fixed step.</li>
+ * <li>If the throughput drops, the chunk size is reduced by a quarter.</li>
+ * <li>If too many items of a chunk failed, the chunk size is halved: failing
+ * batches are usually retried item by item, so smaller chunks limit the cost
+ * of a failure.</li>
+ * </ul>
+ *
+ * The chunk size always stays within the configured bounds. Instances are
+ * thread safe, chunks may be reported from multiple worker threads.
+ */
+final class AdaptiveChunkSizer {
+    private static final Logger LOG = LoggerFactory.getLogger( AdaptiveChunkSizer.class );
+
+    /** More failures than this fraction of the chunk count as a failed chunk. */
+    static final double MAX_FAILURE_RATE = 0.1;
+    /** Throughput measurements are noisy, small drops are not reacted upon. */
+    static final double THROUGHPUT_TOLERANCE = 0.1;
+    static final double THROUGHPUT_DROP_FACTOR = 0.75;
+    static final double FAILURE_FACTOR = 0.5;
+    static final double SMOOTHING = 0.3;
+    static final int NUM_STEPS = 16;
+
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final int increaseStep;
+
+    private double chunkSize;
+    private double smoothedThroughput;
+
+    AdaptiveChunkSizer( final int initialChunkSize, final int minChunkSize, final int maxChunkSize ) {
+        if ( initialChunkSize <= 0 || minChunkSize <= 0 || maxChunkSize < minChunkSize ) {
+            throw new IllegalArgumentException( "Invalid bounds for the processing batch size [initial=" + initialChunkSize + ", min=" + minChunkSize + ", max=" + maxChunkSize + "]" );
+        }
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.increaseStep = Math.max( 1, ( maxChunkSize - minChunkSize ) / NUM_STEPS );
+        this.chunkSize = clamp( initialChunkSize );
+    }
+
+    /**
+     * The size for the next chunk.
+     */
+    synchronized int getChunkSize() {
+        return (int) chunkSize;
+    }
+
+    /**
+     * Adjust the chunk size according to the measurements of a processed
+     * chunk.
+     *
+     * @param numItems
+     *            the number of items in the chunk
+     * @param durationNanos
+     *            the time it took to process the chunk
+     * @param numFailed
+     *            the number of failed processing results
+     */
+    synchronized void onChunkProcessed( final int numItems, final long durationNanos, final long numFailed ) {
+        if ( numItems <= 0 ) {
+            return;
+        }
+        final double oldChunkSize = chunkSize;
+        final double throughput = numItems * 1e9 / Math.max( 1, durationNanos );
+
+        if ( numFailed > numItems * MAX_FAILURE_RATE ) {
+            chunkSize = clamp( chunkSize * FAILURE_FACTOR );
+        } else if ( smoothedThroughput == 0 || throughput >= smoothedThroughput * ( 1 - THROUGHPUT_TOLERANCE ) ) {
+            chunkSize = clamp( chunkSize + increaseStep );
+        } else {
+            chunkSize = clamp( chunkSize * THROUGHPUT_DROP_FACTOR );
+        }
+        smoothedThroughput = smoothedThroughput == 0
+            ? throughput
+            : smoothedThroughput + SMOOTHING * ( throughput - smoothedThroughput );
+
+        if ( LOG.isDebugEnabled() && (int) oldChunkSize != (int) chunkSize ) {
+            LOG.debug( "Changed processing batch size from {} to {} ({} items / s, {} of {} failed)", (int) oldChunkSize, (int) chunkSize, (long) throughput, numFailed, numItems );
+        }
+    }
+
+    private double clamp( final double size ) {
+        return Math.max( minChunkSize, Math.min( maxChunkSize, size ) );
+    }
+}
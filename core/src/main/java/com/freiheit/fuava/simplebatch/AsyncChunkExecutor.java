@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Starts the asynchronous processing of each chunk in the calling thread,
+ * allowing at most a fixed number of chunks to be in flight at the same time.
+ * The calling thread blocks while that limit is reached, and until all chunks
+ * were processed.
+ *
+ * No threads are created: the chunks are completed in whatever threads the
+ * asynchronous processor uses, for example the I/O threads of an HTTP client.
+ */
+final class AsyncChunkExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger( AsyncChunkExecutor.class );
+
+    private final int maxInFlightChunks;
+    private final long terminationTimeoutMs;
+
+    /**
+     * @param maxInFlightChunks
+     *            maximum number of chunks started, but not yet completed
+     * @param terminationTimeoutMs
+     *            maximum time to wait for all chunks to be processed
+     */
+    AsyncChunkExecutor( final int maxInFlightChunks, final long terminationTimeoutMs ) {
+        if ( maxInFlightChunks <= 0 ) {
+            throw new IllegalArgumentException( "The number of chunks in flight must be positive [maxInFlightChunks=" + maxInFlightChunks + "]" );
+        }
+        this.maxInFlightChunks = maxInFlightChunks;
+        this.terminationTimeoutMs = terminationTimeoutMs;
+    }
+
+    /**
+     * @param processor
+     *            starts processing a chunk, the returned stage completes when
+     *            the chunk was processed completely
+     */
+    <Chunk> void execute( final Iterable<Chunk> chunks, final Function<? super Chunk, ? extends CompletionStage<?>> processor ) {
+        final Semaphore inFlight = new Semaphore( maxInFlightChunks );
+        final long maxEndTime = System.currentTimeMillis() + terminationTimeoutMs;
+        int total = 0;
+        for ( final Chunk chunk : chunks ) {
+            try {
+                inFlight.acquire();
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                LOG.error( "Interruption while starting chunks. Will not start any more chunks - note that we only process the first " + total + " chunks", e );
+                break;
+            }
+            total++;
+            final CompletionStage<?> stage;
+            try {
+                stage = processor.apply( chunk );
+            } catch ( final Throwable t ) {
+                inFlight.release();
+                throw t;
+            }
+            stage.whenComplete( ( result, t ) -> {
+                inFlight.release();
+                if ( t != null ) {
+                    LOG.error( "FATAL: Exception went through the asynchronous processing of a chunk " + t.getMessage(), t );
+                }
+            } );
+        }
+
+        awaitCompletion( inFlight, maxEndTime );
+    }
+
+    private void awaitCompletion( final Semaphore inFlight, final long maxEndTime ) {
+        final long timeoutMs = Math.max( maxEndTime - System.currentTimeMillis(), TimeUnit.SECONDS.toMillis( 1 ) );
+        try {
+            if ( !inFlight.tryAcquire( maxInFlightChunks, timeoutMs, TimeUnit.MILLISECONDS ) ) {
+                throw new IllegalStateException( "Processing did not finish within time and was aborted. Timeout was " + terminationTimeoutMs + " ms " );
+            }
+            inFlight.release( maxInFlightChunks );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            LOG.error( "Interrupted while waiting for chunks to be processed - not all items might have been processed correctly", e );
+        }
+    }
+
+}
@@ -16,25 +16,51 @@
  */
 package com.freiheit.fuava.simplebatch;
 
+import com.freiheit.fuava.simplebatch.checkpoint.CheckpointStore;
+import com.freiheit.fuava.simplebatch.checkpoint.CompletedItems;
 import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
 import com.freiheit.fuava.simplebatch.fetch.Fetcher;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.AsyncProcessor;
 import com.freiheit.fuava.simplebatch.processor.Processor;
+import com.freiheit.fuava.simplebatch.processor.ProcessorStages;
+import com.freiheit.fuava.simplebatch.processor.Processors;
 import com.freiheit.fuava.simplebatch.processor.TimeLoggingProcessor;
+import com.freiheit.fuava.simplebatch.result.Counts;
 import com.freiheit.fuava.simplebatch.result.DelegatingProcessingResultListener;
 import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
 import com.freiheit.fuava.simplebatch.result.Result;
 import com.freiheit.fuava.simplebatch.result.ResultStatistics;
 import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import com.freiheit.fuava.simplebatch.util.RunContext;
+import com.freiheit.fuava.simplebatch.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
@@ -61,8 +87,11 @@ import java.util.stream.StreamSupport;
 public class BatchJob<OriginalInput, Output> {
     private static final Logger LOG = LoggerFactory.getLogger( BatchJob.class );
     public static final int TERMINATION_TIMEOUT_HOURS = 96;
+    public static final int DEFAULT_REORDER_WINDOW = 64;
     public static final int PANIC_VM_ERROR = 1;
 
+    private static final AtomicInteger ASYNC_JOB_COUNTER = new AtomicInteger();
+
     /**
      * A thread group implementation for batch jobs.
      */
@@ -89,23 +118,97 @@ public class BatchJob<OriginalInput, Output> {
     }
 
     /**
-     *
+     * Passes the processing results of the chunks to the listeners - in the
+     * order of fetching, if a reorder buffer is given.
+     */
+    private final class ResultDelivery {
+        private final DelegatingProcessingResultListener<OriginalInput, Output> listeners;
+        @Nullable
+        private final ReorderBuffer<Iterable<? extends Result<FetchedItem<OriginalInput>, Output>>> reorderBuffer;
+        private final AtomicLong sequenceNumbers = new AtomicLong();
+
+        private ResultDelivery( final DelegatingProcessingResultListener<OriginalInput, Output> listeners, @Nullable final Integer reorderWindow ) {
+            this.listeners = listeners;
+            this.reorderBuffer = reorderWindow == null
+                ? null
+                : new ReorderBuffer<>( reorderWindow.intValue(), listeners::onProcessingResults );
+        }
+
+        private boolean isOrdered() {
+            return reorderBuffer != null;
+        }
+
+        private long nextSequence() {
+            return reorderBuffer == null
+                ? sequenceNumbers.getAndIncrement()
+                : reorderBuffer.acquire();
+        }
+
+        private void onProcessingResults( final long sequence, final Iterable<? extends Result<FetchedItem<OriginalInput>, Output>> results ) {
+            if ( reorderBuffer == null ) {
+                listeners.onProcessingResults( results );
+            } else {
+                reorderBuffer.complete( sequence, results );
+            }
+        }
+
+        private void onProcessingFailed( final long sequence ) {
+            if ( reorderBuffer != null ) {
+                reorderBuffer.skip( sequence );
+            }
+        }
+    }
+
+    /**
+     * Processes a single chunk and passes the results to the listeners.
      */
-    private final class CallProcessor implements Consumer<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> {
+    private final class CallProcessor implements Consumer<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> {
         private final DelegatingProcessingResultListener<OriginalInput, Output> listeners;
+        private final ResultDelivery resultDelivery;
         private final PanicCallback panicCallback;
+        @Nullable
+        private final AdaptiveChunkSizer chunkSizer;
+        private final boolean speculative;
+        @Nullable
+        private final MemoryBudget memoryBudget;
 
-        private CallProcessor( final DelegatingProcessingResultListener<OriginalInput, Output> listeners, final PanicCallback panicCallback ) {
+        private CallProcessor( final DelegatingProcessingResultListener<OriginalInput, Output> listeners, final ResultDelivery resultDelivery,
+                final PanicCallback panicCallback, @Nullable final AdaptiveChunkSizer chunkSizer, final boolean speculative,
+                @Nullable final MemoryBudget memoryBudget ) {
             this.listeners = listeners;
+            this.resultDelivery = resultDelivery;
             this.panicCallback = Objects.requireNonNull( panicCallback );
+            this.chunkSizer = chunkSizer;
+            this.speculative = speculative;
+            this.memoryBudget = memoryBudget;
         }
 
         @Override
-        public void accept( final List<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceResults ) {
+        public void accept( final SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>> chunk ) {
+            // with speculative execution, only one of the attempts passes on the fetch results and its processing results
+            final boolean firstAttempt = !speculative || chunk.startAttempt();
+            boolean delivered = false;
+            boolean superseded = false;
             try {
-                listeners.onFetchResults( sourceResults );
-                final Iterable<? extends Result<FetchedItem<OriginalInput>, Output>> processingResults = persistence.process( sourceResults );
-                listeners.onProcessingResults( processingResults );
+                final List<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceResults = chunk.getItems();
+                if ( firstAttempt ) {
+                    listeners.onFetchResults( sourceResults );
+                }
+                final long startNanos = System.nanoTime();
+                Iterable<? extends Result<FetchedItem<OriginalInput>, Output>> processingResults = persistence.process( sourceResults );
+                if ( speculative && !chunk.completeAttempt() ) {
+                    LOG.debug( "Dropping the results of chunk {}, another attempt was faster", chunk.getSequence() );
+                    superseded = true;
+                    return;
+                }
+                if ( chunkSizer != null ) {
+                    final long durationNanos = System.nanoTime() - startNanos;
+                    // lazy iterables must not be iterated twice
+                    processingResults = IterableUtils.asList( processingResults );
+                    chunkSizer.onChunkProcessed( sourceResults.size(), durationNanos, countFailed( processingResults ) );
+                }
+                delivered = true;
+                resultDelivery.onProcessingResults( chunk.getSequence(), processingResults );
             } catch ( final VirtualMachineError e ) {
                 LOG.error( "FATAL: Exception went through the Processors. You need to ensure that this cannot happen, in order to achieve proper error handling " + e.getMessage(), e );
                 /*
@@ -114,19 +217,177 @@ public class BatchJob<OriginalInput, Output> {
                 panicCallback.panic( "Virtual Machine Error", PANIC_VM_ERROR );
             } catch ( final Throwable t ) {
                 LOG.error( "FATAL: Exception went through the Processors. You need to ensure that this cannot happen, in order to achieve proper error handling" + t.getMessage(), t );
+            } finally {
+                final boolean failed = !delivered && !superseded && ( !speculative || chunk.failAttempt() );
+                if ( memoryBudget != null && ( delivered || failed ) ) {
+                    memoryBudget.release( chunk.getWeight() );
+                }
+                if ( failed ) {
+                    resultDelivery.onProcessingFailed( chunk.getSequence() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the asynchronous processing of a single chunk, the results are
+     * passed to the listeners in the thread completing the processing.
+     */
+    private final class AsyncCallProcessor implements Function<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>, CompletionStage<Void>> {
+        private final DelegatingProcessingResultListener<OriginalInput, Output> listeners;
+        private final ResultDelivery resultDelivery;
+        private final PanicCallback panicCallback;
+        @Nullable
+        private final AdaptiveChunkSizer chunkSizer;
+        @Nullable
+        private final MemoryBudget memoryBudget;
+        // the processing stages complete in threads of their own
+        @Nullable
+        private final RunContext runContext = RunContext.current();
+
+        private AsyncCallProcessor( final DelegatingProcessingResultListener<OriginalInput, Output> listeners, final ResultDelivery resultDelivery,
+                final PanicCallback panicCallback, @Nullable final AdaptiveChunkSizer chunkSizer, @Nullable final MemoryBudget memoryBudget ) {
+            this.listeners = listeners;
+            this.resultDelivery = resultDelivery;
+            this.panicCallback = Objects.requireNonNull( panicCallback );
+            this.chunkSizer = chunkSizer;
+            this.memoryBudget = memoryBudget;
+        }
+
+        @Override
+        public CompletionStage<Void> apply( final SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>> chunk ) {
+            final List<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceResults = chunk.getItems();
+            try {
+                listeners.onFetchResults( sourceResults );
+            } catch ( final Throwable t ) {
+                // complete the chunk as if the stage failed
+                onCompletion( chunk, System.nanoTime(), null, t );
+                return CompletableFuture.completedFuture( null );
+            }
+            // processAsync may do part of the work before it returns the stage
+            final long startNanos = System.nanoTime();
+            final CompletionStage<Iterable<Result<FetchedItem<OriginalInput>, Output>>> processingStage;
+            try {
+                processingStage = asyncProcessor.processAsync( sourceResults );
+            } catch ( final Throwable t ) {
+                onCompletion( chunk, startNanos, null, t );
+                return CompletableFuture.completedFuture( null );
+            }
+            return processingStage.handle( ( processingResults, t ) -> {
+                if ( runContext == null ) {
+                    onCompletion( chunk, startNanos, processingResults, t );
+                } else {
+                    runContext.run( () -> onCompletion( chunk, startNanos, processingResults, t ) );
+                }
+                return null;
+            } );
+        }
+
+        private void onCompletion( final SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>> chunk, final long startNanos,
+                @Nullable final Iterable<Result<FetchedItem<OriginalInput>, Output>> processingResults, @Nullable final Throwable throwable ) {
+            boolean delivered = false;
+            try {
+                Iterable<Result<FetchedItem<OriginalInput>, Output>> results = throwable == null
+                    ? processingResults
+                    : failAll( chunk.getItems(), throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable );
+                if ( chunkSizer != null ) {
+                    final long durationNanos = System.nanoTime() - startNanos;
+                    // lazy iterables must not be iterated twice
+                    results = IterableUtils.asList( results );
+                    chunkSizer.onChunkProcessed( chunk.getItems().size(), durationNanos, countFailed( results ) );
+                }
+                delivered = true;
+                resultDelivery.onProcessingResults( chunk.getSequence(), results );
+            } catch ( final VirtualMachineError e ) {
+                LOG.error( "FATAL: Exception went through the Processors. You need to ensure that this cannot happen, in order to achieve proper error handling " + e.getMessage(), e );
+                panicCallback.panic( "Virtual Machine Error", PANIC_VM_ERROR );
+            } catch ( final Throwable t ) {
+                LOG.error( "FATAL: Exception went through the Processors. You need to ensure that this cannot happen, in order to achieve proper error handling" + t.getMessage(), t );
+            } finally {
+                if ( memoryBudget != null ) {
+                    memoryBudget.release( chunk.getWeight() );
+                }
+                if ( !delivered ) {
+                    resultDelivery.onProcessingFailed( chunk.getSequence() );
+                }
+            }
+        }
+
+        private List<Result<FetchedItem<OriginalInput>, Output>> failAll( final List<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceResults,
+                final Throwable throwable ) {
+            return sourceResults.stream()
+                    .map( result -> Result.<FetchedItem<OriginalInput>, Output>builder( result ).failed( throwable ) )
+                    .collect( Collectors.toList() );
+        }
+    }
+
+    /**
+     * A chunk passing through the stages of a pipeline, see
+     * {@link Builder#setPipelineStageThreads(List)}.
+     */
+    private static final class PipelinedChunk {
+        private final long sequence;
+        private final int numItems;
+        private Iterable<?> values;
+        private long processingNanos;
+        private long weight;
+
+        private PipelinedChunk( final SequencedChunk<?> chunk ) {
+            this.sequence = chunk.getSequence();
+            this.numItems = chunk.getItems().size();
+            this.values = chunk.getItems();
+            this.weight = chunk.getWeight();
+        }
+
+        /**
+         * Returns the weight of this chunk to the memory budget - only once,
+         * even if a failing sink leads to the chunk being dropped afterwards.
+         */
+        private void releaseWeight( @Nullable final MemoryBudget memoryBudget ) {
+            if ( memoryBudget != null ) {
+                memoryBudget.release( this.weight );
             }
+            this.weight = 0;
+        }
+
+        @SuppressWarnings( { "unchecked", "rawtypes" } )
+        private PipelinedChunk process( final Processor stage ) {
+            final long startNanos = System.nanoTime();
+            this.values = stage.process( this.values );
+            this.processingNanos += System.nanoTime() - startNanos;
+            return this;
         }
     }
 
     public static class Builder<OriginalInput, Output> {
         private int processingBatchSize = 1000;
+        private Integer minProcessingBatchSize = null;
+        private Integer maxProcessingBatchSize = null;
         private boolean parallel = false;
         private Integer numParallelThreads = null;
+        private Integer queueCapacity = null;
+        private QueueWaitStrategy queueWaitStrategy = QueueWaitStrategy.BLOCKING;
         private int parallelTerminationTimeoutHours = TERMINATION_TIMEOUT_HOURS;
         private boolean printFinalTimeMeasures = true;
+        private ExecutionStrategy executionStrategy;
+        private List<Integer> pipelineStageThreads;
+        private boolean preserveOrder = false;
+        private int reorderWindow = DEFAULT_REORDER_WINDOW;
+        private Function<? super OriginalInput, ?> partitionKey;
+        private CheckpointStore checkpointStore;
+        private int shardIndex = 0;
+        private int shardCount = 1;
+        private Function<? super OriginalInput, ?> shardKey;
+        private Double speculationPercentile;
+        private Weigher<? super OriginalInput> weigher;
+        private long maxInFlightWeight;
         private Fetcher<OriginalInput> fetcher;
         private PanicCallback panicCallback;
         private Processor<FetchedItem<OriginalInput>, OriginalInput, Output> processor;
+        private AsyncProcessor<FetchedItem<OriginalInput>, OriginalInput, Output> asyncProcessor;
+        private int maxInFlightChunks;
 
         private final ArrayList<ProcessingResultListener<OriginalInput, Output>> listeners =
                 new ArrayList<>();
@@ -192,6 +453,265 @@ public class BatchJob<OriginalInput, Output> {
             return numParallelThreads;
         }
 
+        /**
+         * The maximum number of chunks waiting for one of the threads set with
+         * {@link #setNumParallelThreads(Integer)}. If set to null, twice the number
+         * of threads is used.
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setQueueCapacity( final Integer queueCapacity ) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public Integer getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * How the threads set with {@link #setNumParallelThreads(Integer)} wait for
+         * the next chunk. Default is {@link QueueWaitStrategy#BLOCKING}.
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setQueueWaitStrategy( final QueueWaitStrategy queueWaitStrategy ) {
+            this.queueWaitStrategy = Objects.requireNonNull( queueWaitStrategy );
+            return this;
+        }
+
+        public QueueWaitStrategy getQueueWaitStrategy() {
+            return queueWaitStrategy;
+        }
+
+
+        /**
+         * The strategy deciding on which threads the chunks are processed, for
+         * example {@link ExecutionStrategies#virtualThreads(int)}. If set, this
+         * takes precedence over {@link #setParallel(boolean)} and
+         * {@link #setNumParallelThreads(Integer)}, but not over
+         * {@link #setPipelineStageThreads(List)}.
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setExecutionStrategy( final ExecutionStrategy executionStrategy ) {
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        public ExecutionStrategy getExecutionStrategy() {
+            return executionStrategy;
+        }
+
+        /**
+         * Process the stages of the processor (see {@link Processor#then(Processor)})
+         * in a pipeline: each stage gets its own threads and a bounded queue of
+         * chunks waiting for them, so for example downloading, converting and
+         * persisting of different chunks overlap. The queue capacity is set with
+         * {@link #setQueueCapacity(Integer)}, if null it is twice the number of
+         * threads of the stage.
+         *
+         * If set, this takes precedence over {@link #setExecutionStrategy(ExecutionStrategy)},
+         * {@link #setParallel(boolean)} and {@link #setNumParallelThreads(Integer)}.
+         *
+         * @param numThreadsPerStage the number of threads for each stage, in the
+         *            order of the stages. Stages without an entry get one thread.
+         *            Pass null to disable pipelined processing.
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setPipelineStageThreads( final List<Integer> numThreadsPerStage ) {
+            this.pipelineStageThreads = numThreadsPerStage == null
+                ? null
+                : new ArrayList<>( numThreadsPerStage );
+            return this;
+        }
+
+        public List<Integer> getPipelineStageThreads() {
+            return pipelineStageThreads;
+        }
+
+        /**
+         * Set to true to pass the processing results to the listeners in the
+         * order of fetching, even if the chunks are processed in parallel.
+         * Results of chunks which finished early are kept until all previous
+         * chunks were passed on. The fetch results are still passed on in the
+         * order of processing.
+         *
+         * Execution strategies set with {@link #setExecutionStrategy(ExecutionStrategy)}
+         * must not fetch more chunks ahead than allowed by {@link #setReorderWindow(int)}
+         * before processing them.
+         *
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setPreserveOrder( final boolean preserveOrder ) {
+            this.preserveOrder = preserveOrder;
+            return this;
+        }
+
+        public boolean isPreserveOrder() {
+            return preserveOrder;
+        }
+
+        /**
+         * The maximum number of chunks fetched ahead of the oldest chunk whose
+         * results were not yet passed to the listeners, if {@link #setPreserveOrder(boolean)}
+         * is used. Fetching blocks while this number is reached, which caps the
+         * memory used for results waiting to be passed on. Default is
+         * {@value BatchJob#DEFAULT_REORDER_WINDOW}.
+         *
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setReorderWindow( final int reorderWindow ) {
+            this.reorderWindow = reorderWindow;
+            return this;
+        }
+
+        public int getReorderWindow() {
+            return reorderWindow;
+        }
+
+        /**
+         * Process items with the same key one after another, while items with
+         * different keys are still processed in parallel. Use this if
+         * processing items with the same key concurrently leads to lock
+         * contention, e. g. because they update the same database rows.
+         *
+         * The items are distributed by the hash code of their key to a fixed
+         * number of lanes, each with a single thread: the number of threads set
+         * with {@link #setNumParallelThreads(Integer)}, or the number of
+         * available processors. Chunks only contain items of the same lane.
+         * Failed fetch results are distributed by their row number.
+         *
+         * Applies only if {@link #setParallel(boolean)} is true, and neither
+         * {@link #setExecutionStrategy(ExecutionStrategy)} nor
+         * {@link #setPipelineStageThreads(List)} is used.
+         *
+         * @param partitionKey extracts the key from a fetched item, must not throw. Pass null to disable.
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setPartitionKey( final Function<? super OriginalInput, ?> partitionKey ) {
+            this.partitionKey = partitionKey;
+            return this;
+        }
+
+        public Function<? super OriginalInput, ?> getPartitionKey() {
+            return partitionKey;
+        }
+
+        /**
+         * Record the successfully processed items in the given store, and skip
+         * the items recorded by previous runs. Use this for long running jobs,
+         * which otherwise would have to start from the first item after they
+         * were aborted. The store is cleared when a run finishes.
+         *
+         * Items are identified by their row number (see {@link FetchedItem#getNum()}),
+         * so the fetcher must return the same items in the same order on each
+         * run. Skipped items are not passed to the listeners. The store is
+         * written asynchronously, so after an abort the most recent items may
+         * be processed again.
+         *
+         * @param checkpointStore for example a {@link com.freiheit.fuava.simplebatch.checkpoint.FileCheckpointStore}. Pass null to disable.
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setCheckpointStore( final CheckpointStore checkpointStore ) {
+            this.checkpointStore = checkpointStore;
+            return this;
+        }
+
+        public CheckpointStore getCheckpointStore() {
+            return checkpointStore;
+        }
+
+        /**
+         * Process only one shard of the fetched items, so several instances of
+         * this job - for example on different machines - can share the work
+         * without further coordination. All instances need to use the same
+         * fetcher and key function, and a different shard index. The statistics
+         * of all instances can be combined with {@link ResultStatistics#merge(Iterable)}.
+         *
+         * See {@link Fetchers#sharded(Fetcher, int, int, Function)} for details.
+         *
+         * @param shardIndex the shard of this instance, from 0 to shardCount - 1
+         * @param shardCount the number of instances sharing the items. Pass 1 to disable.
+         * @param shardKey extracts the key deciding on the shard of an item,
+         *            must not throw. The string representation of the key must
+         *            be the same on all instances.
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setShard( final int shardIndex, final int shardCount, final Function<? super OriginalInput, ?> shardKey ) {
+            this.shardIndex = shardIndex;
+            this.shardCount = shardCount;
+            this.shardKey = shardKey;
+            return this;
+        }
+
+        public int getShardIndex() {
+            return shardIndex;
+        }
+
+        public int getShardCount() {
+            return shardCount;
+        }
+
+        public Function<? super OriginalInput, ?> getShardKey() {
+            return shardKey;
+        }
+
+        /**
+         * Process chunks speculatively: if a chunk takes longer than the given
+         * percentile of the durations of the recently completed chunks, an idle
+         * thread processes it a second time, and the results of the attempt
+         * finishing first are used. This limits the effect of single chunks
+         * stuck on a slow backend on the total duration of the job, at the
+         * expense of processing some chunks twice.
+         *
+         * Requires an idempotent processor (see {@link Processor#isIdempotent()}
+         * and {@link com.freiheit.fuava.simplebatch.processor.Processors#idempotent(Processor)}).
+         * Applies only if {@link #setNumParallelThreads(Integer)} is used, and
+         * neither {@link #setExecutionStrategy(ExecutionStrategy)},
+         * {@link #setPipelineStageThreads(List)} nor {@link #setPartitionKey(Function)}.
+         *
+         * @param percentile for example 0.95. Pass null to disable.
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setSpeculationPercentile( final Double percentile ) {
+            this.speculationPercentile = percentile;
+            return this;
+        }
+
+        public Double getSpeculationPercentile() {
+            return speculationPercentile;
+        }
+
+        /**
+         * Limit the memory used by the chunks in flight: fetching blocks while
+         * the total weight of the chunks which were fetched but whose results
+         * were not yet passed to the listeners exceeds the given budget. A
+         * single chunk exceeding the budget is processed alone.
+         *
+         * This is more robust than limiting the number of chunks in flight if
+         * the size of the items varies a lot, for example with files of a few
+         * KB to several hundred MB.
+         *
+         * Applies to all kinds of processing, but custom execution strategies
+         * set with {@link #setExecutionStrategy(ExecutionStrategy)} must not
+         * fetch several chunks ahead before processing them - like
+         * {@link ExecutionStrategies#parallelStreams()} does.
+         *
+         * @param weigher estimates the memory needed for an item, usually in bytes. Pass null to disable.
+         * @param maxInFlightWeight the maximum total weight of the items in flight
+         * @return this for method chaining
+         */
+        public Builder<OriginalInput, Output> setMemoryBudget( final Weigher<? super OriginalInput> weigher, final long maxInFlightWeight ) {
+            this.weigher = weigher;
+            this.maxInFlightWeight = maxInFlightWeight;
+            return this;
+        }
+
+        public Weigher<? super OriginalInput> getWeigher() {
+            return weigher;
+        }
+
+        public long getMaxInFlightWeight() {
+            return maxInFlightWeight;
+        }
 
         public boolean isPrintFinalTimeMeasures() {
             return printFinalTimeMeasures;
@@ -215,6 +735,29 @@ public class BatchJob<OriginalInput, Output> {
             return this;
         }
 
+        /**
+        * Let the job find the best processing batch size while running: the
+        * size of each chunk is adjusted within the given bounds, depending on the
+        * measured throughput and failure rate of the previous chunks. The value of
+        * {@link #setProcessingBatchSize(int)} is used for the first chunk.
+        *
+        * Pass null for both values to use the fixed processing batch size again.
+        * @return this for method chaining
+        */
+        public Builder<OriginalInput, Output> setAdaptiveProcessingBatchSize( final Integer minProcessingBatchSize, final Integer maxProcessingBatchSize ) {
+            this.minProcessingBatchSize = minProcessingBatchSize;
+            this.maxProcessingBatchSize = maxProcessingBatchSize;
+            return this;
+        }
+
+        public Integer getMinProcessingBatchSize() {
+            return minProcessingBatchSize;
+        }
+
+        public Integer getMaxProcessingBatchSize() {
+            return maxProcessingBatchSize;
+        }
+
         /**
         * The fetcher that produces the items to process. Should be fast
         * @return this for method chaining
@@ -234,6 +777,7 @@ public class BatchJob<OriginalInput, Output> {
         */
         public Builder<OriginalInput, Output> setProcessor( final Processor<FetchedItem<OriginalInput>, OriginalInput, Output> writer ) {
             this.processor = writer;
+            this.asyncProcessor = null;
             return this;
         }
 
@@ -241,6 +785,40 @@ public class BatchJob<OriginalInput, Output> {
             return processor;
         }
 
+        /**
+        * Process the chunks with an asynchronous processor instead of the
+        * processor set with {@link #setProcessor(Processor)}: the processing of
+        * each chunk is started in the calling thread, and the results are passed
+        * on in the thread completing the processing - without any worker threads
+        * waiting for I/O. {@link #setParallel(boolean)},
+        * {@link #setNumParallelThreads(Integer)}, {@link #setPartitionKey(Function)}
+        * and {@link #setSpeculationPercentile(Double)} do not apply.
+        *
+        * If {@link #setExecutionStrategy(ExecutionStrategy)} or
+        * {@link #setPipelineStageThreads(List)} is used, the threads of the job
+        * wait for the results of the processor, see {@link Processors#blocking(AsyncProcessor)}.
+        *
+        * @param maxInFlightChunks the maximum number of chunks being processed at the same time. Fetching blocks while this number is reached.
+        * @return this for method chaining
+        */
+        public Builder<OriginalInput, Output> setAsyncProcessor( final AsyncProcessor<FetchedItem<OriginalInput>, OriginalInput, Output> asyncProcessor,
+                final int maxInFlightChunks ) {
+            this.processor = asyncProcessor == null
+                ? null
+                : Processors.blocking( asyncProcessor );
+            this.asyncProcessor = asyncProcessor;
+            this.maxInFlightChunks = maxInFlightChunks;
+            return this;
+        }
+
+        public AsyncProcessor<FetchedItem<OriginalInput>, OriginalInput, Output> getAsyncProcessor() {
+            return asyncProcessor;
+        }
+
+        public int getMaxInFlightChunks() {
+            return maxInFlightChunks;
+        }
+
         /**
         * Add a listener to call when processing events happen
         * @return this for method chaining
@@ -283,8 +861,31 @@ public class BatchJob<OriginalInput, Output> {
         }
 
         public BatchJob<OriginalInput, Output> build() {
+            return build( listeners );
+        }
+
+        /**
+         * Builds a job which also calls the given listener, without adding the
+         * listener to this builder.
+         */
+        BatchJob<OriginalInput, Output> buildWithListener( final ProcessingResultListener<OriginalInput, Output> listener ) {
+            final List<ProcessingResultListener<OriginalInput, Output>> allListeners = new ArrayList<>( listeners.size() + 1 );
+            allListeners.addAll( listeners );
+            allListeners.add( listener );
+            return build( allListeners );
+        }
+
+        private BatchJob<OriginalInput, Output> build( final List<ProcessingResultListener<OriginalInput, Output>> listeners ) {
             final PanicCallback panicCallback = getPanicCallback();
-            return new BatchJob<>( description, processingBatchSize, parallel, numParallelThreads, parallelTerminationTimeoutHours, fetcher, processor, printFinalTimeMeasures, listeners, panicCallback );
+            final Fetcher<OriginalInput> fetcher = shardCount == 1
+                ? this.fetcher
+                : Fetchers.sharded( this.fetcher, shardIndex, shardCount, shardKey );
+            return new BatchJob<>( description, processingBatchSize, minProcessingBatchSize, maxProcessingBatchSize, parallel, numParallelThreads, queueCapacity,
+                    queueWaitStrategy, parallelTerminationTimeoutHours, executionStrategy, pipelineStageThreads, preserveOrder
+                        ? Integer.valueOf( reorderWindow )
+                        : null,
+                    partitionKey, checkpointStore, speculationPercentile, weigher, maxInFlightWeight, fetcher, processor, asyncProcessor, maxInFlightChunks,
+                    printFinalTimeMeasures, listeners, panicCallback );
         }
 
         public PanicCallback getPanicCallback() {
@@ -298,10 +899,24 @@ public class BatchJob<OriginalInput, Output> {
     }
 
     private final int processingBatchSize;
+    private final Integer minProcessingBatchSize;
+    private final Integer maxProcessingBatchSize;
     private final boolean parallel;
     private final Integer numParallelThreads;
+    private final Integer queueCapacity;
+    private final QueueWaitStrategy queueWaitStrategy;
+    private final ExecutionStrategy executionStrategy;
+    private final List<Integer> pipelineStageThreads;
+    private final Integer reorderWindow;
+    private final Function<? super OriginalInput, ?> partitionKey;
+    private final CheckpointStore checkpointStore;
+    private final Double speculationPercentile;
+    private final Weigher<? super OriginalInput> weigher;
+    private final long maxInFlightWeight;
     private final Fetcher<OriginalInput> fetcher;
     private final Processor<FetchedItem<OriginalInput>, OriginalInput, Output> persistence;
+    private final AsyncProcessor<FetchedItem<OriginalInput>, OriginalInput, Output> asyncProcessor;
+    private final int maxInFlightChunks;
 
     private final List<ProcessingResultListener<OriginalInput, Output>> listeners;
     private final String description;
@@ -353,14 +968,97 @@ public class BatchJob<OriginalInput, Output> {
             final boolean printFinalTimeMeasures,
             final List<ProcessingResultListener<OriginalInput, Output>> listeners,
             final PanicCallback panicCallback
+    ) {
+        this( description, processingBatchSize, null, null, parallel, numParallelThreads, null, QueueWaitStrategy.BLOCKING, parallelTerminationTimeoutHours, null,
+                null, null, null, null, null, null, 0, fetcher, processor, null, 0, printFinalTimeMeasures, listeners, panicCallback );
+    }
+
+    /**
+     * @param description The Description of the job
+     * @param processingBatchSize How many items from the fetcher are put together in one chunk and processed together
+     * @param minProcessingBatchSize If not null, the lower bound for the adaptive processing batch size
+     * @param maxProcessingBatchSize If not null, the upper bound for the adaptive processing batch size
+     * @param parallel false: process in current thread. true: use multiple Threads for processing (each chunk is thread confined though)
+     * @param numParallelThreads the number of threads to use for parallel processing. If null and parallel is set to true, Java 8 parallel streaming will be used.
+     * @param queueCapacity the maximum number of chunks waiting for one of the numParallelThreads threads. If null, twice the number of threads.
+     * @param queueWaitStrategy how the numParallelThreads threads wait for chunks
+     * @param executionStrategy decides on which threads the chunks are processed. If not null, parallel and numParallelThreads are ignored.
+     * @param pipelineStageThreads if not null, the stages of the processor are processed in a pipeline with the given number of threads per stage. Takes precedence over executionStrategy.
+     * @param reorderWindow if not null, the processing results are passed to the listeners in the order of fetching, with at most this number of chunks fetched ahead
+     * @param partitionKey if not null and processing is parallel, items with the same key are processed one after another
+     * @param checkpointStore if not null, successfully processed items are recorded in this store and skipped by the next run
+     * @param speculationPercentile if not null, chunks taking longer than this percentile of the recent chunk durations are processed a second time by an idle thread. Requires an idempotent processor.
+     * @param weigher if not null, fetching blocks while the total weight of the items in flight exceeds maxInFlightWeight
+     * @param maxInFlightWeight the memory budget for the items in flight, ignored if weigher is null
+     * @param fetcher The fetcher that produces the items to process. Should be fast
+     * @param processor The processor for processing chunks of items which were produced by the fetcher. May be slow.
+     * @param asyncProcessor if not null, chunks are processed with this processor without waiting for the results in a thread of the job - unless executionStrategy or pipelineStageThreads are set
+     * @param maxInFlightChunks the maximum number of chunks processed by the asyncProcessor at the same time
+     * @param printFinalTimeMeasures Wether or not the final performance measures should be printed after run has finished
+     * @param listeners Listeners to call when processing events happen
+     */
+    protected BatchJob(
+            final String description,
+            final int processingBatchSize,
+            final Integer minProcessingBatchSize,
+            final Integer maxProcessingBatchSize,
+            final boolean parallel,
+            final Integer numParallelThreads,
+            final Integer queueCapacity,
+            final QueueWaitStrategy queueWaitStrategy,
+            final int parallelTerminationTimeoutHours,
+            final ExecutionStrategy executionStrategy,
+            final List<Integer> pipelineStageThreads,
+            final Integer reorderWindow,
+            final Function<? super OriginalInput, ?> partitionKey,
+            @Nullable final CheckpointStore checkpointStore,
+            @Nullable final Double speculationPercentile,
+            @Nullable final Weigher<? super OriginalInput> weigher,
+            final long maxInFlightWeight,
+            final Fetcher<OriginalInput> fetcher,
+            final Processor<FetchedItem<OriginalInput>, OriginalInput, Output> processor,
+            @Nullable final AsyncProcessor<FetchedItem<OriginalInput>, OriginalInput, Output> asyncProcessor,
+            final int maxInFlightChunks,
+            final boolean printFinalTimeMeasures,
+            final List<ProcessingResultListener<OriginalInput, Output>> listeners,
+            final PanicCallback panicCallback
     ) {
         this.description = description;
         this.processingBatchSize = processingBatchSize;
+        this.minProcessingBatchSize = minProcessingBatchSize;
+        this.maxProcessingBatchSize = maxProcessingBatchSize;
+        // fail on build instead of the first run if the bounds are invalid
+        createChunkSizer();
         this.parallel = parallel;
         this.numParallelThreads = numParallelThreads;
+        this.queueCapacity = queueCapacity;
+        this.queueWaitStrategy = Objects.requireNonNull( queueWaitStrategy, "Queue Wait Strategy must be set" );
         this.parallelTerminationTimeoutHours = parallelTerminationTimeoutHours;
+        this.executionStrategy = executionStrategy;
+        this.pipelineStageThreads = pipelineStageThreads == null
+            ? null
+            : new ArrayList<>( pipelineStageThreads );
+        this.reorderWindow = reorderWindow;
+        this.partitionKey = partitionKey;
+        this.checkpointStore = checkpointStore;
+        if ( speculationPercentile != null && processor != null && !processor.isIdempotent() ) {
+            throw new IllegalArgumentException( "Speculative execution requires an idempotent processor, see Processors.idempotent()" );
+        }
+        this.speculationPercentile = speculationPercentile;
+        if ( weigher != null && maxInFlightWeight <= 0 ) {
+            throw new IllegalArgumentException( "The memory budget must be positive [maxInFlightWeight=" + maxInFlightWeight + "]" );
+        }
+        this.weigher = weigher;
+        this.maxInFlightWeight = maxInFlightWeight;
         this.fetcher = fetcher;
-        this.persistence = processor;
+        if ( asyncProcessor != null && maxInFlightChunks <= 0 ) {
+            throw new IllegalArgumentException( "The number of chunks in flight must be positive [maxInFlightChunks=" + maxInFlightChunks + "]" );
+        }
+        this.persistence = processor == null && asyncProcessor != null
+            ? Processors.blocking( asyncProcessor )
+            : processor;
+        this.asyncProcessor = asyncProcessor;
+        this.maxInFlightChunks = maxInFlightChunks;
         this.printFinalTimeMeasures = printFinalTimeMeasures;
         this.listeners = new ArrayList<>( listeners );
         this.panicCallback = Objects.requireNonNull( panicCallback, "Panic Callback must be set" );
@@ -372,17 +1070,75 @@ public class BatchJob<OriginalInput, Output> {
 
     @CheckReturnValue
     public ResultStatistics run() {
+        return run( null, () -> false );
+    }
+
+    /**
+     * Run the job in a new thread.
+     *
+     * @return a handle for the progress, cancellation and result of the job
+     */
+    @CheckReturnValue
+    public BatchJobHandle runAsync() {
+        final String threadName = "SBJob_" + StringUtils.padStart( Integer.toString( ASYNC_JOB_COUNTER.getAndIncrement() ), 2, '0' );
+        return runAsync( command -> {
+            final Thread t = new Thread( command, threadName );
+            t.setDaemon( false /* VM should not exit while this thread is still alive */ );
+            t.start();
+        } );
+    }
+
+    /**
+     * Run the job with the given executor. The executor only runs the job
+     * itself, the chunks are processed as configured for this job.
+     *
+     * @return a handle for the progress, cancellation and result of the job
+     */
+    @CheckReturnValue
+    public BatchJobHandle runAsync( final Executor executor ) {
+        final BatchJobHandle handle = new BatchJobHandle();
+        final ProcessingResultListener<OriginalInput, Output> progressListener = handle.createProgressListener();
+        executor.execute( () -> {
+            try {
+                handle.complete( run( progressListener, handle::isCancelled ) );
+            } catch ( final Throwable t ) {
+                handle.completeExceptionally( t );
+                if ( t instanceof VirtualMachineError ) {
+                    throw t;
+                }
+            }
+        } );
+        return handle;
+    }
+
+    private ResultStatistics run( @Nullable final ProcessingResultListener<OriginalInput, Output> progressListener, final BooleanSupplier isCancelled ) {
         final ResultStatistics.Builder<OriginalInput, Output> resultBuilder = ResultStatistics.builder();
+        // the time logging processor counts over all runs, only the counts of this run are reported
+        final Map<String, Counts> stageCountsBefore = this.persistence instanceof TimeLoggingProcessor
+            ? ( (TimeLoggingProcessor<?, ?, ?>) this.persistence ).getStageResultCounts()
+            : null;
 
-        final List<ProcessingResultListener<OriginalInput, Output>> listOfListeners = new ArrayList<>( this.listeners.size() + 1 );
+        final CompletedItems completedItems = loadCompletedItems();
+        final CheckpointWriter<OriginalInput, Output> checkpointWriter = this.checkpointStore == null
+            ? null
+            : new CheckpointWriter<>( this.checkpointStore, TimeUnit.HOURS.toMillis( this.parallelTerminationTimeoutHours ) );
+
+        final List<ProcessingResultListener<OriginalInput, Output>> listOfListeners = new ArrayList<>( this.listeners.size() + 3 );
         listOfListeners.add( resultBuilder );
+        if ( checkpointWriter != null ) {
+            listOfListeners.add( checkpointWriter );
+        }
+        if ( progressListener != null ) {
+            listOfListeners.add( progressListener );
+        }
         listOfListeners.addAll( this.listeners );
         final DelegatingProcessingResultListener<OriginalInput, Output> listeners =
                 new DelegatingProcessingResultListener<>( listOfListeners );
 
         listeners.onBeforeRun( this.description );
 
-        final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceIterable = fetcher.fetchAll();
+        final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> fetchedIterable = fetcher.fetchAll();
+        final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceIterable = skipCompleted( fetchedIterable, completedItems );
 
         if ( sourceIterable instanceof Collection && this.persistence instanceof TimeLoggingProcessor ) {
             // Iterables could be lazy, but if it is a collection it should not be lazy so we can
@@ -395,10 +1151,25 @@ public class BatchJob<OriginalInput, Output> {
             );
         }
 
-        process( listeners, sourceIterable );
+        try {
+            new RunContext().run( () -> process( listeners, skipCompleted( stopWhenCancelled( fetchedIterable, isCancelled ), completedItems ) ) );
+        } finally {
+            if ( checkpointWriter != null ) {
+                // keep the progress of aborted runs
+                checkpointWriter.close();
+            }
+        }
 
         listeners.onAfterRun();
+        if ( !isCancelled.getAsBoolean() ) {
+            clearCheckpoints();
+        } else if ( this.checkpointStore != null ) {
+            LOG.info( "Job was cancelled, keeping the checkpoint in {} for resuming", this.checkpointStore );
+        }
         resultBuilder.setListenerDelegationFailures( listeners.hasDelegationFailures() );
+        if ( stageCountsBefore != null ) {
+            resultBuilder.setStageCounts( countsSince( stageCountsBefore, ( (TimeLoggingProcessor<?, ?, ?>) this.persistence ).getStageResultCounts() ) );
+        }
 
         final ResultStatistics statistics = resultBuilder.build();
 
@@ -409,38 +1180,366 @@ public class BatchJob<OriginalInput, Output> {
         return statistics;
     }
 
+    private CompletedItems loadCompletedItems() {
+        if ( this.checkpointStore == null ) {
+            return new CompletedItems();
+        }
+        try {
+            final CompletedItems completedItems = this.checkpointStore.load();
+            if ( !completedItems.isEmpty() ) {
+                LOG.info( "Resuming from checkpoint in {}, skipping {} completed items", this.checkpointStore, completedItems.size() );
+            }
+            return completedItems;
+        } catch ( final IOException e ) {
+            throw new IllegalStateException( "Could not load the checkpoint from " + this.checkpointStore, e );
+        }
+    }
+
+    private void clearCheckpoints() {
+        if ( this.checkpointStore == null ) {
+            return;
+        }
+        try {
+            this.checkpointStore.clear();
+        } catch ( final IOException e ) {
+            LOG.error( "Could not clear the checkpoint in " + this.checkpointStore + ", the next run would skip the items of this run", e );
+        }
+    }
+
+    private static Map<String, Counts> countsSince( final Map<String, Counts> before, final Map<String, Counts> after ) {
+        final Map<String, Counts> result = new LinkedHashMap<>();
+        for ( final Map.Entry<String, Counts> entry : after.entrySet() ) {
+            final Counts counts = entry.getValue();
+            final Counts previous = before.get( entry.getKey() );
+            result.put( entry.getKey(), previous == null
+                ? counts
+                : new Counts( counts.getSuccessCount() - previous.getSuccessCount(), counts.getErrorCount() - previous.getErrorCount() ) );
+        }
+        return result;
+    }
+
+    private static <OriginalInput> Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> skipCompleted(
+            final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceIterable, final CompletedItems completedItems ) {
+        if ( completedItems.isEmpty() ) {
+            return sourceIterable;
+        }
+        return () -> {
+            final Stream<Result<FetchedItem<OriginalInput>, OriginalInput>> stream = StreamSupport.stream( sourceIterable.spliterator(), false );
+            return stream
+                    .filter( result -> result.getInput() == null || !completedItems.contains( result.getInput().getNum() ) )
+                    .iterator();
+        };
+    }
+
+    /**
+     * Ends the iteration when the job is cancelled. Iterators of the fetcher
+     * which are {@link AutoCloseable} are closed then, so they can release
+     * their resources.
+     */
+    private static <T> Iterable<T> stopWhenCancelled( final Iterable<T> iterable, final BooleanSupplier isCancelled ) {
+        return () -> {
+            final Iterator<T> iterator = iterable.iterator();
+            return new Iterator<T>() {
+                /**
+                 * Once an item was announced by hasNext(), it must be returned
+                 * even if the job is cancelled before next() is called.
+                 */
+                private boolean hasAnnouncedItem;
+
+                @Override
+                public boolean hasNext() {
+                    if ( hasAnnouncedItem ) {
+                        return true;
+                    }
+                    if ( isCancelled.getAsBoolean() ) {
+                        close();
+                        return false;
+                    }
+                    hasAnnouncedItem = iterator.hasNext();
+                    return hasAnnouncedItem;
+                }
+
+                private void close() {
+                    if ( iterator instanceof AutoCloseable ) {
+                        try {
+                            ( (AutoCloseable) iterator ).close();
+                        } catch ( final Exception e ) {
+                            LOG.warn( "Failed to close the iterator of the cancelled job", e );
+                        }
+                    }
+                }
+
+                @Override
+                public T next() {
+                    hasAnnouncedItem = false;
+                    return iterator.next();
+                }
+            };
+        };
+    }
+
     protected void process( final DelegatingProcessingResultListener<OriginalInput, Output> listeners,
             final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceIterable ) {
-        if ( this.parallel && this.numParallelThreads != null && this.numParallelThreads.intValue() > 0 ) {
-            processWithBlockingQueue( listeners, this.numParallelThreads, sourceIterable );
+        final AdaptiveChunkSizer chunkSizer = createChunkSizer();
+        final IntSupplier chunkSize = chunkSizer == null
+            ? () -> processingBatchSize
+            : chunkSizer::getChunkSize;
+        final boolean useLanes = this.parallel && this.partitionKey != null && this.pipelineStageThreads == null && this.executionStrategy == null;
+        final int numLanes = this.numParallelThreads != null && this.numParallelThreads.intValue() > 0
+            ? this.numParallelThreads.intValue()
+            : Runtime.getRuntime().availableProcessors();
+        final Iterable<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> partitions = useLanes
+            ? IterableUtils.partitionByLane( sourceIterable, chunkSize, numLanes, result -> laneOf( result, numLanes ) )
+            : IterableUtils.partition( sourceIterable, chunkSize );
+
+        final RunContext runContext = RunContext.current();
+        final ResultDelivery resultDelivery = new ResultDelivery( listeners, this.reorderWindow );
+        final MemoryBudget memoryBudget = this.weigher == null
+            ? null
+            : new MemoryBudget( this.maxInFlightWeight );
+        final Iterable<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> chunks =
+                SequencedChunk.sequence( partitions, resultDelivery::nextSequence, memoryBudget, this::weigh );
+
+        if ( this.pipelineStageThreads != null ) {
+            processPipelined( chunks, listeners, resultDelivery, chunkSizer, memoryBudget, runContext );
+            return;
+        }
+        if ( this.asyncProcessor != null && this.executionStrategy == null ) {
+            final AsyncCallProcessor asyncCallProcessor = new AsyncCallProcessor( listeners, resultDelivery, panicCallback, chunkSizer, memoryBudget );
+            new AsyncChunkExecutor( this.maxInFlightChunks, TimeUnit.HOURS.toMillis( this.parallelTerminationTimeoutHours ) )
+                .execute( chunks, runContext == null
+                    ? asyncCallProcessor
+                    : chunk -> runContext.call( () -> asyncCallProcessor.apply( chunk ) ) );
+            return;
+        }
+
+        final boolean useBlockingQueue = this.executionStrategy == null && !useLanes
+                && this.parallel && this.numParallelThreads != null && this.numParallelThreads.intValue() > 0;
+        final StragglerDetector<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> stragglerDetector =
+                useBlockingQueue && this.speculationPercentile != null
+                    ? new StragglerDetector<>( this.speculationPercentile.doubleValue() )
+                    : null;
+        final Consumer<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> callProcessor = inRun( runContext,
+                new CallProcessor( listeners, resultDelivery, panicCallback, chunkSizer, stragglerDetector != null, memoryBudget ) );
+        if ( this.executionStrategy != null ) {
+            this.executionStrategy.execute( chunks, callProcessor );
+        } else if ( useLanes ) {
+            processInLanes( chunks, callProcessor, numLanes );
+        } else if ( useBlockingQueue ) {
+            processWithBlockingQueue( chunks, callProcessor, this.numParallelThreads, stragglerDetector );
+        } else if ( this.parallel && ( resultDelivery.isOrdered() || memoryBudget != null ) ) {
+            // parallel streams fetch large batches of chunks before processing them, which would exceed the reorder window
+            // or wait for the memory budget forever
+            final int maxInFlightChunks = resultDelivery.isOrdered()
+                ? this.reorderWindow.intValue()
+                : ForkJoinPool.getCommonPoolParallelism() * 2;
+            ExecutionStrategies.sharedPool( ForkJoinPool.commonPool(), maxInFlightChunks, this.parallelTerminationTimeoutHours )
+                .execute( chunks, callProcessor );
         } else {
             processWithStreams( listeners, this.parallel, sourceIterable );
         }
     }
 
+    /**
+     * Processes the chunks with the given run as the current one of the
+     * processing threads.
+     */
+    private static <T> Consumer<T> inRun( @Nullable final RunContext runContext, final Consumer<T> consumer ) {
+        return runContext == null
+            ? consumer
+            : item -> runContext.run( () -> consumer.accept( item ) );
+    }
+
+    /**
+     * The estimated memory needed for the successfully fetched items of a
+     * chunk.
+     */
+    private long weigh( final List<Result<FetchedItem<OriginalInput>, OriginalInput>> items ) {
+        long weight = 0;
+        for ( final Result<FetchedItem<OriginalInput>, OriginalInput> result : items ) {
+            final OriginalInput value = result.getOutput();
+            if ( value != null ) {
+                weight += this.weigher.weigh( value );
+            }
+        }
+        return weight;
+    }
+
+    private int laneOf( final Result<FetchedItem<OriginalInput>, OriginalInput> result, final int numLanes ) {
+        final OriginalInput value = result.getOutput();
+        final FetchedItem<OriginalInput> fetchedItem = result.getInput();
+        final int hash = value != null
+            ? Objects.hashCode( this.partitionKey.apply( value ) )
+            : fetchedItem == null
+                ? 0
+                : fetchedItem.getNum();
+        return Math.floorMod( hash ^ ( hash >>> 16 ), numLanes );
+    }
+
+    @Nullable
+    private AdaptiveChunkSizer createChunkSizer() {
+        if ( this.minProcessingBatchSize == null && this.maxProcessingBatchSize == null ) {
+            return null;
+        }
+        final int min = this.minProcessingBatchSize == null
+            ? 1
+            : this.minProcessingBatchSize.intValue();
+        final int max = this.maxProcessingBatchSize == null
+            ? Math.max( min, processingBatchSize )
+            : this.maxProcessingBatchSize.intValue();
+        return new AdaptiveChunkSizer( processingBatchSize, min, max );
+    }
+
+    /**
+     * Processes the items in chunks with a sequential or parallel stream. This
+     * is the execution mode used if no other one is configured, subclasses may
+     * override it.
+     */
     protected void processWithStreams(
             final DelegatingProcessingResultListener<OriginalInput, Output> listeners,
             final boolean useParallelStream,
             final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceIterable ) {
-        final Iterable<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> partitions = IterableUtils.partition( sourceIterable, processingBatchSize );
+        final AdaptiveChunkSizer chunkSizer = createChunkSizer();
+        final IntSupplier chunkSize = chunkSizer == null
+            ? () -> processingBatchSize
+            : chunkSizer::getChunkSize;
+        final ResultDelivery resultDelivery = new ResultDelivery( listeners, this.reorderWindow );
+        final Iterable<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> chunks = SequencedChunk.sequence(
+                IterableUtils.partition( sourceIterable, chunkSize ), resultDelivery::nextSequence, null, this::weigh );
+        processWithStreams( chunks,
+                inRun( RunContext.current(), new CallProcessor( listeners, resultDelivery, panicCallback, chunkSizer, false, null ) ),
+                useParallelStream );
+    }
 
-        StreamSupport.stream( partitions.spliterator(), useParallelStream ).forEach( new CallProcessor( listeners, panicCallback ) );
+    private void processWithStreams(
+            final Iterable<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> partitions,
+            final Consumer<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> chunkProcessor,
+            final boolean useParallelStream ) {
+        final ExecutionStrategy strategy = useParallelStream
+            ? ExecutionStrategies.parallelStreams()
+            : ExecutionStrategies.sequential();
+        strategy.execute( partitions, chunkProcessor );
     }
 
-    private void processWithBlockingQueue(
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private void processPipelined(
+            final Iterable<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> partitions,
             final DelegatingProcessingResultListener<OriginalInput, Output> listeners,
+            final ResultDelivery resultDelivery,
+            @Nullable final AdaptiveChunkSizer chunkSizer,
+            @Nullable final MemoryBudget memoryBudget,
+            @Nullable final RunContext runContext ) {
+        final List<? extends Processor<?, ?, ?>> processors = this.persistence instanceof TimeLoggingProcessor
+            ? ( (TimeLoggingProcessor<FetchedItem<OriginalInput>, OriginalInput, Output>) this.persistence ).getTimedStages()
+            : ProcessorStages.flatten( this.persistence );
+
+        final List<PipelineExecutor.Stage<PipelinedChunk>> stages = new ArrayList<>( processors.size() );
+        for ( int i = 0; i < processors.size(); i++ ) {
+            final Processor<?, ?, ?> processor = processors.get( i );
+            final Integer configuredThreads = i < this.pipelineStageThreads.size()
+                ? this.pipelineStageThreads.get( i )
+                : null;
+            final int numThreads = configuredThreads == null
+                ? 1
+                : configuredThreads.intValue();
+            final int capacity = this.queueCapacity == null
+                ? numThreads * 2
+                : this.queueCapacity.intValue();
+            stages.add( new PipelineExecutor.Stage<>( processor.getStageName(), numThreads, capacity, runContext == null
+                ? chunk -> chunk.process( processor )
+                : chunk -> runContext.call( () -> chunk.process( processor ) ) ) );
+        }
+
+        final Iterable<PipelinedChunk> chunks = () -> StreamSupport.stream( partitions.spliterator(), false )
+                .map( chunk -> {
+                    listeners.onFetchResults( chunk.getItems() );
+                    return new PipelinedChunk( chunk );
+                } )
+                .iterator();
+
+        final ThreadGroup threadGroup = new BatchJobThreadGroup( "Simplebatch Pipeline", this.panicCallback );
+        try {
+            new PipelineExecutor<PipelinedChunk>(
+                    stages,
+                    chunk -> {
+                        try {
+                            if ( chunkSizer != null ) {
+                                // lazy iterables must not be iterated twice
+                                chunk.values = IterableUtils.asList( chunk.values );
+                                chunkSizer.onChunkProcessed( chunk.numItems, chunk.processingNanos, countFailed( chunk.values ) );
+                            }
+                            resultDelivery.onProcessingResults( chunk.sequence, (Iterable) chunk.values );
+                        } finally {
+                            chunk.releaseWeight( memoryBudget );
+                        }
+                    },
+                    chunk -> {
+                        chunk.releaseWeight( memoryBudget );
+                        resultDelivery.onProcessingFailed( chunk.sequence );
+                    },
+                    this.panicCallback,
+                    TimeUnit.HOURS.toMillis( this.parallelTerminationTimeoutHours ),
+                    threadGroup )
+            .accept( chunks );
+        } catch ( final Throwable throwable ) {
+            LOG.error( "Error occurred in PipelineExecutor.accept", throwable );
+            throw throwable;
+        } finally {
+            threadGroup.destroy();
+        }
+    }
+
+    private static long countFailed( final Iterable<?> results ) {
+        long numFailed = 0;
+        for ( final Object result : results ) {
+            if ( ( (Result<?, ?>) result ).isFailed() ) {
+                numFailed++;
+            }
+        }
+        return numFailed;
+    }
+
+    private void processInLanes(
+            final Iterable<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> chunks,
+            final Consumer<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> chunkProcessor,
+            final int numLanes ) {
+        final ThreadGroup threadGroup = new BatchJobThreadGroup( "Simplebatch Lanes", this.panicCallback );
+        try {
+            new LaneExecutor<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>>(
+                    numLanes,
+                    this.queueCapacity == null
+                        ? 2
+                        : this.queueCapacity.intValue(),
+                    TimeUnit.HOURS.toMillis( this.parallelTerminationTimeoutHours ),
+                    threadGroup )
+            .execute( chunks, chunk -> laneOf( chunk.getItems().get( 0 ), numLanes ), chunkProcessor );
+        } catch ( final Throwable throwable ) {
+            LOG.error( "Error occurred in LaneExecutor.execute", throwable );
+            throw throwable;
+        } finally {
+            threadGroup.destroy();
+        }
+    }
+
+    private void processWithBlockingQueue(
+            final Iterable<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> partitions,
+            final Consumer<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> chunkProcessor,
             final int numParallelThreads,
-            final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceIterable ) {
+            @Nullable final StragglerDetector<SequencedChunk<Result<FetchedItem<OriginalInput>, OriginalInput>>> stragglerDetector ) {
         final ThreadGroup threadGroup = new BatchJobThreadGroup( "Simplebatch Processing", this.panicCallback );
 
         try {
             new BlockingQueueExecutor<>(
                     numParallelThreads,
-                    processingBatchSize,
+                    this.queueCapacity == null
+                        ? numParallelThreads * 2
+                        : this.queueCapacity.intValue(),
+                    this.queueWaitStrategy,
+                    stragglerDetector,
                     TimeUnit.HOURS.toMillis( this.parallelTerminationTimeoutHours ),
-                    new CallProcessor( listeners, panicCallback ),
+                    chunkProcessor,
                     threadGroup)
-            .accept( sourceIterable );
+            .accept( partitions );
         } catch ( final Throwable throwable ) {
             LOG.error( "Error occurred in BlockingQueueExecutor.accept", throwable );
             throw throwable;
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A job started with {@link BatchJob#runAsync()}. Provides the progress of the
+ * job while it is running, allows to cancel it and to wait for its result.
+ *
+ * @see BatchJob#runAsync()
+ */
+public final class BatchJobHandle {
+    private final CompletableFuture<ResultStatistics> result = new CompletableFuture<>();
+    private final AtomicLong numFetched = new AtomicLong();
+    private final AtomicLong numProcessed = new AtomicLong();
+    private final AtomicLong numFailed = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean cancelled;
+
+    /**
+     * Counts the results of the job.
+     */
+    private final class ProgressListener<OriginalInput, Output> implements ProcessingResultListener<OriginalInput, Output> {
+        @Override
+        public void onBeforeRun( final String description ) {
+            startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void onAfterRun() {
+            endNanos = System.nanoTime();
+        }
+
+        @Override
+        public void onFetchResult( final Result<FetchedItem<OriginalInput>, OriginalInput> result ) {
+            numFetched.incrementAndGet();
+        }
+
+        @Override
+        public void onProcessingResult( final Result<FetchedItem<OriginalInput>, Output> result ) {
+            numProcessed.incrementAndGet();
+            if ( result.isFailed() ) {
+                numFailed.incrementAndGet();
+            }
+        }
+    }
+
+    BatchJobHandle() {
+        // cancelling the future cancels the job
+        result.whenComplete( ( statistics, throwable ) -> {
+            if ( result.isCancelled() ) {
+                cancelled = true;
+            }
+        } );
+    }
+
+    <OriginalInput, Output> ProcessingResultListener<OriginalInput, Output> createProgressListener() {
+        return new ProgressListener<>();
+    }
+
+    void complete( final ResultStatistics statistics ) {
+        result.complete( statistics );
+    }
+
+    void completeExceptionally( final Throwable throwable ) {
+        result.completeExceptionally( throwable );
+    }
+
+    /**
+     * Completes with the statistics of the job when it is finished, also if it
+     * was cancelled. Completes exceptionally if the job failed.
+     */
+    public CompletableFuture<ResultStatistics> getResult() {
+        return result;
+    }
+
+    /**
+     * Stop fetching new items. Chunks which are already being processed are
+     * finished and passed to the listeners, then the job completes normally.
+     * If a checkpoint store is used, it is not cleared, so the job can be
+     * resumed later.
+     *
+     * Has no effect if the job is already finished.
+     */
+    public void cancel() {
+        if ( !result.isDone() ) {
+            cancelled = true;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    /**
+     * The number of items fetched so far, including failed fetches.
+     */
+    public long getNumFetched() {
+        return numFetched.get();
+    }
+
+    /**
+     * The number of items processed so far, including failed items.
+     */
+    public long getNumProcessed() {
+        return numProcessed.get();
+    }
+
+    /**
+     * The number of items which failed processing so far.
+     */
+    public long getNumFailed() {
+        return numFailed.get();
+    }
+
+    /**
+     * The number of processed items per second since the job was started.
+     */
+    public double getItemsPerSecond() {
+        final long start = startNanos;
+        if ( start == 0 ) {
+            return 0;
+        }
+        final long end = endNanos == 0
+            ? System.nanoTime()
+            : endNanos;
+        return numProcessed.get() * 1e9 / Math.max( 1, end - start );
+    }
+
+    @Override
+    public String toString() {
+        return "BatchJobHandle [fetched=" + getNumFetched() + ", processed=" + getNumProcessed() + ", failed=" + getNumFailed()
+            + ", cancelled=" + cancelled + ", done=" + isDone() + "]";
+    }
+}
@@ -32,10 +32,12 @@ public class BatchJobMain {
     private static void printCounts( final PrintStream out, final String type, final Counts counts ) {
         out.append( type )
                 .append( ":\terrors = " )
-                .append( Long.toString( counts.getError() ) )
+                .append( Long.toString( counts.getErrorCount() ) )
                 .append( ", success = " )
-                .append( Long.toString( counts.getSuccess() ) )
+                .append( Long.toString( counts.getSuccessCount() ) )
                 .append( '\n' );
+        counts.getFailureCategories().forEach( ( category, count ) ->
+            out.append( "\t\t" ).append( category ).append( " = " ).append( Long.toString( count ) ).append( '\n' ) );
     }
 
     public static <OriginalInput, Output> int exec( final BatchJob<OriginalInput, Output> batchJob ) {
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
+import com.freiheit.fuava.simplebatch.result.Result;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Publishes the processing results of a {@link BatchJob} as a Reactive
+ * Streams {@link Publisher}.
+ *
+ * Each subscription runs a new job, built from the given builder, on the given
+ * executor. Processing results are passed to the subscriber only as requested:
+ * without demand, the processing threads wait, which in turn stops fetching
+ * once the queues of the job are full. Combined with a
+ * {@link com.freiheit.fuava.simplebatch.fetch.PublisherFetcher}, the demand of
+ * the subscriber is propagated to the source.
+ *
+ * Cancelling the subscription cancels the job: it stops fetching, and the
+ * results of the chunks which are still being processed are dropped. The
+ * subscriber is not signalled after cancellation.
+ *
+ * If the job cannot be built, the subscriber is signalled with
+ * {@code onSubscribe} and then {@code onError}.
+ *
+ * On Java 9 and newer, {@code org.reactivestreams.FlowAdapters} converts this
+ * into a {@code java.util.concurrent.Flow.Publisher}.
+ */
+public final class BatchJobPublisher<OriginalInput, Output> implements Publisher<Result<FetchedItem<OriginalInput>, Output>> {
+    private static final Logger LOG = LoggerFactory.getLogger( BatchJobPublisher.class );
+
+    /**
+     * The subscription of a subscriber which is signalled with an error right
+     * away.
+     */
+    private static final Subscription NO_SUBSCRIPTION = new Subscription() {
+        @Override
+        public void request( final long n ) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final BatchJob.Builder<OriginalInput, Output> builder;
+    private final Executor executor;
+
+    /**
+     * @param builder the configuration of the job to run for each subscriber
+     * @param executor runs the jobs
+     */
+    public BatchJobPublisher( final BatchJob.Builder<OriginalInput, Output> builder, final Executor executor ) {
+        this.builder = Objects.requireNonNull( builder, "Builder must be set" );
+        this.executor = Objects.requireNonNull( executor, "Executor must be set" );
+    }
+
+    @Override
+    public void subscribe( final Subscriber<? super Result<FetchedItem<OriginalInput>, Output>> subscriber ) {
+        Objects.requireNonNull( subscriber, "Subscriber must be set" );
+        final ResultSubscription subscription = new ResultSubscription( subscriber );
+        final BatchJob<OriginalInput, Output> job;
+        try {
+            job = builder.buildWithListener( subscription );
+        } catch ( final RuntimeException e ) {
+            subscriber.onSubscribe( NO_SUBSCRIPTION );
+            subscriber.onError( e );
+            return;
+        }
+        subscriber.onSubscribe( subscription );
+        final BatchJobHandle handle;
+        try {
+            handle = job.runAsync( executor );
+        } catch ( final RuntimeException e ) {
+            subscription.complete( e );
+            return;
+        }
+        subscription.setHandle( handle );
+        handle.getResult().whenComplete( ( statistics, error ) -> {
+            if ( error != null ) {
+                LOG.error( "Batch job failed", error );
+            }
+            subscription.complete( error );
+        } );
+    }
+
+    /**
+     * Passes the processing results of a single job run to its subscriber,
+     * blocking the processing threads while there is no demand.
+     *
+     * The subscriber is signalled without holding the monitor of the
+     * subscription, so it may request or cancel from any thread while it is
+     * signalled. The signals are serialized by a lock of their own.
+     */
+    private final class ResultSubscription implements Subscription, ProcessingResultListener<OriginalInput, Output> {
+        private final Subscriber<? super Result<FetchedItem<OriginalInput>, Output>> subscriber;
+        private final Object signalLock = new Object();
+        // guarded by signalLock
+        private boolean terminated;
+        private long demand;
+        private boolean cancelled;
+        private BatchJobHandle handle;
+        private Throwable invalidRequest;
+
+        private ResultSubscription( final Subscriber<? super Result<FetchedItem<OriginalInput>, Output>> subscriber ) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public synchronized void request( final long n ) {
+            if ( n <= 0 ) {
+                invalidRequest = new IllegalArgumentException( "Requested number of items must be positive [n=" + n + "]" );
+                cancel();
+            } else {
+                demand = demand + n < 0
+                    ? Long.MAX_VALUE
+                    : demand + n;
+            }
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            if ( handle != null ) {
+                handle.cancel();
+            }
+            notifyAll();
+        }
+
+        private synchronized void setHandle( final BatchJobHandle handle ) {
+            this.handle = handle;
+            if ( cancelled ) {
+                handle.cancel();
+            }
+        }
+
+        @Override
+        public void onProcessingResult( final Result<FetchedItem<OriginalInput>, Output> result ) {
+            if ( !awaitDemand() ) {
+                signalInvalidRequest();
+                return;
+            }
+            synchronized ( signalLock ) {
+                if ( !terminated ) {
+                    subscriber.onNext( result );
+                }
+            }
+        }
+
+        /**
+         * Waits for demand and consumes one unit of it, returns false if the
+         * subscription was cancelled.
+         */
+        private synchronized boolean awaitDemand() {
+            try {
+                while ( demand == 0 && !cancelled ) {
+                    wait();
+                }
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                LOG.warn( "Interrupted while waiting for demand, cancelling the subscription" );
+                cancel();
+            }
+            if ( cancelled ) {
+                return false;
+            }
+            demand--;
+            return true;
+        }
+
+        private void complete( final Throwable error ) {
+            signalInvalidRequest();
+            synchronized ( this ) {
+                if ( cancelled ) {
+                    return;
+                }
+                cancelled = true;
+            }
+            synchronized ( signalLock ) {
+                if ( terminated ) {
+                    return;
+                }
+                terminated = true;
+                if ( error != null ) {
+                    subscriber.onError( error );
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+        }
+
+        private void signalInvalidRequest() {
+            final Throwable t;
+            synchronized ( this ) {
+                t = invalidRequest;
+                invalidRequest = null;
+            }
+            if ( t != null ) {
+                synchronized ( signalLock ) {
+                    if ( !terminated ) {
+                        terminated = true;
+                        subscriber.onError( t );
+                    }
+                }
+            }
+        }
+    }
+}
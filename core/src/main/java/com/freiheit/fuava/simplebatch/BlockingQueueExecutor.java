@@ -1,97 +1,222 @@
 package com.freiheit.fuava.simplebatch;
 
-import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
-import com.freiheit.fuava.simplebatch.result.Result;
-import com.freiheit.fuava.simplebatch.util.IterableUtils;
 import com.freiheit.fuava.simplebatch.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
-final class BlockingQueueExecutor<OriginalInput> implements Consumer<Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>>> {
+/**
+ * Processes chunks with a fixed number of threads, which take the chunks from
+ * a bounded queue filled by the calling thread.
+ *
+ * When all chunks were added, one end marker ("poison pill") per thread is
+ * added to the queue, so each thread terminates as soon as it took the last
+ * chunk - without any polling. If the queue cannot be filled because the
+ * calling thread is interrupted or the termination timeout is exceeded, the
+ * waiting chunks are discarded and the threads are interrupted instead.
+ *
+ * If a {@link StragglerDetector} is given, idle workers wake up periodically
+ * to process a second attempt of chunks which take unusually long, and workers
+ * which received the end marker keep doing so until all chunks are finished.
+ */
+final class BlockingQueueExecutor<Chunk> implements Consumer<Iterable<Chunk>> {
     private static final Logger LOG = LoggerFactory.getLogger( BlockingQueueExecutor.class );
 
-    private final AtomicBoolean finished = new AtomicBoolean();
+    /**
+     * Number of unsuccessful polls before a spinning worker parks.
+     */
+    static final int SPIN_TRIES = 100;
+
+    /**
+     * The maximum time an idle worker waits before looking for stragglers.
+     */
+    static final long MAX_IDLE_MS = 1000;
+
+    /**
+     * Signals the end of the input to a worker thread.
+     */
+    private static final Object END_OF_INPUT = new Object();
+
     private final int numParallelThreads;
-    private final int processingBatchSize;
-    private final LinkedBlockingQueue<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> queue;
-    private final Consumer<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> processor;
+    private final ArrayBlockingQueue<Object> queue;
+    private final Consumer<? super Chunk> processor;
     private final long terminationTimeoutMs;
+    private final QueueWaitStrategy waitStrategy;
+    @Nullable
+    private final StragglerDetector<Chunk> stragglerDetector;
 
     private final ThreadGroup threadGroup;
+    private final AtomicBoolean aborted = new AtomicBoolean();
 
-    private static final class BlockingQueueConsumer<OriginalInput> implements Runnable {
-        private final AtomicBoolean finished;
-        private final LinkedBlockingQueue<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> queue;
-        private final Consumer<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> processor;
+    private static final class BlockingQueueConsumer<Chunk> implements Runnable {
+        private final ArrayBlockingQueue<Object> queue;
+        private final AtomicBoolean aborted;
+        private final Consumer<? super Chunk> processor;
+        private final QueueWaitStrategy waitStrategy;
+        @Nullable
+        private final StragglerDetector<Chunk> stragglerDetector;
 
         public BlockingQueueConsumer(
-                final AtomicBoolean aborted,
-                final LinkedBlockingQueue<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> queue,
-                final Consumer<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> processor
+                final ArrayBlockingQueue<Object> queue,
+                final Consumer<? super Chunk> processor,
+                final QueueWaitStrategy waitStrategy,
+                @Nullable final StragglerDetector<Chunk> stragglerDetector,
+                final AtomicBoolean aborted
                 ) {
-            this.finished = aborted;
             this.queue = queue;
+            this.aborted = aborted;
             this.processor = processor;
+            this.waitStrategy = waitStrategy;
+            this.stragglerDetector = stragglerDetector;
         }
 
+        @SuppressWarnings( "unchecked" )
         @Override
         public void run() {
             while ( true ) {
-                // waiting up to one second for the queue to fill. Normally, we should never wait here.
+                if ( aborted.get() ) {
+                    // the processor may have cleared the interruption
+                    LOG.warn( "Terminating thread because the processing was aborted" );
+                    return;
+                }
+                final Object item;
                 try {
-                    final List<Result<FetchedItem<OriginalInput>,OriginalInput>> list = this.queue.poll( 1, TimeUnit.SECONDS );
-                    if ( list != null ) {
-                        processor.accept( list );
-                    } else {
-                        if ( finished.get() ) {
-                            LOG.debug( "Did not find an item to process, and there will not be any more" );
-                        } else {
-                            LOG.debug( "Did not find an item to process, will try again" );
-                        }
-                    }
-                } catch (final InterruptedException e) {
+                    item = take();
+                } catch ( final InterruptedException e ) {
                     LOG.warn( "Terminating thread due to interruption without waiting for the queue to be empty" );
                     return;
                 }
-                /*
-                 * There are no items available and there will not be any more items put into the queue - return
-                 */
-                if ( this.queue.isEmpty() && finished.get() ) {
+                if ( item == END_OF_INPUT ) {
                     LOG.debug( "No more items, will finish" );
+                    processRemainingStragglers();
                     return;
                 }
-                // there should be more items, or at least there should be more items to become available when we are waiting longer
+                if ( item == null ) {
+                    // idle, only if there is a straggler detector
+                    processStraggler( stragglerDetector.pollStraggler() );
+                    continue;
+                }
+                process( (Chunk) item );
+            }
+        }
+
+        private void process( final Chunk chunk ) {
+            if ( stragglerDetector == null ) {
+                processor.accept( chunk );
+                return;
+            }
+            final StragglerDetector.Execution<Chunk> execution = stragglerDetector.start( chunk );
+            try {
+                processor.accept( chunk );
+            } finally {
+                stragglerDetector.finish( execution );
+            }
+        }
+
+        private void processStraggler( @Nullable final StragglerDetector.Execution<Chunk> straggler ) {
+            if ( straggler == null ) {
+                return;
+            }
+            LOG.debug( "Processing a second attempt of a chunk which takes unusually long" );
+            try {
+                processor.accept( straggler.getChunk() );
+            } finally {
+                stragglerDetector.finish( straggler );
+            }
+        }
+
+        private void processRemainingStragglers() {
+            if ( stragglerDetector == null ) {
+                return;
+            }
+            try {
+                StragglerDetector.Execution<Chunk> straggler;
+                while ( ( straggler = stragglerDetector.awaitStraggler() ) != null ) {
+                    processStraggler( straggler );
+                }
+            } catch ( final InterruptedException e ) {
+                LOG.warn( "Terminating thread due to interruption without waiting for stragglers" );
             }
         }
+
+        private Object take() throws InterruptedException {
+            if ( waitStrategy == QueueWaitStrategy.SPIN_THEN_BLOCK ) {
+                for ( int i = 0; i < SPIN_TRIES; i++ ) {
+                    final Object item = queue.poll();
+                    if ( item != null ) {
+                        return item;
+                    }
+                    Thread.yield();
+                }
+            }
+            if ( stragglerDetector != null ) {
+                return queue.poll( stragglerDetector.getMillisUntilNextStraggler( MAX_IDLE_MS ), TimeUnit.MILLISECONDS );
+            }
+            return queue.take();
+        }
     }
+
+    /**
+     * @param numParallelThreads the number of worker threads
+     * @param queueCapacity the maximum number of chunks waiting for a worker
+     * @param waitStrategy how workers wait for chunks
+     * @param terminationTimeoutMs the maximum time to wait for the processing of all chunks
+     * @param processor processes a single chunk
+     * @param threadGroup the group of the worker threads
+     */
     public BlockingQueueExecutor(
             final int numParallelThreads,
-            final int processingBatchSize,
+            final int queueCapacity,
+            final QueueWaitStrategy waitStrategy,
             final long terminationTimeoutMs,
-            final Consumer<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> processor,
+            final Consumer<? super Chunk> processor,
             final ThreadGroup threadGroup
     ) {
+        this( numParallelThreads, queueCapacity, waitStrategy, null, terminationTimeoutMs, processor, threadGroup );
+    }
+
+    /**
+     * @param numParallelThreads the number of worker threads
+     * @param queueCapacity the maximum number of chunks waiting for a worker
+     * @param waitStrategy how workers wait for chunks
+     * @param stragglerDetector if not null, idle workers process a second attempt of chunks which take unusually long.
+     *            The processor must be able to cope with this.
+     * @param terminationTimeoutMs the maximum time to wait for the processing of all chunks
+     * @param processor processes a single chunk
+     * @param threadGroup the group of the worker threads
+     */
+    public BlockingQueueExecutor(
+            final int numParallelThreads,
+            final int queueCapacity,
+            final QueueWaitStrategy waitStrategy,
+            @Nullable final StragglerDetector<Chunk> stragglerDetector,
+            final long terminationTimeoutMs,
+            final Consumer<? super Chunk> processor,
+            final ThreadGroup threadGroup
+    ) {
+        if ( queueCapacity <= 0 ) {
+            throw new IllegalArgumentException( "The queue capacity must be positive [queueCapacity=" + queueCapacity + "]" );
+        }
         this.numParallelThreads = numParallelThreads;
-        this.processingBatchSize = processingBatchSize;
         this.terminationTimeoutMs = terminationTimeoutMs;
-        this.queue = new LinkedBlockingQueue<>( numParallelThreads * 2 );
+        this.queue = new ArrayBlockingQueue<>( queueCapacity );
+        this.waitStrategy = waitStrategy;
+        this.stragglerDetector = stragglerDetector;
         this.processor = processor;
         this.threadGroup = threadGroup;
     }
 
 
     @Override
-    public void accept( final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> sourceIterable ) {
-        this.finished.set( false );
-
+    public void accept( final Iterable<Chunk> partitions ) {
         // Start the consumers
         final List<Thread> threads = createThreads( numParallelThreads, threadGroup );
 
@@ -99,41 +224,72 @@ final class BlockingQueueExecutor<OriginalInput> implements Consumer<Iterable<Re
 
         final long maxEndTime = System.currentTimeMillis() + terminationTimeoutMs;
 
-        final Iterable<List<Result<FetchedItem<OriginalInput>, OriginalInput>>> partitions = IterableUtils.partition( sourceIterable, processingBatchSize );
         int total = 0;
-        for (final List<Result<FetchedItem<OriginalInput>, OriginalInput>> chunk: partitions) {
-            total += chunk.size();
-            try {
-                final long timeoutMs = getTimeoutMs(maxEndTime);
-                if (!queue.offer( chunk, timeoutMs, TimeUnit.MILLISECONDS ) ) {
-                    LOG.error( "Aborting further processing because we could not add items to the queue within " + timeoutMs +  " ms" );
-                }
-            } catch ( final InterruptedException e ) {
-                LOG.error( "Interruption while filling processing queue. Will not add any more items - note that we only process the first " + total + " items", e );
+        boolean complete = true;
+        for ( final Chunk chunk : partitions ) {
+            total++;
+            if ( !offer( chunk, maxEndTime, total ) ) {
+                complete = false;
+                break;
             }
         }
 
         // signal the threads that there will be no more items added to the queue
-        this.finished.set( true );
+        for ( int i = 0; complete && i < threads.size(); i++ ) {
+            complete = offer( END_OF_INPUT, maxEndTime, total );
+        }
 
+        if ( !complete ) {
+            abort( threads );
+        }
 
         LOG.debug( "Shutting down Executor" );
-        for ( final Thread t: threads ) {
-            final long timeoutMs = getTimeoutMs(maxEndTime);
-            LOG.debug( "Waiting for {} to terminate (up to {} ms)", t.getName(), timeoutMs );
-            try {
-                t.join( timeoutMs );
-            } catch ( final Exception e ) {
-                LOG.error( "Thread interrupted during termination - not all items might have been processed correctly", e );
+        final boolean interrupted = Thread.interrupted();
+        try {
+            for ( final Thread t: threads ) {
+                final long timeoutMs = getTimeoutMs(maxEndTime);
+                LOG.debug( "Waiting for {} to terminate (up to {} ms)", t.getName(), timeoutMs );
+                WorkerThreads.joinUninterruptibly( t, timeoutMs );
+            }
+        } finally {
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
             }
         }
 
-        if (!queue.isEmpty()) {
+        if ( !complete ) {
+            throw new IllegalStateException( "Processing was aborted while filling the queue, only the first " + total + " chunks may have been processed" );
+        }
+        if ( queue.stream().anyMatch( item -> item != END_OF_INPUT ) ) {
             throw new IllegalStateException( "Processing did not finish within time and was aborted. Timeout was " + terminationTimeoutMs + " ms " );
         }
 
     }
 
+    /**
+     * Discards the waiting chunks and stops the threads: without the end
+     * markers, which could not be added, they would wait for chunks forever.
+     */
+    private void abort( final List<Thread> threads ) {
+        aborted.set( true );
+        queue.clear();
+        threads.forEach( Thread::interrupt );
+    }
+
+    private boolean offer( final Object item, final long maxEndTime, final int total ) {
+        try {
+            final long timeoutMs = getTimeoutMs( maxEndTime );
+            if ( !queue.offer( item, timeoutMs, TimeUnit.MILLISECONDS ) ) {
+                LOG.error( "Aborting further processing because we could not add items to the queue within " + timeoutMs +  " ms" );
+                return false;
+            }
+            return true;
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            LOG.error( "Interruption while filling processing queue. Will not add any more items - note that we only process the first " + total + " chunks", e );
+            return false;
+        }
+    }
 
     /**
      * The number of milliseconds we can at most wait - but ensures that always a certain minimum time is used for waiting even if the configured time is not available any more.
@@ -149,11 +305,11 @@ final class BlockingQueueExecutor<OriginalInput> implements Consumer<Iterable<Re
         final List<Thread> threads = new ArrayList<>( numParallelThreads );
         for ( int i = 0; i < numParallelThreads; i++ ) {
             final String threadName = "SBProc_" + StringUtils.padStart( Integer.toString( i ), 2, '0');
-            final Thread t = new Thread(group, new BlockingQueueExecutor.BlockingQueueConsumer<>( finished, queue, processor ), threadName );
+            final Thread t = new Thread(group, new BlockingQueueExecutor.BlockingQueueConsumer<Chunk>( queue, processor, waitStrategy, stragglerDetector, aborted ), threadName );
             t.setDaemon( false /* VM should not exit while this thread is still alive */ );
             threads.add( t );
         }
         return Collections.unmodifiableList( threads );
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Submits each chunk as a task to an {@link ExecutorService}, allowing at most
+ * a fixed number of chunks to be in flight at the same time. The calling thread
+ * blocks while that limit is reached, so lazy fetchers are not drained faster
+ * than the chunks can be processed.
+ */
+final class BoundedExecutorStrategy implements ExecutionStrategy {
+    private static final Logger LOG = LoggerFactory.getLogger( BoundedExecutorStrategy.class );
+
+    private final Supplier<ExecutorService> executorSupplier;
+    private final boolean shutdownAfterExecution;
+    private final int maxInFlightChunks;
+    private final long terminationTimeoutMs;
+
+    /**
+     * @param executorSupplier
+     *            called once for each execution
+     * @param shutdownAfterExecution
+     *            true if the supplied executor is owned by this strategy and
+     *            should be shut down after each execution, false for shared
+     *            executors
+     * @param maxInFlightChunks
+     *            maximum number of chunks submitted, but not yet processed
+     * @param terminationTimeoutMs
+     *            maximum time to wait for all chunks to be processed
+     */
+    BoundedExecutorStrategy(
+            final Supplier<ExecutorService> executorSupplier,
+            final boolean shutdownAfterExecution,
+            final int maxInFlightChunks,
+            final long terminationTimeoutMs ) {
+        if ( maxInFlightChunks <= 0 ) {
+            throw new IllegalArgumentException( "The number of chunks in flight must be positive [maxInFlightChunks=" + maxInFlightChunks + "]" );
+        }
+        this.executorSupplier = executorSupplier;
+        this.shutdownAfterExecution = shutdownAfterExecution;
+        this.maxInFlightChunks = maxInFlightChunks;
+        this.terminationTimeoutMs = terminationTimeoutMs;
+    }
+
+    @Override
+    public <Chunk> void execute( final Iterable<Chunk> chunks, final Consumer<? super Chunk> processor ) {
+        final ExecutorService executor = executorSupplier.get();
+        final Semaphore inFlight = new Semaphore( maxInFlightChunks );
+        final long maxEndTime = System.currentTimeMillis() + terminationTimeoutMs;
+        try {
+            int total = 0;
+            for ( final Chunk chunk : chunks ) {
+                try {
+                    inFlight.acquire();
+                } catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    LOG.error( "Interruption while submitting chunks. Will not submit any more chunks - note that we only process the first " + total + " chunks", e );
+                    break;
+                }
+                total++;
+                try {
+                    executor.execute( () -> {
+                        try {
+                            processor.accept( chunk );
+                        } finally {
+                            inFlight.release();
+                        }
+                    } );
+                } catch ( final RejectedExecutionException e ) {
+                    inFlight.release();
+                    LOG.warn( "Executor rejected chunk, processing it in the calling thread", e );
+                    processor.accept( chunk );
+                }
+            }
+
+            awaitCompletion( inFlight, maxEndTime );
+        } finally {
+            if ( shutdownAfterExecution ) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Waits for the chunks in flight, also if the calling thread is
+     * interrupted: the chunks are still being processed and pass their
+     * results to the listeners. The interrupt is restored afterwards.
+     */
+    private void awaitCompletion( final Semaphore inFlight, final long maxEndTime ) {
+        final long endTime = Math.max( maxEndTime, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 1 ) );
+        boolean interrupted = Thread.interrupted();
+        try {
+            while ( true ) {
+                try {
+                    if ( !inFlight.tryAcquire( maxInFlightChunks, Math.max( 0, endTime - System.currentTimeMillis() ), TimeUnit.MILLISECONDS ) ) {
+                        throw new IllegalStateException( "Processing did not finish within time and was aborted. Timeout was " + terminationTimeoutMs + " ms " );
+                    }
+                    inFlight.release( maxInFlightChunks );
+                    return;
+                } catch ( final InterruptedException e ) {
+                    interrupted = true;
+                    LOG.warn( "Interrupted while waiting for chunks to be processed, still waiting for the chunks in flight" );
+                }
+            }
+        } finally {
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
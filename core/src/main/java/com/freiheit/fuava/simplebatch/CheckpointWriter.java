@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.checkpoint.CheckpointStore;
+import com.freiheit.fuava.simplebatch.checkpoint.CompletedItems;
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
+import com.freiheit.fuava.simplebatch.result.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the successfully processed items in a {@link CheckpointStore}.
+ *
+ * The processing threads only hand the completed items of each chunk to a
+ * bounded queue. A single background thread collects them for
+ * {@link #FLUSH_INTERVAL_MS} and writes them to the store in one call, so
+ * slow stores do not slow down processing.
+ *
+ * When the run is finished, an end marker ("poison pill") is added to the
+ * queue and the remaining items are written before {@link #onAfterRun()}
+ * returns.
+ */
+final class CheckpointWriter<OriginalInput, Output> implements ProcessingResultListener<OriginalInput, Output> {
+    private static final Logger LOG = LoggerFactory.getLogger( CheckpointWriter.class );
+
+    static final long FLUSH_INTERVAL_MS = 1000;
+    static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Signals the end of the run to the writer thread.
+     */
+    private static final CompletedItems END_OF_INPUT = new CompletedItems();
+
+    private final CheckpointStore store;
+    private final ArrayBlockingQueue<CompletedItems> queue = new ArrayBlockingQueue<>( QUEUE_CAPACITY );
+    private final Thread thread;
+    private final long terminationTimeoutMs;
+    private volatile boolean closed;
+
+    CheckpointWriter( final CheckpointStore store, final long terminationTimeoutMs ) {
+        this.store = store;
+        this.terminationTimeoutMs = terminationTimeoutMs;
+        this.thread = new Thread( this::writeUntilEnd, "SBCheckpoint" );
+        this.thread.setDaemon( true );
+        this.thread.start();
+    }
+
+    @Override
+    public void onProcessingResults( final Iterable<? extends Result<FetchedItem<OriginalInput>, Output>> results ) {
+        final CompletedItems completed = new CompletedItems();
+        for ( final Result<FetchedItem<OriginalInput>, Output> result : results ) {
+            final FetchedItem<OriginalInput> input = result.getInput();
+            if ( result.isSuccess() && input != null ) {
+                completed.add( input.getNum() );
+            }
+        }
+        if ( completed.isEmpty() || closed ) {
+            return;
+        }
+        try {
+            queue.put( completed );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            LOG.warn( "Interrupted while recording a checkpoint, the items will be processed again on resume" );
+        }
+    }
+
+    @Override
+    public void onAfterRun() {
+        close();
+    }
+
+    /**
+     * Writes the remaining items and stops the writer thread. Subsequent calls
+     * have no effect.
+     */
+    void close() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        try {
+            if ( !queue.offer( END_OF_INPUT, terminationTimeoutMs, TimeUnit.MILLISECONDS ) ) {
+                LOG.error( "Could not signal the end of the run to the checkpoint writer within " + terminationTimeoutMs + " ms" );
+                return;
+            }
+            thread.join( terminationTimeoutMs );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            LOG.error( "Interrupted while waiting for the checkpoint writer, the last checkpoint might be missing", e );
+        }
+    }
+
+    private void writeUntilEnd() {
+        boolean end = false;
+        final List<CompletedItems> batch = new ArrayList<>();
+        while ( !end ) {
+            final CompletedItems merged = new CompletedItems();
+            try {
+                final CompletedItems first = queue.take();
+                final long flushTime = System.currentTimeMillis() + FLUSH_INTERVAL_MS;
+                CompletedItems next = first;
+                while ( next != null ) {
+                    if ( next == END_OF_INPUT ) {
+                        end = true;
+                        break;
+                    }
+                    merged.addAll( next );
+                    batch.clear();
+                    queue.drainTo( batch );
+                    final int endIndex = batch.indexOf( END_OF_INPUT );
+                    for ( final CompletedItems items : endIndex < 0 ? batch : batch.subList( 0, endIndex ) ) {
+                        merged.addAll( items );
+                    }
+                    if ( endIndex >= 0 ) {
+                        end = true;
+                        break;
+                    }
+                    final long waitMs = flushTime - System.currentTimeMillis();
+                    next = waitMs > 0
+                        ? queue.poll( waitMs, TimeUnit.MILLISECONDS )
+                        : null;
+                }
+            } catch ( final InterruptedException e ) {
+                LOG.warn( "Checkpoint writer interrupted, the last checkpoint might be missing" );
+                end = true;
+            }
+            write( merged );
+        }
+    }
+
+    private void write( final CompletedItems items ) {
+        if ( items.isEmpty() ) {
+            return;
+        }
+        try {
+            store.markCompleted( items );
+        } catch ( final IOException | RuntimeException e ) {
+            LOG.error( "Could not write checkpoint to " + store + ", the items will be processed again on resume", e );
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+/**
+ * Factory methods for the {@link ExecutionStrategy} implementations that can
+ * be passed to {@link BatchJob.Builder#setExecutionStrategy(ExecutionStrategy)}.
+ */
+public class ExecutionStrategies {
+    private static final Logger LOG = LoggerFactory.getLogger( ExecutionStrategies.class );
+
+    private static final ExecutionStrategy SEQUENTIAL = new ExecutionStrategy() {
+        @Override
+        public <Chunk> void execute( final Iterable<Chunk> chunks, final Consumer<? super Chunk> processor ) {
+            for ( final Chunk chunk : chunks ) {
+                processor.accept( chunk );
+            }
+        }
+    };
+
+    private static final ExecutionStrategy PARALLEL_STREAMS = new ExecutionStrategy() {
+        @Override
+        public <Chunk> void execute( final Iterable<Chunk> chunks, final Consumer<? super Chunk> processor ) {
+            StreamSupport.stream( chunks.spliterator(), true ).forEach( processor );
+        }
+    };
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor(), looked up reflectively
+     * because it is only available in newer JVMs. Null if not available.
+     */
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookupVirtualThreadPerTaskExecutor();
+
+    /**
+     * Process all chunks in the calling thread, one after another.
+     */
+    public static ExecutionStrategy sequential() {
+        return SEQUENTIAL;
+    }
+
+    /**
+     * Process the chunks with a parallel Java 8 stream, which means that the
+     * common ForkJoin pool is used.
+     */
+    public static ExecutionStrategy parallelStreams() {
+        return PARALLEL_STREAMS;
+    }
+
+    /**
+     * Process each chunk in a new virtual thread. This is intended for
+     * processors which are dominated by blocking I/O (HTTP, SFTP, database),
+     * where thousands of chunks may be in flight without paying for thousands
+     * of operating system threads.
+     *
+     * If the JVM does not support virtual threads (see
+     * {@link #isVirtualThreadsSupported()}), a warning is logged and a new
+     * platform thread is used for each chunk instead.
+     *
+     * @param maxInFlightChunks
+     *            the maximum number of chunks being processed at the same
+     *            time. Fetching blocks while this number is reached.
+     */
+    public static ExecutionStrategy virtualThreads( final int maxInFlightChunks ) {
+        return virtualThreads( maxInFlightChunks, BatchJob.TERMINATION_TIMEOUT_HOURS );
+    }
+
+    /**
+     * Like {@link #virtualThreads(int)}, but with a custom number of hours to
+     * wait for the processing of the spawned chunks.
+     */
+    public static ExecutionStrategy virtualThreads( final int maxInFlightChunks, final int terminationTimeoutHours ) {
+        return new BoundedExecutorStrategy(
+                ExecutionStrategies::newVirtualThreadPerTaskExecutor,
+                true,
+                maxInFlightChunks,
+                TimeUnit.HOURS.toMillis( terminationTimeoutHours ) );
+    }
+
+    /**
+     * Process the chunks in the given executor, which may be shared with other
+     * jobs. The executor will not be shut down by the job.
+     *
+     * @param executor
+     *            the executor which processes the chunks
+     * @param maxInFlightChunks
+     *            the maximum number of chunks of this job submitted to the
+     *            executor at the same time. Fetching blocks while this number
+     *            is reached.
+     */
+    public static ExecutionStrategy sharedPool( final ExecutorService executor, final int maxInFlightChunks ) {
+        return sharedPool( executor, maxInFlightChunks, BatchJob.TERMINATION_TIMEOUT_HOURS );
+    }
+
+    /**
+     * Like {@link #sharedPool(ExecutorService, int)}, but with a custom number
+     * of hours to wait for the processing of the submitted chunks.
+     */
+    public static ExecutionStrategy sharedPool( final ExecutorService executor, final int maxInFlightChunks, final int terminationTimeoutHours ) {
+        Objects.requireNonNull( executor, "Executor must be set" );
+        return new BoundedExecutorStrategy(
+                () -> executor,
+                false,
+                maxInFlightChunks,
+                TimeUnit.HOURS.toMillis( terminationTimeoutHours ) );
+    }
+
+    /**
+     * Whether the running JVM can create virtual threads.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    private static Method lookupVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+        } catch ( final NoSuchMethodException | SecurityException e ) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if ( NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null ) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke( null );
+            } catch ( final IllegalAccessException | InvocationTargetException e ) {
+                // e. g. preview features are not enabled
+                LOG.warn( "Virtual threads are not available, falling back to a new platform thread per chunk", e );
+            }
+        } else {
+            LOG.warn( "Virtual threads are not supported by this JVM, falling back to a new platform thread per chunk" );
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool( r -> {
+            final String threadName = "SBChunk_" + StringUtils.padStart( Integer.toString( counter.getAndIncrement() ), 2, '0' );
+            final Thread t = new Thread( r, threadName );
+            t.setDaemon( false /* VM should not exit while this thread is still alive */ );
+            return t;
+        } );
+    }
+
+}
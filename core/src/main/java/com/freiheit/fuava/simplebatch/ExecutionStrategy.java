@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import java.util.function.Consumer;
+
+/**
+ * Decides on which threads the chunks of a {@link BatchJob} are processed.
+ *
+ * Implementations are provided by {@link ExecutionStrategies}.
+ *
+ * @see BatchJob.Builder#setExecutionStrategy(ExecutionStrategy)
+ */
+public interface ExecutionStrategy {
+
+    /**
+     * Pass each chunk to the processor and return once all chunks have been
+     * processed.
+     *
+     * <p>
+     * The chunks iterable may be lazy and should be iterated in the calling
+     * thread, so that the fetcher is not drained faster than the chunks can
+     * be processed. Each chunk is thread confined: it must be passed to the
+     * processor exactly once.
+     * </p>
+     *
+     * <p>
+     * The processor handles all failures itself, so implementations do not
+     * need to catch anything thrown by it.
+     * </p>
+     *
+     * @param chunks
+     *            the chunks to process
+     * @param processor
+     *            processes a single chunk and notifies the listeners
+     */
+    <Chunk> void execute( Iterable<Chunk> chunks, Consumer<? super Chunk> processor );
+
+}
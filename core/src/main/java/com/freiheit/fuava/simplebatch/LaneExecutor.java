@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Processes chunks in lanes: each lane has a single thread and its own
+ * bounded queue, so all chunks of a lane are processed one after another,
+ * while different lanes run in parallel.
+ *
+ * Like in {@link BlockingQueueExecutor}, the threads are terminated with end
+ * markers ("poison pills"). If a chunk or an end marker cannot be added to a
+ * queue, the waiting chunks are discarded and the lane threads are
+ * interrupted instead.
+ */
+final class LaneExecutor<Chunk> {
+    private static final Logger LOG = LoggerFactory.getLogger( LaneExecutor.class );
+
+    /**
+     * Signals the end of the input to a lane thread.
+     */
+    private static final Object END_OF_INPUT = new Object();
+
+    private final int numLanes;
+    private final int queueCapacity;
+    private final long terminationTimeoutMs;
+    private final ThreadGroup threadGroup;
+
+    /**
+     * @param numLanes the number of lanes, each with its own thread
+     * @param queueCapacity the maximum number of chunks waiting in each lane
+     * @param terminationTimeoutMs the maximum time to wait for the processing of all chunks
+     * @param threadGroup the group of the lane threads
+     */
+    LaneExecutor( final int numLanes, final int queueCapacity, final long terminationTimeoutMs, final ThreadGroup threadGroup ) {
+        if ( numLanes <= 0 || queueCapacity <= 0 ) {
+            throw new IllegalArgumentException( "Lanes and queue capacity must be positive [numLanes=" + numLanes + ", queueCapacity=" + queueCapacity + "]" );
+        }
+        this.numLanes = numLanes;
+        this.queueCapacity = queueCapacity;
+        this.terminationTimeoutMs = terminationTimeoutMs;
+        this.threadGroup = threadGroup;
+    }
+
+    /**
+     * Process the given chunks, each in the lane given by laneOf.
+     */
+    void execute( final Iterable<Chunk> chunks, final ToIntFunction<? super Chunk> laneOf, final Consumer<? super Chunk> processor ) {
+        final List<ArrayBlockingQueue<Object>> queues = new ArrayList<>( numLanes );
+        final List<Thread> threads = new ArrayList<>( numLanes );
+        final AtomicBoolean aborted = new AtomicBoolean();
+        for ( int i = 0; i < numLanes; i++ ) {
+            final ArrayBlockingQueue<Object> queue = new ArrayBlockingQueue<>( queueCapacity );
+            queues.add( queue );
+            final String threadName = "SBLane_" + StringUtils.padStart( Integer.toString( i ), 2, '0' );
+            final Thread t = new Thread( threadGroup, () -> work( queue, processor, aborted ), threadName );
+            t.setDaemon( false /* VM should not exit while this thread is still alive */ );
+            threads.add( t );
+        }
+        threads.forEach( t -> { LOG.debug( "Starting {}", t.getName() ); t.start(); } );
+
+        final long maxEndTime = System.currentTimeMillis() + terminationTimeoutMs;
+        int total = 0;
+        boolean complete = true;
+        for ( final Chunk chunk : chunks ) {
+            total++;
+            if ( !offer( queues.get( laneOf.applyAsInt( chunk ) ), chunk, maxEndTime ) ) {
+                LOG.error( "Not all chunks were processed, only the first " + total );
+                complete = false;
+                break;
+            }
+        }
+        for ( int i = 0; complete && i < queues.size(); i++ ) {
+            complete = offer( queues.get( i ), END_OF_INPUT, maxEndTime );
+        }
+        if ( !complete ) {
+            // without the end markers, the lanes would wait for chunks forever
+            aborted.set( true );
+            queues.forEach( ArrayBlockingQueue::clear );
+            threads.forEach( Thread::interrupt );
+        }
+
+        final boolean interrupted = Thread.interrupted();
+        try {
+            for ( final Thread t : threads ) {
+                WorkerThreads.joinUninterruptibly( t, getTimeoutMs( maxEndTime ) );
+            }
+        } finally {
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if ( !complete ) {
+            throw new IllegalStateException( "Processing was aborted while filling the lanes, only the first " + total + " chunks may have been processed" );
+        }
+
+        for ( final ArrayBlockingQueue<Object> queue : queues ) {
+            if ( queue.stream().anyMatch( item -> item != END_OF_INPUT ) ) {
+                throw new IllegalStateException( "Processing did not finish within time and was aborted. Timeout was " + terminationTimeoutMs + " ms " );
+            }
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void work( final ArrayBlockingQueue<Object> queue, final Consumer<? super Chunk> processor, final AtomicBoolean aborted ) {
+        while ( true ) {
+            if ( aborted.get() ) {
+                // the processor may have cleared the interruption
+                LOG.warn( "Terminating lane because the processing was aborted" );
+                return;
+            }
+            final Object item;
+            try {
+                item = queue.take();
+            } catch ( final InterruptedException e ) {
+                LOG.warn( "Terminating lane due to interruption without waiting for the queue to be empty" );
+                return;
+            }
+            if ( item == END_OF_INPUT ) {
+                return;
+            }
+            processor.accept( (Chunk) item );
+        }
+    }
+
+    private boolean offer( final ArrayBlockingQueue<Object> queue, final Object item, final long maxEndTime ) {
+        try {
+            final long timeoutMs = getTimeoutMs( maxEndTime );
+            if ( !queue.offer( item, timeoutMs, TimeUnit.MILLISECONDS ) ) {
+                LOG.error( "Aborting further processing because we could not add items to the queue within " + timeoutMs + " ms" );
+                return false;
+            }
+            return true;
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            LOG.error( "Interruption while filling processing queue. Will not add any more items", e );
+            return false;
+        }
+    }
+
+    /**
+     * The number of milliseconds we can at most wait - but ensures that always a certain minimum time is used for waiting even if the configured time is not available any more.
+     */
+    private long getTimeoutMs( final long maxEndTime ) {
+        return Math.max( maxEndTime - System.currentTimeMillis(), TimeUnit.SECONDS.toMillis( 1 ) );
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the total weight of the chunks in flight, i. e. of the chunks which
+ * were fetched but not yet completely processed.
+ *
+ * {@link #acquire(long)} blocks while the weight of a new chunk would exceed
+ * the budget. A chunk which exceeds the budget on its own is admitted as soon
+ * as no other chunk is in flight, so the job never gets stuck.
+ */
+final class MemoryBudget {
+    private static final Logger LOG = LoggerFactory.getLogger( MemoryBudget.class );
+
+    private final long maxWeight;
+    private long inFlightWeight;
+
+    MemoryBudget( final long maxWeight ) {
+        if ( maxWeight <= 0 ) {
+            throw new IllegalArgumentException( "The memory budget must be positive [maxWeight=" + maxWeight + "]" );
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Adds the given weight to the weight in flight, waiting until it fits into
+     * the budget.
+     */
+    synchronized void acquire( final long weight ) {
+        while ( inFlightWeight > 0 && inFlightWeight + weight > maxWeight ) {
+            try {
+                wait();
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                LOG.warn( "Interrupted while waiting for the memory budget - continuing with budget exceeded" );
+                break;
+            }
+        }
+        inFlightWeight += weight;
+    }
+
+    /**
+     * Removes the weight of a processed chunk from the weight in flight.
+     */
+    synchronized void release( final long weight ) {
+        if ( weight == 0 ) {
+            return;
+        }
+        inFlightWeight -= weight;
+        notifyAll();
+    }
+
+    synchronized long getInFlightWeight() {
+        return inFlightWeight;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Passes chunks through a sequence of stages, each stage with its own worker
+ * threads and a bounded queue of chunks waiting for them. Thus the stages work
+ * on different chunks at the same time, and the parallelism of each stage can
+ * be chosen independently.
+ *
+ * The end of the input is signalled with end markers ("poison pills"): when
+ * the last worker of a stage terminates, it adds one end marker per worker of
+ * the next stage to the queue of the next stage. If a chunk or an end marker
+ * cannot be added to a queue, because a thread is interrupted or the
+ * termination timeout is exceeded, the pipeline is aborted: the waiting
+ * chunks are dropped and all worker threads are interrupted.
+ *
+ * If a stage throws, the error is logged and the chunk is dropped - like a
+ * chunk whose processor throws in the other execution modes of
+ * {@link BatchJob}.
+ */
+final class PipelineExecutor<Chunk> implements Consumer<Iterable<Chunk>> {
+    private static final Logger LOG = LoggerFactory.getLogger( PipelineExecutor.class );
+
+    /**
+     * Signals the end of the input to a worker thread.
+     */
+    private static final Object END_OF_INPUT = new Object();
+
+    /**
+     * Configuration of a single stage of the pipeline.
+     */
+    static final class Stage<Chunk> {
+        private final String name;
+        private final int numThreads;
+        private final int queueCapacity;
+        private final UnaryOperator<Chunk> function;
+
+        /**
+         * @param name the name of the stage, for logging
+         * @param numThreads the number of worker threads of this stage
+         * @param queueCapacity the maximum number of chunks waiting for the workers of this stage
+         * @param function processes a chunk, the result is passed to the next stage
+         */
+        Stage( final String name, final int numThreads, final int queueCapacity, final UnaryOperator<Chunk> function ) {
+            if ( numThreads <= 0 || queueCapacity <= 0 ) {
+                throw new IllegalArgumentException( "Threads and queue capacity of a stage must be positive [stage=" + name
+                        + ", numThreads=" + numThreads + ", queueCapacity=" + queueCapacity + "]" );
+            }
+            this.name = name;
+            this.numThreads = numThreads;
+            this.queueCapacity = queueCapacity;
+            this.function = Objects.requireNonNull( function );
+        }
+    }
+
+    private final List<Stage<Chunk>> stages;
+    private final List<ArrayBlockingQueue<Object>> queues;
+    private final Consumer<? super Chunk> sink;
+    private final Consumer<? super Chunk> droppedChunks;
+    private final BatchJob.PanicCallback panicCallback;
+    private final long terminationTimeoutMs;
+    private final ThreadGroup threadGroup;
+    private final AtomicBoolean aborted = new AtomicBoolean();
+    private volatile List<Thread> threads = Collections.emptyList();
+
+    /**
+     * @param stages the stages in the order of processing, at least one
+     * @param sink called with the result of the last stage, in a thread of the last stage
+     * @param droppedChunks called with chunks dropped because a stage or the sink failed
+     * @param panicCallback called if a stage fails with a {@link VirtualMachineError}
+     * @param terminationTimeoutMs the maximum time to wait for the processing of all chunks
+     * @param threadGroup the group of the worker threads
+     */
+    PipelineExecutor(
+            final List<Stage<Chunk>> stages,
+            final Consumer<? super Chunk> sink,
+            final Consumer<? super Chunk> droppedChunks,
+            final BatchJob.PanicCallback panicCallback,
+            final long terminationTimeoutMs,
+            final ThreadGroup threadGroup
+    ) {
+        if ( stages.isEmpty() ) {
+            throw new IllegalArgumentException( "A pipeline needs at least one stage" );
+        }
+        this.stages = new ArrayList<>( stages );
+        this.queues = new ArrayList<>( stages.size() );
+        for ( final Stage<Chunk> stage : stages ) {
+            this.queues.add( new ArrayBlockingQueue<>( stage.queueCapacity ) );
+        }
+        this.sink = Objects.requireNonNull( sink );
+        this.droppedChunks = Objects.requireNonNull( droppedChunks );
+        this.panicCallback = Objects.requireNonNull( panicCallback );
+        this.terminationTimeoutMs = terminationTimeoutMs;
+        this.threadGroup = threadGroup;
+    }
+
+    @Override
+    public void accept( final Iterable<Chunk> chunks ) {
+        final long maxEndTime = System.currentTimeMillis() + terminationTimeoutMs;
+
+        final List<Thread> threads = new ArrayList<>();
+        for ( int i = 0; i < stages.size(); i++ ) {
+            threads.addAll( createThreads( i, maxEndTime ) );
+        }
+        this.threads = Collections.unmodifiableList( threads );
+        threads.forEach( t -> { LOG.debug( "Starting {}", t.getName() ); t.start(); } );
+
+        final ArrayBlockingQueue<Object> firstQueue = queues.get( 0 );
+        int total = 0;
+        for ( final Chunk chunk : chunks ) {
+            total++;
+            if ( !offer( firstQueue, chunk, maxEndTime ) ) {
+                LOG.error( "Not all chunks were passed to the pipeline, only the first " + total );
+                break;
+            }
+        }
+        offerEndMarkers( 0, maxEndTime );
+
+        LOG.debug( "Waiting for the pipeline to finish" );
+        final boolean interrupted = Thread.interrupted();
+        try {
+            for ( final Thread t : threads ) {
+                WorkerThreads.joinUninterruptibly( t, getTimeoutMs( maxEndTime ) );
+            }
+        } finally {
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if ( aborted.get() ) {
+            throw new IllegalStateException( "Processing was aborted, only the first " + total + " chunks may have been processed" );
+        }
+        for ( final ArrayBlockingQueue<Object> queue : queues ) {
+            if ( queue.stream().anyMatch( item -> item != END_OF_INPUT ) ) {
+                throw new IllegalStateException( "Processing did not finish within time and was aborted. Timeout was " + terminationTimeoutMs + " ms " );
+            }
+        }
+    }
+
+    private List<Thread> createThreads( final int stageIndex, final long maxEndTime ) {
+        final Stage<Chunk> stage = stages.get( stageIndex );
+        final AtomicInteger remainingWorkers = new AtomicInteger( stage.numThreads );
+        final List<Thread> threads = new ArrayList<>( stage.numThreads );
+        for ( int i = 0; i < stage.numThreads; i++ ) {
+            final String threadName = "SBStage" + StringUtils.padStart( Integer.toString( stageIndex + 1 ), 2, '0' )
+                    + "_" + StringUtils.padStart( Integer.toString( i ), 2, '0' );
+            final Thread t = new Thread( threadGroup, () -> {
+                try {
+                    work( stageIndex, maxEndTime );
+                } finally {
+                    if ( remainingWorkers.decrementAndGet() == 0 ) {
+                        offerEndMarkers( stageIndex + 1, maxEndTime );
+                    }
+                }
+            }, threadName );
+            t.setDaemon( false /* VM should not exit while this thread is still alive */ );
+            threads.add( t );
+        }
+        return Collections.unmodifiableList( threads );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void work( final int stageIndex, final long maxEndTime ) {
+        final Stage<Chunk> stage = stages.get( stageIndex );
+        final ArrayBlockingQueue<Object> queue = queues.get( stageIndex );
+        final boolean isLastStage = stageIndex == stages.size() - 1;
+        while ( true ) {
+            if ( aborted.get() ) {
+                // the stage may have cleared the interruption
+                LOG.warn( "Terminating thread of stage {} because the pipeline was aborted", stage.name );
+                return;
+            }
+            final Object item;
+            try {
+                item = queue.take();
+            } catch ( final InterruptedException e ) {
+                LOG.warn( "Terminating thread of stage {} due to interruption without waiting for the queue to be empty", stage.name );
+                return;
+            }
+            if ( item == END_OF_INPUT ) {
+                LOG.debug( "No more items for stage {}, will finish", stage.name );
+                return;
+            }
+            final Chunk chunk = (Chunk) item;
+            try {
+                final Chunk result = stage.function.apply( chunk );
+                if ( isLastStage ) {
+                    sink.accept( result );
+                } else if ( !offer( queues.get( stageIndex + 1 ), result, maxEndTime ) ) {
+                    droppedChunks.accept( result );
+                    return;
+                }
+            } catch ( final VirtualMachineError e ) {
+                LOG.error( "FATAL: Exception went through the Processors of stage " + stage.name + ". You need to ensure that this cannot happen, in order to achieve proper error handling " + e.getMessage(), e );
+                try {
+                    // if the panic callback does not exit, nobody must wait for this chunk
+                    droppedChunks.accept( chunk );
+                } finally {
+                    panicCallback.panic( "Virtual Machine Error", BatchJob.PANIC_VM_ERROR );
+                }
+            } catch ( final Throwable t ) {
+                LOG.error( "FATAL: Exception went through the Processors of stage " + stage.name + ". You need to ensure that this cannot happen, in order to achieve proper error handling" + t.getMessage(), t );
+                droppedChunks.accept( chunk );
+            }
+        }
+    }
+
+    private void offerEndMarkers( final int stageIndex, final long maxEndTime ) {
+        if ( stageIndex >= stages.size() || aborted.get() ) {
+            return;
+        }
+        final ArrayBlockingQueue<Object> queue = queues.get( stageIndex );
+        for ( int i = 0; i < stages.get( stageIndex ).numThreads; i++ ) {
+            if ( !offer( queue, END_OF_INPUT, maxEndTime ) ) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the waiting chunks and interrupts all workers: once an item
+     * could not be added to a queue, the end markers may be missing, and the
+     * workers would wait for chunks forever.
+     */
+    @SuppressWarnings( "unchecked" )
+    private void abort() {
+        if ( !aborted.compareAndSet( false, true ) ) {
+            return;
+        }
+        final List<Object> waiting = new ArrayList<>();
+        for ( final ArrayBlockingQueue<Object> queue : queues ) {
+            queue.drainTo( waiting );
+        }
+        threads.forEach( Thread::interrupt );
+        for ( final Object item : waiting ) {
+            if ( item != END_OF_INPUT ) {
+                droppedChunks.accept( (Chunk) item );
+            }
+        }
+    }
+
+    private boolean offer( final ArrayBlockingQueue<Object> queue, final Object item, final long maxEndTime ) {
+        try {
+            final long timeoutMs = getTimeoutMs( maxEndTime );
+            if ( !queue.offer( item, timeoutMs, TimeUnit.MILLISECONDS ) ) {
+                LOG.error( "Aborting further processing because we could not add items to the queue within " + timeoutMs + " ms" );
+                abort();
+                return false;
+            }
+            return true;
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            if ( !aborted.get() ) {
+                LOG.error( "Interruption while filling processing queue. Will not add any more items", e );
+            }
+            abort();
+            return false;
+        }
+    }
+
+    /**
+     * The number of milliseconds we can at most wait - but ensures that always a certain minimum time is used for waiting even if the configured time is not available any more.
+     */
+    private long getTimeoutMs( final long maxEndTime ) {
+        return Math.max( maxEndTime - System.currentTimeMillis(), TimeUnit.SECONDS.toMillis( 1 ) );
+    }
+}
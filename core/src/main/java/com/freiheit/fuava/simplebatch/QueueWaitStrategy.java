@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+/**
+ * How the worker threads of a {@link BatchJob} with a fixed number of threads
+ * wait for the next chunk.
+ *
+ * @see BatchJob.Builder#setQueueWaitStrategy(QueueWaitStrategy)
+ */
+public enum QueueWaitStrategy {
+    /**
+     * Workers park until a chunk is available. Best choice if chunks take
+     * long to process compared to fetching them.
+     */
+    BLOCKING,
+
+    /**
+     * Workers briefly spin (yielding the CPU) before they park. This avoids
+     * the cost of waking up parked threads when many small chunks are handed
+     * over, at the expense of some CPU time while the queue is empty.
+     */
+    SPIN_THEN_BLOCK
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Passes values which are completed in arbitrary order to a consumer in the
+ * order of their sequence numbers.
+ *
+ * Sequence numbers are handed out by {@link #acquire()}, which blocks while
+ * the window is full, i. e. while the given number of sequence numbers
+ * following the oldest value not yet passed to the consumer has already been
+ * handed out. This caps the number of values waiting in the buffer.
+ *
+ * Every acquired sequence number must be completed exactly once, either with
+ * {@link #complete(long, Object)} or with {@link #skip(long)}. The consumer
+ * is never called concurrently.
+ */
+final class ReorderBuffer<T> {
+    private static final Logger LOG = LoggerFactory.getLogger( ReorderBuffer.class );
+
+    /**
+     * Marks a skipped sequence number.
+     */
+    private static final Object NOTHING = new Object();
+
+    private final int window;
+    private final Consumer<? super T> consumer;
+    private final Map<Long, Object> completed = new HashMap<>();
+
+    private long nextSequence = 0;
+    private long nextToDeliver = 0;
+    private boolean delivering = false;
+
+    ReorderBuffer( final int window, final Consumer<? super T> consumer ) {
+        if ( window <= 0 ) {
+            throw new IllegalArgumentException( "The reorder window must be positive [window=" + window + "]" );
+        }
+        this.window = window;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Hands out the next sequence number, waiting until it is within the
+     * window.
+     */
+    synchronized long acquire() {
+        while ( nextSequence - nextToDeliver >= window ) {
+            try {
+                wait();
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                LOG.warn( "Interrupted while waiting for the reorder window - continuing with window exceeded" );
+                break;
+            }
+        }
+        return nextSequence++;
+    }
+
+    /**
+     * Pass the value with the given sequence number to the consumer as soon as
+     * all values with lower sequence numbers were passed or skipped.
+     */
+    void complete( final long sequence, final T value ) {
+        put( sequence, value );
+    }
+
+    /**
+     * Do not wait for a value with the given sequence number, e. g. because its
+     * processing failed.
+     */
+    void skip( final long sequence ) {
+        put( sequence, NOTHING );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void put( final long sequence, final Object value ) {
+        synchronized ( this ) {
+            completed.put( sequence, value );
+            if ( delivering ) {
+                // the delivering thread will pick it up
+                return;
+            }
+            delivering = true;
+        }
+        try {
+            while ( true ) {
+                final Object next;
+                synchronized ( this ) {
+                    next = completed.remove( nextToDeliver );
+                    if ( next == null ) {
+                        delivering = false;
+                        return;
+                    }
+                    nextToDeliver++;
+                    notifyAll();
+                }
+                if ( next != NOTHING ) {
+                    try {
+                        consumer.accept( (T) next );
+                    } catch ( final RuntimeException e ) {
+                        LOG.error( "Failed to pass on a reordered value, continuing with the next one", e );
+                    }
+                }
+            }
+        } catch ( final Error e ) {
+            synchronized ( this ) {
+                delivering = false;
+            }
+            throw e;
+        }
+    }
+}
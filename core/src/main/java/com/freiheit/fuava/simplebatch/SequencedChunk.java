@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A chunk of fetched items together with its position in the order of
+ * fetching.
+ *
+ * With speculative execution, a chunk may be processed by two attempts at
+ * the same time. The attempts use {@link #startAttempt()},
+ * {@link #completeAttempt()} and {@link #failAttempt()} to decide which of
+ * them passes on its results. The thread of the slower attempt is interrupted
+ * as soon as the other attempt completed, so it does not delay the end of the
+ * job if the processor reacts to interruption.
+ */
+final class SequencedChunk<T> {
+    private final long sequence;
+    private final List<T> items;
+    private final long weight;
+
+    // guarded by this
+    private int numAttempts;
+    private List<Thread> runningAttempts;
+    private boolean completed;
+
+    SequencedChunk( final long sequence, final List<T> items ) {
+        this( sequence, items, 0 );
+    }
+
+    SequencedChunk( final long sequence, final List<T> items, final long weight ) {
+        this.sequence = sequence;
+        this.items = items;
+        this.weight = weight;
+    }
+
+    /**
+     * The position of this chunk in the order of fetching, starting with 0.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * The weight acquired from the memory budget for this chunk, 0 if there is
+     * no memory budget.
+     */
+    long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Registers an attempt to process this chunk.
+     *
+     * @return true for the first attempt
+     */
+    synchronized boolean startAttempt() {
+        if ( runningAttempts == null ) {
+            runningAttempts = new ArrayList<>( 2 );
+        }
+        runningAttempts.add( Thread.currentThread() );
+        return numAttempts++ == 0;
+    }
+
+    /**
+     * Registers a successful attempt.
+     *
+     * @return true if this attempt is the first to complete the chunk, so it
+     *         should pass on its results
+     */
+    boolean completeAttempt() {
+        final boolean won;
+        synchronized ( this ) {
+            runningAttempts.remove( Thread.currentThread() );
+            won = !completed;
+            if ( won ) {
+                completed = true;
+                runningAttempts.forEach( Thread::interrupt );
+            }
+        }
+        if ( !won ) {
+            // the other attempt may have interrupted this one before it was unregistered
+            Thread.interrupted();
+        }
+        return won;
+    }
+
+    /**
+     * Registers an attempt which could not produce results.
+     *
+     * @return true if no other attempt completed the chunk or is still
+     *         running, so the chunk failed
+     */
+    boolean failAttempt() {
+        final boolean completedByOther;
+        final boolean failed;
+        synchronized ( this ) {
+            runningAttempts.remove( Thread.currentThread() );
+            completedByOther = completed;
+            failed = !completed && runningAttempts.isEmpty();
+            if ( failed ) {
+                completed = true;
+            }
+        }
+        if ( completedByOther ) {
+            Thread.interrupted();
+        }
+        return failed;
+    }
+
+    /**
+     * Numbers the given chunks with the sequence numbers of the given
+     * supplier, which is called right before each chunk is returned.
+     */
+    static <T> Iterable<SequencedChunk<T>> sequence( final Iterable<List<T>> chunks, final LongSupplier sequenceNumbers ) {
+        return sequence( chunks, sequenceNumbers, null, items -> 0 );
+    }
+
+    /**
+     * Like {@link #sequence(Iterable, LongSupplier)}, but if a memory budget is
+     * given, the weight of each chunk is acquired from it before the chunk is
+     * returned - blocking while too much weight is in flight. The weight must
+     * be released when the chunk was processed.
+     */
+    static <T> Iterable<SequencedChunk<T>> sequence( final Iterable<List<T>> chunks, final LongSupplier sequenceNumbers,
+            @Nullable final MemoryBudget memoryBudget, final ToLongFunction<? super List<T>> weigher ) {
+        return () -> {
+            final Iterator<List<T>> it = chunks.iterator();
+            return new Iterator<SequencedChunk<T>>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public SequencedChunk<T> next() {
+                    final List<T> items = it.next();
+                    if ( memoryBudget == null ) {
+                        return new SequencedChunk<>( sequenceNumbers.getAsLong(), items );
+                    }
+                    final long weight = weigher.applyAsLong( items );
+                    memoryBudget.acquire( weight );
+                    return new SequencedChunk<>( sequenceNumbers.getAsLong(), items, weight );
+                }
+            };
+        };
+    }
+}
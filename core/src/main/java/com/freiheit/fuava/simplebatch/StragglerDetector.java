@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the chunks being processed, and finds "stragglers": chunks
+ * which are running longer than a given percentile of the durations of the
+ * recently completed chunks. Idle workers process a second attempt of these
+ * chunks (speculative execution), and the attempt finishing first wins.
+ *
+ * Each chunk is attempted at most twice. Before {@link #MIN_SAMPLES} chunks
+ * were completed, no chunk is considered a straggler.
+ */
+final class StragglerDetector<Chunk> {
+    static final int MIN_SAMPLES = 10;
+    static final int MAX_SAMPLES = 256;
+
+    /**
+     * A chunk being processed.
+     */
+    static final class Execution<Chunk> {
+        private final Chunk chunk;
+        private final long startNanos;
+        private boolean speculated;
+
+        private Execution( final Chunk chunk, final long startNanos ) {
+            this.chunk = chunk;
+            this.startNanos = startNanos;
+        }
+
+        Chunk getChunk() {
+            return chunk;
+        }
+    }
+
+    private final double percentile;
+    private final Map<Chunk, Execution<Chunk>> running = new IdentityHashMap<>();
+    private final long[] durations = new long[MAX_SAMPLES];
+    private int numDurations;
+    private int nextDuration;
+    private long thresholdNanos = -1;
+
+    /**
+     * @param percentile between 0 (exclusive) and 1 (inclusive), e. g. 0.95
+     */
+    StragglerDetector( final double percentile ) {
+        if ( !( percentile > 0 && percentile <= 1 ) ) {
+            throw new IllegalArgumentException( "The percentile must be greater than 0 and at most 1 [percentile=" + percentile + "]" );
+        }
+        this.percentile = percentile;
+    }
+
+    /**
+     * Register the first attempt of a chunk.
+     */
+    synchronized Execution<Chunk> start( final Chunk chunk ) {
+        final Execution<Chunk> execution = new Execution<>( chunk, System.nanoTime() );
+        running.put( chunk, execution );
+        return execution;
+    }
+
+    /**
+     * Called when any attempt of the chunk finished. Only the first call has
+     * an effect.
+     */
+    synchronized void finish( final Execution<Chunk> execution ) {
+        if ( running.get( execution.chunk ) != execution ) {
+            return;
+        }
+        running.remove( execution.chunk );
+        durations[nextDuration] = System.nanoTime() - execution.startNanos;
+        nextDuration = ( nextDuration + 1 ) % MAX_SAMPLES;
+        numDurations = Math.min( numDurations + 1, MAX_SAMPLES );
+        thresholdNanos = -1;
+        notifyAll();
+    }
+
+    /**
+     * A straggler which was not attempted twice yet, or null if there is
+     * none. The returned chunk is not returned again.
+     */
+    synchronized Execution<Chunk> pollStraggler() {
+        final long threshold = getThresholdNanos();
+        if ( threshold < 0 ) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        for ( final Execution<Chunk> execution : running.values() ) {
+            if ( !execution.speculated && now - execution.startNanos > threshold ) {
+                execution.speculated = true;
+                return execution;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The time until the next chunk becomes a straggler if none finishes in
+     * the meantime, at most the given number of milliseconds.
+     */
+    synchronized long getMillisUntilNextStraggler( final long maxMillis ) {
+        final long threshold = getThresholdNanos();
+        if ( threshold < 0 ) {
+            return maxMillis;
+        }
+        final long now = System.nanoTime();
+        long minNanos = TimeUnit.MILLISECONDS.toNanos( maxMillis );
+        for ( final Execution<Chunk> execution : running.values() ) {
+            if ( !execution.speculated ) {
+                minNanos = Math.min( minNanos, execution.startNanos + threshold - now );
+            }
+        }
+        return Math.max( 1, TimeUnit.NANOSECONDS.toMillis( minNanos ) );
+    }
+
+    /**
+     * Waits for the next straggler. Returns null as soon as no more chunks
+     * are being processed.
+     */
+    synchronized Execution<Chunk> awaitStraggler() throws InterruptedException {
+        while ( !running.isEmpty() ) {
+            final Execution<Chunk> straggler = pollStraggler();
+            if ( straggler != null ) {
+                return straggler;
+            }
+            wait( getMillisUntilNextStraggler( TimeUnit.SECONDS.toMillis( 1 ) ) );
+        }
+        return null;
+    }
+
+    private long getThresholdNanos() {
+        if ( thresholdNanos < 0 && numDurations >= MIN_SAMPLES ) {
+            final long[] sorted = Arrays.copyOf( durations, numDurations );
+            Arrays.sort( sorted );
+            final int index = (int) Math.ceil( percentile * numDurations ) - 1;
+            thresholdNanos = sorted[Math.max( 0, index )];
+        }
+        return thresholdNanos;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+/**
+ * Estimates the memory needed for processing an item, for example the size of
+ * a file or of a downloaded document in bytes.
+ *
+ * @see BatchJob.Builder#setMemoryBudget(Weigher, long)
+ * @param <T> the type of the fetched items
+ */
+@FunctionalInterface
+public interface Weigher<T> {
+
+    /**
+     * The estimated weight of the item, must not be negative and must not
+     * throw.
+     */
+    long weigh( T item );
+}
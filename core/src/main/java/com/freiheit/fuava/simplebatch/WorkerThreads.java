@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helpers for the worker threads of the executors.
+ */
+final class WorkerThreads {
+    private static final Logger LOG = LoggerFactory.getLogger( WorkerThreads.class );
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * Waits up to the given time for the thread to terminate, even if the
+     * calling thread is interrupted: its workers must not outlive the job.
+     * The interruption is restored afterwards.
+     */
+    static void joinUninterruptibly( final Thread thread, final long timeoutMs ) {
+        final long end = System.currentTimeMillis() + timeoutMs;
+        boolean interrupted = false;
+        try {
+            long remainingMs = timeoutMs;
+            while ( remainingMs > 0 && thread.isAlive() ) {
+                try {
+                    thread.join( remainingMs );
+                } catch ( final InterruptedException e ) {
+                    interrupted = true;
+                }
+                remainingMs = end - System.currentTimeMillis();
+            }
+        } finally {
+            if ( interrupted ) {
+                LOG.error( "Thread interrupted during termination - not all items might have been processed correctly" );
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
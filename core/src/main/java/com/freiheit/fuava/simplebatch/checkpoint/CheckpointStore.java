@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.checkpoint;
+
+import java.io.IOException;
+
+/**
+ * Persists which items of a job were completed, so a job which was aborted
+ * can be resumed without processing those items again.
+ *
+ * Items are identified by their row number, so the fetcher needs to return
+ * the same items in the same order when the job is resumed.
+ *
+ * The job calls {@link #markCompleted(CompletedItems)} from a single
+ * background thread.
+ *
+ * @see com.freiheit.fuava.simplebatch.BatchJob.Builder#setCheckpointStore(CheckpointStore)
+ */
+public interface CheckpointStore {
+
+    /**
+     * The items completed by previous runs, empty if there are none.
+     */
+    CompletedItems load() throws IOException;
+
+    /**
+     * Add the given items to the completed items.
+     */
+    void markCompleted( CompletedItems items ) throws IOException;
+
+    /**
+     * Forget all completed items, called after a run was finished.
+     */
+    void clear() throws IOException;
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.checkpoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The row numbers (see {@link com.freiheit.fuava.simplebatch.fetch.FetchedItem#getNum()})
+ * of completed items, stored as ranges of consecutive numbers: a job which
+ * processed millions of items mostly in order only needs a handful of ranges.
+ *
+ * Not thread safe.
+ */
+public final class CompletedItems {
+    /**
+     * Maps the first number of each range to its last number (inclusive).
+     * Ranges never overlap or touch each other.
+     */
+    private final TreeMap<Integer, Integer> ranges = new TreeMap<>();
+
+    /**
+     * A range of consecutive row numbers, both bounds inclusive.
+     */
+    public static final class Range {
+        private final int first;
+        private final int last;
+
+        public Range( final int first, final int last ) {
+            if ( last < first ) {
+                throw new IllegalArgumentException( "Invalid range [first=" + first + ", last=" + last + "]" );
+            }
+            this.first = first;
+            this.last = last;
+        }
+
+        public int getFirst() {
+            return first;
+        }
+
+        public int getLast() {
+            return last;
+        }
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( !( o instanceof Range ) ) {
+                return false;
+            }
+            final Range other = (Range) o;
+            return first == other.first && last == other.last;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * first + last;
+        }
+
+        @Override
+        public String toString() {
+            return first + "-" + last;
+        }
+    }
+
+    public void add( final int num ) {
+        add( num, num );
+    }
+
+    /**
+     * Adds all numbers from first to last (inclusive).
+     */
+    public void add( final int first, final int last ) {
+        int newFirst = first;
+        int newLast = last;
+        final Map.Entry<Integer, Integer> before = ranges.floorEntry( first );
+        if ( before != null && before.getValue().longValue() + 1 >= first ) {
+            if ( before.getValue().intValue() >= last ) {
+                // already contained
+                return;
+            }
+            newFirst = before.getKey().intValue();
+            ranges.remove( before.getKey() );
+        }
+        // merge all following ranges which overlap or touch the new one
+        Map.Entry<Integer, Integer> after = ranges.ceilingEntry( newFirst );
+        while ( after != null && after.getKey().longValue() <= (long) newLast + 1 ) {
+            newLast = Math.max( newLast, after.getValue().intValue() );
+            ranges.remove( after.getKey() );
+            after = ranges.ceilingEntry( newFirst );
+        }
+        ranges.put( newFirst, newLast );
+    }
+
+    public void addAll( final CompletedItems other ) {
+        for ( final Map.Entry<Integer, Integer> range : other.ranges.entrySet() ) {
+            add( range.getKey().intValue(), range.getValue().intValue() );
+        }
+    }
+
+    public boolean contains( final int num ) {
+        final Map.Entry<Integer, Integer> range = ranges.floorEntry( num );
+        return range != null && range.getValue().intValue() >= num;
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * The number of completed items.
+     */
+    public long size() {
+        long size = 0;
+        for ( final Map.Entry<Integer, Integer> range : ranges.entrySet() ) {
+            size += range.getValue().longValue() - range.getKey().longValue() + 1;
+        }
+        return size;
+    }
+
+    /**
+     * The ranges in ascending order.
+     */
+    public List<Range> getRanges() {
+        final List<Range> result = new ArrayList<>( ranges.size() );
+        for ( final Map.Entry<Integer, Integer> range : ranges.entrySet() ) {
+            result.add( new Range( range.getKey().intValue(), range.getValue().intValue() ) );
+        }
+        return Collections.unmodifiableList( result );
+    }
+
+    @Override
+    public String toString() {
+        return ranges.isEmpty()
+            ? "[]"
+            : getRanges().toString();
+    }
+}
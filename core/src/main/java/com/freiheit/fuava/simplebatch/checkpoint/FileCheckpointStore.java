@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.checkpoint;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Stores the completed items in a local file, with one range of row numbers
+ * per line ("first-last"). New ranges are appended, so an interrupted write
+ * at most loses the last line.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+    private final Path file;
+
+    public FileCheckpointStore( final Path file ) {
+        this.file = Objects.requireNonNull( file, "File must be set" );
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public CompletedItems load() throws IOException {
+        final CompletedItems items = new CompletedItems();
+        if ( !Files.exists( file ) ) {
+            return items;
+        }
+        final List<String> lines = Files.readAllLines( file, StandardCharsets.UTF_8 );
+        for ( final String line : lines ) {
+            final int separator = line.indexOf( '-', 1 );
+            if ( separator < 0 ) {
+                // incomplete last line of an interrupted write
+                continue;
+            }
+            try {
+                items.add( Integer.parseInt( line.substring( 0, separator ) ), Integer.parseInt( line.substring( separator + 1 ) ) );
+            } catch ( final IllegalArgumentException e ) {
+                // incomplete last line of an interrupted write
+                continue;
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public void markCompleted( final CompletedItems items ) throws IOException {
+        if ( items.isEmpty() ) {
+            return;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for ( final CompletedItems.Range range : items.getRanges() ) {
+            sb.append( range.getFirst() ).append( '-' ).append( range.getLast() ).append( '\n' );
+        }
+        try ( Writer writer = Files.newBufferedWriter( file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND ) ) {
+            writer.write( sb.toString() );
+        }
+    }
+
+    @Override
+    public void clear() throws IOException {
+        Files.deleteIfExists( file );
+    }
+
+    @Override
+    public String toString() {
+        return "FileCheckpointStore [" + file + "]";
+    }
+}
@@ -17,12 +17,33 @@
 package com.freiheit.fuava.simplebatch.exceptions;
 
 public class FetchFailedException extends RuntimeException {
+    private final int statusCode;
 
     public FetchFailedException( final String msg ) {
+        this( msg, 0 );
+    }
+
+    /**
+     * @param statusCode the HTTP status code of the failed response
+     */
+    public FetchFailedException( final String msg, final int statusCode ) {
         super( msg );
+        this.statusCode = statusCode;
     }
 
     public FetchFailedException( final Throwable t ) {
         super( t );
+        this.statusCode = 0;
+    }
+
+    /**
+     * The HTTP status code of the failed response, 0 if unknown.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isServerError() {
+        return statusCode >= 500 && statusCode < 600;
     }
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import com.freiheit.fuava.simplebatch.http.HttpFetcherImpl;
 import com.freiheit.fuava.simplebatch.http.HttpPagingFetcher;
 import com.freiheit.fuava.simplebatch.http.PagingRequestSettings;
 import org.apache.http.client.HttpClient;
+import org.reactivestreams.Publisher;
 
 import java.io.InputStream;
 import java.nio.file.Path;
@@ -144,4 +145,39 @@ public class Fetchers {
         return new DirectoryFileFetcher<>( fileFunction, fileOrdering, dir, moreDirs );
     }
 
+    /**
+     * Iterates the given fetcher in a background thread, fetching up to
+     * {@code depth} items ahead of processing. Use this for slow, lazy fetchers
+     * like {@link #httpPagingFetcher(HttpClient, PagingRequestSettings, Function, int, int)},
+     * so fetching overlaps with processing.
+     */
+    public static <OriginalInput> Fetcher<OriginalInput> prefetching( final Fetcher<OriginalInput> fetcher, final int depth ) {
+        return new PrefetchingFetcher<>( fetcher, depth );
+    }
+
+    /**
+     * Fetches the items of a Reactive Streams publisher, requesting at most
+     * {@code bufferSize} items ahead of processing.
+     */
+    public static <OriginalInput> Fetcher<OriginalInput> publisher( final Publisher<? extends OriginalInput> publisher, final int bufferSize ) {
+        return new PublisherFetcher<>( publisher, bufferSize );
+    }
+
+    /**
+     * Returns only the items of one shard of the given fetcher, so several
+     * instances of a job can share its items without further coordination.
+     * Each instance needs to use the same fetcher and key function, and a
+     * different shard index.
+     *
+     * @param shardIndex the shard of this instance, from 0 to shardCount - 1
+     * @param shardCount the number of instances sharing the items
+     * @param keyFn extracts the key deciding on the shard of an item, must not
+     *            throw. The string representation of the key must be stable
+     *            across JVMs.
+     */
+    public static <OriginalInput> Fetcher<OriginalInput> sharded( final Fetcher<OriginalInput> fetcher, final int shardIndex, final int shardCount,
+            final Function<? super OriginalInput, ?> keyFn ) {
+        return new ShardingFetcher<>( fetcher, shardIndex, shardCount, keyFn );
+    }
+
 }
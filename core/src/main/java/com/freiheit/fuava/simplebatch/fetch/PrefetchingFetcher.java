@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.fetch;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.RunContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Iterates the results of another fetcher in a background thread, keeping up
+ * to a given number of results ready. Thus a slow, lazy fetcher (for example
+ * one fetching pages via http) fetches the next items while the previous ones
+ * are processed.
+ *
+ * Fetchers returning a {@link Collection} are not wrapped, as their results
+ * are available already.
+ *
+ * The background thread stops when the iterator is closed, or when it was
+ * abandoned and garbage collected while the thread waited for free space.
+ */
+public final class PrefetchingFetcher<OriginalInput> implements Fetcher<OriginalInput> {
+    private static final Logger LOG = LoggerFactory.getLogger( PrefetchingFetcher.class );
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * Signals the end of the fetched items to the consuming iterator.
+     */
+    private static final Object END_OF_INPUT = new Object();
+
+    /**
+     * How often a producer waiting for free space checks whether the
+     * iteration was abandoned.
+     */
+    static final long ABANDONED_CHECK_MS = 1000;
+
+    /**
+     * Passes an error of the fetcher, which cannot be handled, to the
+     * consuming iterator.
+     */
+    private static final class FatalError {
+        private final VirtualMachineError error;
+
+        private FatalError( final VirtualMachineError error ) {
+            this.error = error;
+        }
+    }
+
+    private final Fetcher<OriginalInput> fetcher;
+    private final int depth;
+
+    /**
+     * @param fetcher the fetcher to iterate in the background
+     * @param depth the maximum number of results fetched ahead
+     */
+    public PrefetchingFetcher( final Fetcher<OriginalInput> fetcher, final int depth ) {
+        if ( depth <= 0 ) {
+            throw new IllegalArgumentException( "The prefetching depth must be positive [depth=" + depth + "]" );
+        }
+        this.fetcher = fetcher;
+        this.depth = depth;
+    }
+
+    @Override
+    public Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> fetchAll() {
+        final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> iterable = fetcher.fetchAll();
+        if ( iterable instanceof Collection ) {
+            return iterable;
+        }
+        return () -> new PrefetchingIterator<>( iterable, depth );
+    }
+
+    private static final class PrefetchingIterator<OriginalInput> implements Iterator<Result<FetchedItem<OriginalInput>, OriginalInput>>, AutoCloseable {
+        private final ArrayBlockingQueue<Object> queue;
+        private final Thread producer;
+        private volatile boolean closed;
+        private Object next;
+        private boolean interrupted;
+
+        private PrefetchingIterator( final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> iterable, final int depth ) {
+            final ArrayBlockingQueue<Object> queue = new ArrayBlockingQueue<>( depth );
+            // the producer must not keep the iterator reachable, so it can detect an abandoned iteration
+            final WeakReference<PrefetchingIterator<?>> owner = new WeakReference<>( this );
+            this.queue = queue;
+            this.producer = new Thread( RunContext.wrap( () -> drain( iterable, queue, owner ) ), "SBPrefetch_" + THREAD_COUNTER.getAndIncrement() );
+            // an abandoned iteration must not keep the VM alive
+            this.producer.setDaemon( true );
+            this.producer.start();
+        }
+
+        private static <OriginalInput> void drain( final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> iterable,
+                final ArrayBlockingQueue<Object> queue, final WeakReference<PrefetchingIterator<?>> owner ) {
+            try {
+                try {
+                    for ( final Result<FetchedItem<OriginalInput>, OriginalInput> result : iterable ) {
+                        if ( !put( queue, result, owner ) ) {
+                            LOG.debug( "Prefetching iteration was abandoned, the remaining items will not be fetched" );
+                            return;
+                        }
+                    }
+                } catch ( final InterruptedException e ) {
+                    throw e;
+                } catch ( final VirtualMachineError e ) {
+                    // cannot be turned into a result, the consumer rethrows it
+                    put( queue, new FatalError( e ), owner );
+                    return;
+                } catch ( final Throwable t ) {
+                    // fetchers must not throw, but we need to stop the consumer from waiting
+                    if ( !put( queue, Result.failed( null, "Failed to prefetch the next item", t ), owner ) ) {
+                        return;
+                    }
+                }
+                put( queue, END_OF_INPUT, owner );
+            } catch ( final InterruptedException e ) {
+                LOG.warn( "Prefetching was interrupted, the remaining items will not be fetched" );
+            }
+        }
+
+        /**
+         * Waits for free space in the queue.
+         *
+         * @return false if the iteration was closed or abandoned meanwhile
+         */
+        private static boolean put( final ArrayBlockingQueue<Object> queue, final Object item, final WeakReference<PrefetchingIterator<?>> owner )
+                throws InterruptedException {
+            while ( !queue.offer( item, ABANDONED_CHECK_MS, TimeUnit.MILLISECONDS ) ) {
+                final PrefetchingIterator<?> iterator = owner.get();
+                if ( iterator == null || iterator.closed ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Stops prefetching, the remaining items will not be fetched.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            producer.interrupt();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ( next instanceof FatalError ) {
+                throw ( (FatalError) next ).error;
+            }
+            if ( next == null ) {
+                if ( interrupted || closed ) {
+                    return false;
+                }
+                try {
+                    next = queue.take();
+                } catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    interrupted = true;
+                    producer.interrupt();
+                    next = Result.failed( null, "Interrupted while waiting for the next prefetched item" );
+                }
+            }
+            if ( next instanceof FatalError ) {
+                throw ( (FatalError) next ).error;
+            }
+            return next != END_OF_INPUT;
+        }
+
+        @SuppressWarnings( "unchecked" )
+        @Override
+        public Result<FetchedItem<OriginalInput>, OriginalInput> next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            final Result<FetchedItem<OriginalInput>, OriginalInput> result = (Result<FetchedItem<OriginalInput>, OriginalInput>) next;
+            next = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.fetch;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Fetches the items emitted by a Reactive Streams {@link Publisher}. The
+ * publisher is subscribed when the iteration starts, and items are requested
+ * only as fast as the job iterates over them: at most {@code bufferSize} items
+ * are requested ahead.
+ *
+ * Errors signalled by the publisher end the iteration with a failed result.
+ *
+ * The iterators are {@link AutoCloseable}: closing an iterator cancels its
+ * subscription, which a {@link com.freiheit.fuava.simplebatch.BatchJob} does
+ * when it is cancelled.
+ *
+ * On Java 9 and newer, {@code org.reactivestreams.FlowAdapters} converts a
+ * {@code java.util.concurrent.Flow.Publisher} into a {@link Publisher}.
+ */
+public final class PublisherFetcher<OriginalInput> implements Fetcher<OriginalInput> {
+    private final Publisher<? extends OriginalInput> publisher;
+    private final int bufferSize;
+
+    /**
+     * @param publisher the publisher of the items to process
+     * @param bufferSize the maximum number of items requested but not yet processed
+     */
+    public PublisherFetcher( final Publisher<? extends OriginalInput> publisher, final int bufferSize ) {
+        if ( bufferSize <= 0 ) {
+            throw new IllegalArgumentException( "The buffer size must be positive [bufferSize=" + bufferSize + "]" );
+        }
+        this.publisher = publisher;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> fetchAll() {
+        return () -> {
+            final SubscribingIterator<OriginalInput> iterator = new SubscribingIterator<>( bufferSize );
+            publisher.subscribe( iterator );
+            return iterator;
+        };
+    }
+
+    private static final class SubscribingIterator<OriginalInput> implements Iterator<Result<FetchedItem<OriginalInput>, OriginalInput>>, Subscriber<OriginalInput>,
+            AutoCloseable {
+        /**
+         * Signals that the publisher completed.
+         */
+        private static final Object END_OF_INPUT = new Object();
+
+        private final int bufferSize;
+        private final int replenishThreshold;
+        /**
+         * Has room for all requested items plus the terminal signal.
+         */
+        private final ArrayBlockingQueue<Object> queue;
+
+        private volatile Subscription subscription;
+        private volatile boolean closed;
+        private Object next;
+        private Result<FetchedItem<OriginalInput>, OriginalInput> failure;
+        private boolean done;
+        private int numConsumed;
+        private int num = FetchedItem.FIRST_ROW;
+
+        private SubscribingIterator( final int bufferSize ) {
+            this.bufferSize = bufferSize;
+            this.replenishThreshold = Math.max( 1, bufferSize / 2 );
+            this.queue = new ArrayBlockingQueue<>( bufferSize + 1 );
+        }
+
+        @Override
+        public void onSubscribe( final Subscription s ) {
+            if ( this.subscription != null ) {
+                s.cancel();
+                return;
+            }
+            this.subscription = s;
+            if ( closed ) {
+                s.cancel();
+                return;
+            }
+            s.request( bufferSize );
+        }
+
+        @Override
+        public void onNext( final OriginalInput item ) {
+            if ( !queue.offer( item ) ) {
+                subscription.cancel();
+                onError( new IllegalStateException( "Publisher emitted more items than requested" ) );
+            }
+        }
+
+        @Override
+        public void onError( final Throwable t ) {
+            enqueueTerminal( new PublisherFailure( t ) );
+        }
+
+        @Override
+        public void onComplete() {
+            enqueueTerminal( END_OF_INPUT );
+        }
+
+        private void enqueueTerminal( final Object signal ) {
+            // the queue always has room for the terminal signal, unless the
+            // publisher violated the demand - then make room for it
+            while ( !queue.offer( signal ) ) {
+                queue.poll();
+            }
+        }
+
+        /**
+         * Cancels the subscription, the iteration ends.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            final Subscription s = subscription;
+            if ( s != null ) {
+                s.cancel();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ( next == null ) {
+                if ( done || closed ) {
+                    return false;
+                }
+                next = take();
+            }
+            return next != END_OF_INPUT;
+        }
+
+        private Object take() {
+            try {
+                final Object item = queue.take();
+                if ( item instanceof PublisherFailure ) {
+                    done = true;
+                    failure = Result.failed( nextFetchedItem( null ), "Publisher signalled an error", ( (PublisherFailure) item ).cause );
+                    return item;
+                }
+                if ( item == END_OF_INPUT ) {
+                    done = true;
+                    return END_OF_INPUT;
+                }
+                if ( ++numConsumed >= replenishThreshold ) {
+                    subscription.request( numConsumed );
+                    numConsumed = 0;
+                }
+                return item;
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                done = true;
+                final Subscription s = subscription;
+                if ( s != null ) {
+                    s.cancel();
+                }
+                failure = Result.failed( nextFetchedItem( null ), "Interrupted while waiting for the publisher" );
+                return failure;
+            }
+        }
+
+        @SuppressWarnings( "unchecked" )
+        @Override
+        public Result<FetchedItem<OriginalInput>, OriginalInput> next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            final Object item = next;
+            next = null;
+            if ( failure != null ) {
+                return failure;
+            }
+            final OriginalInput value = (OriginalInput) item;
+            return Result.success( nextFetchedItem( value ), value );
+        }
+
+        private FetchedItem<OriginalInput> nextFetchedItem( final OriginalInput value ) {
+            return FetchedItem.of( value, num++, null );
+        }
+    }
+
+    private static final class PublisherFailure {
+        private final Throwable cause;
+
+        private PublisherFailure( final Throwable cause ) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.fetch;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.EagernessUtil;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Returns only one slice ("shard") of the results of another fetcher, so
+ * several instances of the same job - for example on different machines - can
+ * share the work without coordinating with each other: each instance uses the
+ * same fetcher and key function, but a different shard index.
+ *
+ * Items are assigned to the shards by a checksum of the string representation
+ * of their key, which - unlike {@link Object#hashCode()} of enums or of
+ * classes not overriding it - is the same in every JVM. The key function must
+ * therefore return keys whose {@link Object#toString()} identifies them and
+ * does not change between instances, like strings, numbers, enums or UUIDs.
+ * Failed fetch results have no value and are assigned by their row number, so
+ * each of them is reported by exactly one shard. Row numbers are kept, so they are
+ * the same on all shards.
+ */
+public final class ShardingFetcher<OriginalInput> implements Fetcher<OriginalInput> {
+    private final Fetcher<OriginalInput> fetcher;
+    private final int shardIndex;
+    private final int shardCount;
+    private final Function<? super OriginalInput, ?> keyFn;
+
+    /**
+     * @param fetcher the fetcher returning the items of all shards
+     * @param shardIndex the shard of this instance, from 0 to shardCount - 1
+     * @param shardCount the number of shards
+     * @param keyFn extracts the key deciding on the shard of an item, must not
+     *            throw. The string representation of the key must be stable
+     *            across JVMs.
+     */
+    public ShardingFetcher( final Fetcher<OriginalInput> fetcher, final int shardIndex, final int shardCount, final Function<? super OriginalInput, ?> keyFn ) {
+        if ( shardCount <= 0 || shardIndex < 0 || shardIndex >= shardCount ) {
+            throw new IllegalArgumentException( "Invalid shard [shardIndex=" + shardIndex + ", shardCount=" + shardCount + "]" );
+        }
+        this.fetcher = Objects.requireNonNull( fetcher, "Fetcher must be set" );
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.keyFn = Objects.requireNonNull( keyFn, "Key function must be set" );
+    }
+
+    @Override
+    public Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> fetchAll() {
+        final Iterable<Result<FetchedItem<OriginalInput>, OriginalInput>> iterable = fetcher.fetchAll();
+        return EagernessUtil.preserveEagerness( iterable, () -> StreamSupport.stream( iterable.spliterator(), false )
+                .filter( result -> shardOf( result ) == shardIndex )
+                .iterator() );
+    }
+
+    private int shardOf( final Result<FetchedItem<OriginalInput>, OriginalInput> result ) {
+        final OriginalInput value = result.getOutput();
+        final FetchedItem<OriginalInput> fetchedItem = result.getInput();
+        final int hash = value != null
+            ? stableHash( keyFn.apply( value ) )
+            : fetchedItem == null
+                ? 0
+                : fetchedItem.getNum();
+        return Math.floorMod( mix( hash ), shardCount );
+    }
+
+    static int shardOfKey( final Object key, final int shardCount ) {
+        return Math.floorMod( mix( stableHash( key ) ), shardCount );
+    }
+
+    /**
+     * The CRC32 checksum of the UTF-8 encoded string representation of the
+     * key, 0 for null keys.
+     */
+    private static int stableHash( @Nullable final Object key ) {
+        if ( key == null ) {
+            return 0;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update( key.toString().getBytes( StandardCharsets.UTF_8 ) );
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Scrambles all bits of the hash (the finalizer of MurmurHash3), so
+     * consecutive row numbers and similar keys are spread over all shards.
+     */
+    private static int mix( final int hash ) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardingFetcher [shard " + shardIndex + " of " + shardCount + ", " + fetcher + "]";
+    }
+}
@@ -65,7 +65,7 @@ public class HttpFetcherImpl implements HttpFetcher {
                 throw new FetchFailedException(
                         String.format( "Failed to add items for url %s . Response is %s - %s ", Integer.toString( responseCode ),
                                 uri,
-                                IOStreamUtils.consumeAsString( response.getEntity().getContent() ) ) );
+                                IOStreamUtils.consumeAsString( response.getEntity().getContent() ) ), responseCode );
             }
 
             try ( InputStream stream = response.getEntity().getContent() ) {
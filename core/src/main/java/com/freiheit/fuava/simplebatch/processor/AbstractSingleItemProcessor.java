@@ -18,16 +18,29 @@ package com.freiheit.fuava.simplebatch.processor;
 
 import com.freiheit.fuava.simplebatch.result.Result;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.List;
 
 public abstract class AbstractSingleItemProcessor<OriginalItem, Input, Output> implements Processor<OriginalItem, Input, Output> {
     @Override
     public final Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> iterable ) {
-        return Collections.unmodifiableList( StreamSupport.stream( iterable.spliterator(), false )
-                .map( this::processItem )
-                .collect( Collectors.toList() ) );
+        return processAll( iterable );
+    }
+
+    /**
+     * Processes each item with {@link #processItem(Result)}. Processors of
+     * this package may process the items as {@link ResultBatch} instead.
+     */
+    Iterable<Result<OriginalItem, Output>> processAll( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        final List<Result<OriginalItem, Output>> results = iterable instanceof Collection
+            ? new ArrayList<>( ( (Collection<?>) iterable ).size() )
+            : new ArrayList<>();
+        for ( final Result<OriginalItem, Input> input : iterable ) {
+            results.add( processItem( input ) );
+        }
+        return Collections.unmodifiableList( results );
     }
 
     public abstract Result<OriginalItem, Output> processItem( Result<OriginalItem, Input> input );
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A processor which does not block the calling thread while waiting for I/O,
+ * but returns a {@link CompletionStage} of the results - for example because
+ * it uses an asynchronous HTTP client.
+ *
+ * Set with
+ * {@link com.freiheit.fuava.simplebatch.BatchJob.Builder#setAsyncProcessor(AsyncProcessor, int)},
+ * a few threads can keep many chunks in flight. Synchronous processors can be
+ * adapted with {@link Processors#async(Processor)} and
+ * {@link Processors#async(Processor, java.util.concurrent.Executor)}.
+ */
+public interface AsyncProcessor<OriginalItem, Input, Output> {
+
+    /**
+     * Start processing the given results. The same rules as for
+     * {@link Processor#process(Iterable)} apply to the results of the returned
+     * stage: exactly one result for each input result, failures are reported
+     * as failed results.
+     *
+     * <p>
+     * Implementations <b>MUST NOT</b> throw, and should not complete the stage
+     * exceptionally. If they do nevertheless, all items of the chunk fail with
+     * the exception.
+     * </p>
+     */
+    CompletionStage<Iterable<Result<OriginalItem, Output>>> processAsync( Iterable<Result<OriginalItem, Input>> iterable );
+
+    /**
+     * Process the results of this processor with the given processor, as soon
+     * as they are available.
+     */
+    default <D> AsyncProcessor<OriginalItem, Input, D> then( final AsyncProcessor<OriginalItem, Output, D> g ) {
+        return new ChainedAsyncProcessor<OriginalItem, Input, Output, D>( this, g );
+    }
+
+    default String getStageName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @see Processor#isIdempotent()
+     */
+    default boolean isIdempotent() {
+        return false;
+    }
+}
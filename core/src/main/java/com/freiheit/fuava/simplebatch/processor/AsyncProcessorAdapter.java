@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.RunContext;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Adapts a synchronous processor to {@link AsyncProcessor}, either processing
+ * in the calling thread or in the threads of an executor.
+ */
+final class AsyncProcessorAdapter<OriginalItem, Input, Output> implements AsyncProcessor<OriginalItem, Input, Output> {
+    private final Processor<OriginalItem, Input, Output> delegee;
+    @Nullable
+    private final Executor executor;
+
+    AsyncProcessorAdapter( final Processor<OriginalItem, Input, Output> delegee, @Nullable final Executor executor ) {
+        this.delegee = delegee;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletionStage<Iterable<Result<OriginalItem, Output>>> processAsync( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        if ( executor == null ) {
+            return CompletableFuture.completedFuture( delegee.process( iterable ) );
+        }
+        // the threads of the executor process the items in the run of the caller
+        final RunContext run = RunContext.current();
+        try {
+            return CompletableFuture.supplyAsync( () -> run == null
+                ? delegee.process( iterable )
+                : run.call( () -> delegee.process( iterable ) ), executor );
+        } catch ( final RejectedExecutionException e ) {
+            final CompletableFuture<Iterable<Result<OriginalItem, Output>>> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally( e );
+            return rejected;
+        }
+    }
+
+    @Override
+    public String getStageName() {
+        return delegee.getStageName();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegee.isIdempotent();
+    }
+
+    @Override
+    public String toString() {
+        return delegee.toString();
+    }
+}
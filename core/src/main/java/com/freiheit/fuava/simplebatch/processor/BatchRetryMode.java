@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+/**
+ * How the retrying processors retry the items of a batch which failed as a
+ * whole.
+ *
+ * @see Processors#retryableBatchedFunction(java.util.function.Function, BatchRetryMode)
+ */
+public enum BatchRetryMode {
+    /**
+     * Retry each item in a singleton batch. A batch of n items with a single
+     * bad item needs n + 1 calls.
+     */
+    SINGLE_ITEMS,
+
+    /**
+     * Split the failed batch in halves and retry each half, recursively. A
+     * batch of n items with k bad items needs about 2 k log2( n ) calls, so
+     * this is much cheaper than {@link #SINGLE_ITEMS} for large batches with
+     * few bad items - but an item may be passed to the function more than two
+     * times. A {@link RetryPolicy} multiplies the calls for errors it
+     * classifies as transient, as it is applied to every half.
+     */
+    BISECTION
+}
@@ -71,6 +71,11 @@ final class BatchedSuccessesProcessor<Input, Output, P> implements Processor<Inp
     public String getStageName() {
         return delegee.getStageName();
     }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegee.isIdempotent();
+    }
     
     @Override
     public String toString() {
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * Adapts an {@link AsyncProcessor} to a synchronous processor by waiting for
+ * its results.
+ */
+final class BlockingProcessor<OriginalItem, Input, Output> implements Processor<OriginalItem, Input, Output> {
+    private final AsyncProcessor<OriginalItem, Input, Output> delegee;
+
+    BlockingProcessor( final AsyncProcessor<OriginalItem, Input, Output> delegee ) {
+        this.delegee = delegee;
+    }
+
+    @Override
+    public Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        final List<Result<OriginalItem, Input>> inputs = IterableUtils.asList( iterable );
+        try {
+            return delegee.processAsync( inputs ).toCompletableFuture().join();
+        } catch ( final VirtualMachineError e ) {
+            throw e;
+        } catch ( final Throwable t ) {
+            final Throwable cause = t instanceof CompletionException && t.getCause() != null
+                ? t.getCause()
+                : t;
+            if ( cause instanceof VirtualMachineError ) {
+                // there is absolutely no way how those types of errors could be handled, rethrow it
+                throw (VirtualMachineError) cause;
+            }
+            return inputs.stream()
+                    .map( input -> Result.<OriginalItem, Output>builder( input ).failed( cause ) )
+                    .collect( Collectors.toList() );
+        }
+    }
+
+    @Override
+    public String getStageName() {
+        return delegee.getStageName();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegee.isIdempotent();
+    }
+
+    @Override
+    public String toString() {
+        return delegee.toString();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The configuration of the cache of {@link Processors#cached(Processor, java.util.function.Function, CacheSpec)}.
+ */
+public final class CacheSpec {
+
+    public static final class Builder {
+        private int maximumSize = 10000;
+        private long expireAfterWriteNanos = Long.MAX_VALUE;
+
+        /**
+        * The maximum number of entries, the least recently used entries are
+        * evicted first
+        * @return this for method chaining
+        */
+        public Builder setMaximumSize( final int maximumSize ) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+        * The time after which an entry expires, counted from when it was added.
+        * By default, entries do not expire.
+        * @return this for method chaining
+        */
+        public Builder setExpireAfterWrite( final long duration, final TimeUnit unit ) {
+            this.expireAfterWriteNanos = unit.toNanos( duration );
+            return this;
+        }
+
+        public CacheSpec build() {
+            return new CacheSpec( maximumSize, expireAfterWriteNanos );
+        }
+    }
+
+    private final int maximumSize;
+    private final long expireAfterWriteNanos;
+
+    private CacheSpec( final int maximumSize, final long expireAfterWriteNanos ) {
+        if ( maximumSize <= 0 ) {
+            throw new IllegalArgumentException( "The maximum size must be positive [maximumSize=" + maximumSize + "]" );
+        }
+        if ( expireAfterWriteNanos <= 0 ) {
+            throw new IllegalArgumentException( "The expiry must be positive [expireAfterWriteNanos=" + expireAfterWriteNanos + "]" );
+        }
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getExpireAfterWriteNanos() {
+        return expireAfterWriteNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheSpec [maximumSize=" + maximumSize + ", expireAfterWriteNanos=" + expireAfterWriteNanos + "]";
+    }
+}
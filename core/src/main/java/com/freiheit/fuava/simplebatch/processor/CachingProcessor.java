@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the outputs of a processor by a key derived from the input value, so
+ * that inputs with a cached key are not passed to the processor at all. Only
+ * successful outputs are cached.
+ *
+ * Instances are thread safe and may be shared by several jobs.
+ *
+ * @see Processors#cached(Processor, Function, CacheSpec)
+ */
+public final class CachingProcessor<OriginalItem, Input, Output> implements Processor<OriginalItem, Input, Output> {
+    private static final Logger LOG = LoggerFactory.getLogger( CachingProcessor.class );
+
+    private final Processor<OriginalItem, Input, Output> delegee;
+    private final Function<? super Input, ?> keyFunction;
+    private final LruCache<Object, Output> cache;
+    private final LongSupplier nanoTime;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    CachingProcessor( final Processor<OriginalItem, Input, Output> delegee, final Function<? super Input, ?> keyFunction, final CacheSpec spec,
+            final LongSupplier nanoTime ) {
+        this.delegee = Objects.requireNonNull( delegee, "Processor must be set" );
+        this.keyFunction = Objects.requireNonNull( keyFunction, "Key Function must be set" );
+        this.cache = new LruCache<>( spec.getMaximumSize(), spec.getExpireAfterWriteNanos() );
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        final List<Result<OriginalItem, Input>> inputs = IterableUtils.asList( iterable );
+        final List<Result<OriginalItem, Output>> results = new ArrayList<>( Collections.nCopies( inputs.size(), null ) );
+        final List<Result<OriginalItem, Input>> misses = new ArrayList<>();
+        final List<Integer> missIndexes = new ArrayList<>();
+        final List<Object> missKeys = new ArrayList<>();
+
+        final long nowNanos = nanoTime.getAsLong();
+        for ( int i = 0; i < inputs.size(); i++ ) {
+            final Result<OriginalItem, Input> input = inputs.get( i );
+            final Object key = input.isSuccess()
+                ? keyFunction.apply( input.getOutput() )
+                : null;
+            final Output cached = key == null
+                ? null
+                : cache.get( key, nowNanos );
+            if ( cached != null ) {
+                hitCount.increment();
+                results.set( i, Result.<OriginalItem, Output>builder( input ).withOutput( cached ).success() );
+            } else {
+                if ( key != null ) {
+                    missCount.increment();
+                }
+                misses.add( input );
+                missIndexes.add( i );
+                missKeys.add( key );
+            }
+        }
+        if ( misses.isEmpty() ) {
+            return Collections.unmodifiableList( results );
+        }
+
+        final List<Result<OriginalItem, Output>> processed = IterableUtils.asList( delegee.process( misses ) );
+        final int[] inputIndexes = ResultAttribution.inputIndexes( misses, processed );
+        if ( inputIndexes == null ) {
+            LOG.warn( "Could not attribute the results of {} to its inputs, not caching them", delegee );
+            final List<Result<OriginalItem, Output>> unordered = new ArrayList<>( inputs.size() );
+            results.stream().filter( Objects::nonNull ).forEach( unordered::add );
+            unordered.addAll( processed );
+            return Collections.unmodifiableList( unordered );
+        }
+        final long writeNanos = nanoTime.getAsLong();
+        for ( int i = 0; i < processed.size(); i++ ) {
+            final Result<OriginalItem, Output> result = processed.get( i );
+            final int missIndex = inputIndexes[i];
+            results.set( missIndexes.get( missIndex ).intValue(), result );
+            final Object key = missKeys.get( missIndex );
+            if ( key != null && result.isSuccess() ) {
+                cache.put( key, result.getOutput(), writeNanos );
+            }
+        }
+        return Collections.unmodifiableList( results );
+    }
+
+    /**
+     * The number of inputs whose output was taken from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * The number of successful inputs passed to the processor because their
+     * key was not cached.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * The number of entries removed because the cache was full or the entry
+     * expired.
+     */
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public String getStageName() {
+        return delegee.getStageName();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegee.isIdempotent();
+    }
+
+    @Override
+    public String toString() {
+        return "Cached " + delegee + " [hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+}
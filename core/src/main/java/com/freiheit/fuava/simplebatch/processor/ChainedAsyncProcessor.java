@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.RunContext;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Passes the results of one asynchronous processor to another one, without
+ * waiting for them in between.
+ */
+final class ChainedAsyncProcessor<A, B, C, D> implements AsyncProcessor<A, B, D> {
+    private final AsyncProcessor<A, B, C> f;
+    private final AsyncProcessor<A, C, D> g;
+
+    ChainedAsyncProcessor( final AsyncProcessor<A, B, C> f, final AsyncProcessor<A, C, D> g ) {
+        this.f = f;
+        this.g = g;
+    }
+
+    @Override
+    public CompletionStage<Iterable<Result<A, D>>> processAsync( final Iterable<Result<A, B>> iterable ) {
+        // g is called by the thread completing f, which needs the run of the caller
+        final RunContext run = RunContext.current();
+        return f.processAsync( iterable ).thenCompose( results -> run == null
+            ? g.processAsync( results )
+            : run.call( () -> g.processAsync( results ) ) );
+    }
+
+    @Override
+    public String getStageName() {
+        return f.getStageName() + " -> " + g.getStageName();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return f.isIdempotent() && g.isIdempotent();
+    }
+
+    @Override
+    public String toString() {
+        return f + " -> " + g;
+    }
+}
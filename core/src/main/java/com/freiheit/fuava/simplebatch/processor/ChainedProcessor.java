@@ -36,6 +36,11 @@ public final class ChainedProcessor<A, B, D> implements Processor<A, B, D> {
     public String getStageName() {
         return this.f.getStageName();
     }
+
+    @Override
+    public boolean isIdempotent() {
+        return this.f.isIdempotent();
+    }
     
     @Override
     public String toString() {
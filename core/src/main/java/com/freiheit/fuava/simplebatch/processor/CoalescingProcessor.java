@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Passes only one input per key of each chunk to a processor, and copies its
+ * result to the other inputs with the same key - keeping their original
+ * items. Failed inputs and inputs with a null key are always passed to the
+ * processor.
+ */
+final class CoalescingProcessor<OriginalItem, Input, Output> implements Processor<OriginalItem, Input, Output> {
+    private static final Logger LOG = LoggerFactory.getLogger( CoalescingProcessor.class );
+
+    private final Processor<OriginalItem, Input, Output> delegee;
+    private final Function<? super Input, ?> keyFunction;
+
+    CoalescingProcessor( final Processor<OriginalItem, Input, Output> delegee, final Function<? super Input, ?> keyFunction ) {
+        this.delegee = Objects.requireNonNull( delegee, "Processor must be set" );
+        this.keyFunction = Objects.requireNonNull( keyFunction, "Key Function must be set" );
+    }
+
+    @Override
+    public Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        final List<Result<OriginalItem, Input>> inputs = IterableUtils.asList( iterable );
+        final List<Result<OriginalItem, Input>> uniqueInputs = new ArrayList<>( inputs.size() );
+        // for each input, the index of the unique input passed to the processor in its place
+        final int[] uniqueIndexes = new int[inputs.size()];
+        final Map<Object, Integer> uniqueIndexByKey = new HashMap<>();
+        for ( int i = 0; i < inputs.size(); i++ ) {
+            final Result<OriginalItem, Input> input = inputs.get( i );
+            final Object key = input.isSuccess()
+                ? keyFunction.apply( input.getOutput() )
+                : null;
+            final Integer uniqueIndex = key == null
+                ? null
+                : uniqueIndexByKey.get( key );
+            if ( uniqueIndex != null ) {
+                uniqueIndexes[i] = uniqueIndex.intValue();
+            } else {
+                uniqueIndexes[i] = uniqueInputs.size();
+                if ( key != null ) {
+                    uniqueIndexByKey.put( key, Integer.valueOf( uniqueInputs.size() ) );
+                }
+                uniqueInputs.add( input );
+            }
+        }
+        if ( uniqueInputs.size() == inputs.size() ) {
+            return delegee.process( inputs );
+        }
+        LOG.debug( "Coalesced {} inputs to {} unique inputs", inputs.size(), uniqueInputs.size() );
+
+        final List<Result<OriginalItem, Output>> uniqueResults = IterableUtils.asList( delegee.process( uniqueInputs ) );
+        final int[] inputIndexes = ResultAttribution.inputIndexes( uniqueInputs, uniqueResults );
+        if ( inputIndexes == null ) {
+            LOG.warn( "Could not attribute the results of {} to its inputs, processing the duplicates separately", delegee );
+            return processDuplicatesSeparately( inputs, uniqueIndexes, uniqueResults );
+        }
+        @SuppressWarnings( "unchecked" )
+        final Result<OriginalItem, Output>[] resultsByUniqueIndex = (Result<OriginalItem, Output>[]) new Result<?, ?>[uniqueInputs.size()];
+        for ( int i = 0; i < uniqueResults.size(); i++ ) {
+            resultsByUniqueIndex[inputIndexes[i]] = uniqueResults.get( i );
+        }
+
+        final List<Result<OriginalItem, Output>> results = new ArrayList<>( inputs.size() );
+        for ( int i = 0; i < inputs.size(); i++ ) {
+            final Result<OriginalItem, Output> result = resultsByUniqueIndex[uniqueIndexes[i]];
+            final OriginalItem originalItem = inputs.get( i ).getInput();
+            results.add( result.getInput() == originalItem
+                ? result
+                : copy( result, originalItem ) );
+        }
+        return Collections.unmodifiableList( results );
+    }
+
+    private List<Result<OriginalItem, Output>> processDuplicatesSeparately( final List<Result<OriginalItem, Input>> inputs, final int[] uniqueIndexes,
+            final List<Result<OriginalItem, Output>> uniqueResults ) {
+        final List<Result<OriginalItem, Input>> duplicates = new ArrayList<>();
+        int numUnique = 0;
+        for ( int i = 0; i < inputs.size(); i++ ) {
+            if ( uniqueIndexes[i] == numUnique ) {
+                numUnique++;
+            } else {
+                duplicates.add( inputs.get( i ) );
+            }
+        }
+        final List<Result<OriginalItem, Output>> results = new ArrayList<>( inputs.size() );
+        results.addAll( uniqueResults );
+        delegee.process( duplicates ).forEach( results::add );
+        return Collections.unmodifiableList( results );
+    }
+
+    private static <OriginalItem, Output> Result<OriginalItem, Output> copy( final Result<OriginalItem, Output> result, final OriginalItem originalItem ) {
+        final Result.Builder<OriginalItem, Output> builder = Result.<OriginalItem, Output>builder( result, originalItem );
+        return result.isSuccess()
+            ? builder.withOutput( result.getOutput() ).success()
+            : builder.failed();
+    }
+
+    @Override
+    public String getStageName() {
+        return delegee.getStageName();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegee.isIdempotent();
+    }
+
+    @Override
+    public String toString() {
+        return "Coalescing " + delegee;
+    }
+}
@@ -18,13 +18,24 @@ package com.freiheit.fuava.simplebatch.processor;
 
 import com.freiheit.fuava.simplebatch.result.Result;
 
+import java.util.List;
+
+/**
+ * Passes the output of the first processor to the second one.
+ *
+ * Runs of consecutive single item stages within the whole composition are
+ * fused, so each item passes through all of them at once and only the
+ * output of the last stage of a run is collected in a list.
+ */
 final class ComposedProcessor<OriginalItem, Input, Intermediate, Output> implements Processor<OriginalItem, Input, Output> {
     private final Processor<OriginalItem, Input, Intermediate> f;
     private final Processor<OriginalItem, Intermediate, Output> g;
+    private final List<Processor<?, ?, ?>> fusedStages;
 
     ComposedProcessor( final Processor<OriginalItem, Intermediate, Output> g, final Processor<OriginalItem, Input, Intermediate> f ) {
         this.g = g;
         this.f = f;
+        this.fusedStages = FusedSingleItemProcessor.fuse( ProcessorStages.flatten( this ) );
     }
 
     Processor<OriginalItem, Input, Intermediate> getFirst() {
@@ -35,11 +46,14 @@ final class ComposedProcessor<OriginalItem, Input, Intermediate, Output> impleme
         return g;
     }
 
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
     @Override
     public Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> toPersist ) {
-        final Iterable<Result<OriginalItem, Intermediate>> fResults = this.f.process( toPersist );
-        final Iterable<Result<OriginalItem, Output>> gResults = this.g.process( fResults );
-        return gResults;
+        Iterable results = toPersist;
+        for ( final Processor stage : fusedStages ) {
+            results = stage.process( results );
+        }
+        return results;
     }
     
     @Override
@@ -47,4 +61,9 @@ final class ComposedProcessor<OriginalItem, Input, Intermediate, Output> impleme
         return this.f.getStageName() + ", " + this.g.getStageName();
     }
 
+    @Override
+    public boolean isIdempotent() {
+        return this.f.isIdempotent() && this.g.isIdempotent();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consecutive single item stages of a composed processor, which pass each
+ * item through all stages before the next item is processed. This avoids
+ * collecting the output of each stage in a list of its own.
+ */
+final class FusedSingleItemProcessor extends AbstractSingleItemProcessor<Object, Object, Object> {
+    private final List<AbstractSingleItemProcessor<Object, Object, Object>> stages;
+    private final boolean columnar;
+
+    FusedSingleItemProcessor( final List<AbstractSingleItemProcessor<Object, Object, Object>> stages ) {
+        this.stages = Collections.unmodifiableList( new ArrayList<>( stages ) );
+        this.columnar = stages.stream().allMatch( stage -> stage instanceof SingleItemProcessor && ( (SingleItemProcessor<?, ?, ?>) stage ).isColumnar() );
+    }
+
+    /**
+     * Replaces each run of at least two consecutive single item stages with a
+     * fused stage.
+     */
+    @SuppressWarnings( "unchecked" )
+    static List<Processor<?, ?, ?>> fuse( final List<Processor<?, ?, ?>> stages ) {
+        final List<Processor<?, ?, ?>> result = new ArrayList<>( stages.size() );
+        final List<AbstractSingleItemProcessor<Object, Object, Object>> run = new ArrayList<>();
+        for ( final Processor<?, ?, ?> stage : stages ) {
+            if ( stage instanceof AbstractSingleItemProcessor ) {
+                run.add( (AbstractSingleItemProcessor<Object, Object, Object>) stage );
+            } else {
+                addRun( result, run );
+                result.add( stage );
+            }
+        }
+        addRun( result, run );
+        return Collections.unmodifiableList( result );
+    }
+
+    private static void addRun( final List<Processor<?, ?, ?>> result, final List<AbstractSingleItemProcessor<Object, Object, Object>> run ) {
+        if ( run.size() == 1 ) {
+            result.add( run.get( 0 ) );
+        } else if ( run.size() > 1 ) {
+            result.add( new FusedSingleItemProcessor( run ) );
+        }
+        run.clear();
+    }
+
+    /**
+     * If all stages only transform the output of successful items, the
+     * transformations are applied to a {@link ResultBatch} at once.
+     */
+    @Override
+    Iterable<Result<Object, Object>> processAll( final Iterable<Result<Object, Object>> iterable ) {
+        if ( !columnar ) {
+            return super.processAll( iterable );
+        }
+        return ResultBatch.of( iterable ).mapSuccesses( this::applyAll );
+    }
+
+    private Object applyAll( final Object input ) {
+        Object value = input;
+        for ( int i = 0; i < stages.size(); i++ ) {
+            if ( value == null ) {
+                throw new IllegalArgumentException( "Successful results always must contain a result" );
+            }
+            value = ( (SingleItemProcessor<Object, Object, Object>) stages.get( i ) ).apply( value );
+        }
+        return value;
+    }
+
+    @Override
+    public Result<Object, Object> processItem( final Result<Object, Object> input ) {
+        Result<Object, Object> result = input;
+        for ( int i = 0; i < stages.size(); i++ ) {
+            result = stages.get( i ).processItem( result );
+        }
+        return result;
+    }
+
+    @Override
+    public String getStageName() {
+        final StringBuilder sb = new StringBuilder();
+        for ( final AbstractSingleItemProcessor<Object, Object, Object> stage : stages ) {
+            if ( sb.length() > 0 ) {
+                sb.append( ", " );
+            }
+            sb.append( stage.getStageName() );
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return stages.stream().allMatch( Processor::isIdempotent );
+    }
+}
@@ -17,6 +17,7 @@
 package com.freiheit.fuava.simplebatch.processor;
 
 import java.io.InputStream;
+import java.util.Objects;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -31,6 +32,7 @@ class HttpDownloader<Input, Id, T> extends AbstractSingleItemProcessor<Input, Id
     private final HttpFetcher fetcher;
     private final HttpDownloaderSettings<Id> settings;
     private final Function<InputStream, T> converter;
+    private final RetryPolicy retryPolicy;
 
     public HttpDownloader(
             final HttpClient client,
@@ -50,9 +52,18 @@ class HttpDownloader<Input, Id, T> extends AbstractSingleItemProcessor<Input, Id
             final HttpFetcher fetcher,
             final HttpDownloaderSettings<Id> settings,
             final Function<InputStream, T> converter ) {
+        this( fetcher, settings, converter, RetryPolicy.none() );
+    }
+
+    public HttpDownloader(
+            final HttpFetcher fetcher,
+            final HttpDownloaderSettings<Id> settings,
+            final Function<InputStream, T> converter,
+            final RetryPolicy retryPolicy ) {
         this.fetcher = fetcher;
         this.settings = settings;
         this.converter = converter;
+        this.retryPolicy = Objects.requireNonNull( retryPolicy, "Retry Policy must be set" );
     }
 
     @Override
@@ -63,7 +74,7 @@ class HttpDownloader<Input, Id, T> extends AbstractSingleItemProcessor<Input, Id
         final Input input = data.getInput();
         final Id id = data.getOutput();
         try {
-            final T result = fetcher.fetch( converter, settings.createFetchUrl( id ), settings.getRequestHeaders() );
+            final T result = retryPolicy.call( () -> fetcher.fetch( converter, settings.createFetchUrl( id ), settings.getRequestHeaders() ) );
             return Result.success( input, result );
         } catch ( final Throwable e ) {
             return Result.failed( input, e );
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+
+/**
+ * Marks a processor as idempotent, see {@link Processor#isIdempotent()}.
+ */
+final class IdempotentProcessor<OriginalItem, Input, Output> implements Processor<OriginalItem, Input, Output> {
+    private final Processor<OriginalItem, Input, Output> delegee;
+
+    IdempotentProcessor( final Processor<OriginalItem, Input, Output> delegee ) {
+        this.delegee = delegee;
+    }
+
+    @Override
+    public Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        return delegee.process( iterable );
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+
+    @Override
+    public String getStageName() {
+        return delegee.getStageName();
+    }
+
+    @Override
+    public String toString() {
+        return delegee.toString();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe map with a bounded number of entries, evicting the least
+ * recently used entry first, and with entries expiring a fixed time after
+ * they were added.
+ */
+final class LruCache<K, V> {
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long writeNanos;
+
+        private CacheEntry( final V value, final long writeNanos ) {
+            this.value = value;
+            this.writeNanos = writeNanos;
+        }
+    }
+
+    private final int maximumSize;
+    private final long expireAfterWriteNanos;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    // guarded by this
+    private long evictionCount;
+
+    LruCache( final int maximumSize, final long expireAfterWriteNanos ) {
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<K, CacheEntry<V>> eldest ) {
+                if ( size() > LruCache.this.maximumSize ) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The value for the given key, or null if there is none or it expired.
+     */
+    @Nullable
+    synchronized V get( final K key, final long nowNanos ) {
+        final CacheEntry<V> entry = entries.get( key );
+        if ( entry == null ) {
+            return null;
+        }
+        if ( nowNanos - entry.writeNanos >= expireAfterWriteNanos ) {
+            entries.remove( key );
+            evictionCount++;
+            return null;
+        }
+        return entry.value;
+    }
+
+    synchronized void put( final K key, final V value, final long nowNanos ) {
+        entries.put( key, new CacheEntry<>( value, nowNanos ) );
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+}
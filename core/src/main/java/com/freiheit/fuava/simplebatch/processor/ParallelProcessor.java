@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import com.freiheit.fuava.simplebatch.util.RunContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes the items of a chunk concurrently, with up to a fixed number of
+ * threads: the calling thread and helpers running in an executor. Each thread
+ * takes the next unprocessed item until all items are taken, and the results
+ * are returned in the order of the input.
+ *
+ * The calling thread never waits for helpers which did not start yet, so the
+ * executor may be shared and even be saturated - the chunk is then processed
+ * in the calling thread alone.
+ */
+final class ParallelProcessor<OriginalItem, Input, Output> implements Processor<OriginalItem, Input, Output> {
+    private static final Logger LOG = LoggerFactory.getLogger( ParallelProcessor.class );
+
+    private final Processor<OriginalItem, Input, Output> delegee;
+    private final int parallelism;
+    private final Executor executor;
+
+    ParallelProcessor( final Processor<OriginalItem, Input, Output> delegee, final int parallelism, final Executor executor ) {
+        if ( parallelism <= 0 ) {
+            throw new IllegalArgumentException( "The parallelism must be positive [parallelism=" + parallelism + "]" );
+        }
+        this.delegee = delegee;
+        this.parallelism = parallelism;
+        this.executor = executor;
+    }
+
+    @Override
+    public Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        final List<Result<OriginalItem, Input>> inputs = IterableUtils.asList( iterable );
+        if ( parallelism == 1 || inputs.size() <= 1 ) {
+            return delegee.process( inputs );
+        }
+        @SuppressWarnings( "unchecked" )
+        final Result<OriginalItem, Output>[] results = (Result<OriginalItem, Output>[]) new Result<?, ?>[inputs.size()];
+        final AtomicInteger nextItem = new AtomicInteger();
+        final CountDownLatch remainingItems = new CountDownLatch( inputs.size() );
+        final AtomicReference<VirtualMachineError> fatalError = new AtomicReference<>();
+        final Runnable worker = () -> {
+            int i;
+            while ( ( i = nextItem.getAndIncrement() ) < inputs.size() ) {
+                try {
+                    results[i] = processItem( inputs.get( i ) );
+                } catch ( final VirtualMachineError e ) {
+                    // rethrown by the calling thread, the remaining items are skipped
+                    fatalError.compareAndSet( null, e );
+                    while ( nextItem.getAndIncrement() < inputs.size() ) {
+                        remainingItems.countDown();
+                    }
+                    return;
+                } finally {
+                    remainingItems.countDown();
+                }
+            }
+        };
+
+        final int numHelpers = Math.min( parallelism, inputs.size() ) - 1;
+        final Runnable helper = RunContext.wrap( worker );
+        for ( int i = 0; i < numHelpers; i++ ) {
+            try {
+                executor.execute( helper );
+            } catch ( final RejectedExecutionException e ) {
+                LOG.debug( "Executor rejected helper, processing the remaining items with fewer threads", e );
+                break;
+            }
+        }
+        worker.run();
+        awaitUninterruptibly( remainingItems );
+        final VirtualMachineError error = fatalError.get();
+        if ( error != null ) {
+            // there is absolutely no way how those types of errors could be handled, rethrow it
+            throw error;
+        }
+        return Collections.unmodifiableList( Arrays.asList( results ) );
+    }
+
+    private Result<OriginalItem, Output> processItem( final Result<OriginalItem, Input> input ) {
+        try {
+            if ( delegee instanceof AbstractSingleItemProcessor ) {
+                return ( (AbstractSingleItemProcessor<OriginalItem, Input, Output>) delegee ).processItem( input );
+            }
+            final List<Result<OriginalItem, Output>> outputs = IterableUtils.asList( delegee.process( Collections.singletonList( input ) ) );
+            if ( outputs.size() != 1 ) {
+                throw new IllegalStateException( "processing of singletons must return exactly one item, but " + outputs.size() + " were returned." );
+            }
+            return outputs.get( 0 );
+        } catch ( final VirtualMachineError e ) {
+            // there is absolutely no way how those types of errors could be handled, rethrow it
+            throw e;
+        } catch ( final Throwable t ) {
+            return Result.<OriginalItem, Output>builder( input ).failed( t );
+        }
+    }
+
+    /**
+     * Items being processed by helpers cannot be abandoned, their results are
+     * part of the result of the chunk.
+     */
+    private static void awaitUninterruptibly( final CountDownLatch latch ) {
+        boolean interrupted = false;
+        while ( true ) {
+            try {
+                latch.await();
+                break;
+            } catch ( final InterruptedException e ) {
+                interrupted = true;
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String getStageName() {
+        return delegee.getStageName();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegee.isIdempotent();
+    }
+
+    @Override
+    public String toString() {
+        return delegee.toString();
+    }
+}
@@ -47,4 +47,17 @@ public interface Processor<OriginalItem, Input, Output> {
     default String getStageName() {
         return getClass().getSimpleName();
     }
+
+    /**
+     * Whether processing the same items twice has the same effect as
+     * processing them once, for example because the processor only reads
+     * data or overwrites data by id. Only idempotent processors may be
+     * executed speculatively, see
+     * {@link com.freiheit.fuava.simplebatch.BatchJob.Builder#setSpeculationPercentile(Double)}.
+     *
+     * @see Processors#idempotent(Processor)
+     */
+    default boolean isIdempotent() {
+        return false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits processors which were put together with
+ * {@link Processor#then(Processor)} or {@link Processors#compose(Processor, Processor)}
+ * into their stages.
+ */
+public final class ProcessorStages {
+
+    private ProcessorStages() {
+        // static utility class
+    }
+
+    /**
+     * The stages of the given processor in the order of processing. Calling
+     * {@link Processor#process(Iterable)} of each stage with the output of the
+     * previous stage is equivalent to calling the given processor.
+     *
+     * A processor which is neither composed nor chained is a single stage.
+     */
+    @SuppressWarnings( "rawtypes" )
+    public static List<Processor<?, ?, ?>> flatten( final Processor<?, ?, ?> processor ) {
+        if ( processor instanceof ComposedProcessor ) {
+            final ComposedProcessor cp = (ComposedProcessor) processor;
+            final List<Processor<?, ?, ?>> first = flatten( cp.getFirst() );
+            final List<Processor<?, ?, ?>> second = flatten( cp.getSecond() );
+            final List<Processor<?, ?, ?>> results = new ArrayList<>( first.size() + second.size() );
+            results.addAll( first );
+            results.addAll( second );
+            return Collections.unmodifiableList( results );
+        } else if ( processor instanceof ChainedProcessor ) {
+            final ChainedProcessor chained = (ChainedProcessor) processor;
+            return flatten( chained.f );
+        } else {
+            return Collections.singletonList( processor );
+        }
+    }
+}
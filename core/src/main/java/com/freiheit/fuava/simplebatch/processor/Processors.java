@@ -21,7 +21,10 @@ import java.io.InputStream;
 import java.io.Writer;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -32,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
 import com.freiheit.fuava.simplebatch.fsjobs.importer.ControlFile;
 import com.freiheit.fuava.simplebatch.http.HttpDownloaderSettings;
+import com.freiheit.fuava.simplebatch.http.HttpFetcherImpl;
 import com.freiheit.fuava.simplebatch.logging.JsonLogger;
 import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
 import com.freiheit.fuava.simplebatch.result.Result;
@@ -92,6 +96,112 @@ public class Processors {
         return new FetchedInputItemValueProcessor<Output, Input>();
     }
 
+    /**
+     * Marks the given processor as idempotent: processing the same items twice
+     * has the same effect as processing them once. This allows the job to
+     * process chunks speculatively, see
+     * {@link com.freiheit.fuava.simplebatch.BatchJob.Builder#setSpeculationPercentile(Double)}.
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> idempotent( final Processor<OriginalItem, Input, Output> processor ) {
+        return new IdempotentProcessor<>( processor );
+    }
+
+    /**
+     * Processes the items of each chunk concurrently with up to the given
+     * number of threads - the calling thread and helpers in the given
+     * executor - and returns the results in the order of the input. Useful
+     * for single item processors dominated by I/O, like
+     * {@link #httpDownloader(HttpClient, HttpDownloaderSettings)}, even if the
+     * job itself processes the chunks sequentially.
+     *
+     * Items are passed to {@link AbstractSingleItemProcessor#processItem(Result)}
+     * or - for other processors - to {@link Processor#process(Iterable)} as
+     * singleton lists, so batched processors lose their batching.
+     *
+     * @param parallelism the maximum number of threads processing the items of a chunk
+     * @param executor runs the helpers, may be shared with other processors
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> parallel( final Processor<OriginalItem, Input, Output> processor,
+            final int parallelism, final Executor executor ) {
+        return new ParallelProcessor<>( processor, parallelism, Objects.requireNonNull( executor, "Executor must be set" ) );
+    }
+
+    /**
+     * Puts a cache in front of the given processor: inputs whose key - derived
+     * from the input value with the key function - was already processed
+     * successfully get the cached output, without calling the processor.
+     * Useful if the same expensive lookup, like a download, is done for many
+     * items.
+     *
+     * The returned processor provides hit and miss counts and may be shared
+     * by several jobs.
+     *
+     * @param keyFunction derives the cache key from a successful input value, must not throw. Inputs with a null key are not cached.
+     */
+    public static <OriginalItem, Input, Output> CachingProcessor<OriginalItem, Input, Output> cached( final Processor<OriginalItem, Input, Output> processor,
+            final Function<? super Input, ?> keyFunction, final CacheSpec spec ) {
+        return new CachingProcessor<>( processor, keyFunction, spec, System::nanoTime );
+    }
+
+    /**
+     * Passes only one input per key of each chunk to the given processor, and
+     * copies its result to all inputs of the chunk with the same key. The
+     * listeners still get one result per fetched item. Useful if chunks
+     * contain many duplicates, like the same reference id.
+     *
+     * @param keyFunction derives the key from a successful input value, must not throw. Inputs with a null key are not coalesced.
+     * @see #cached(Processor, Function, CacheSpec)
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> coalescing( final Processor<OriginalItem, Input, Output> processor,
+            final Function<? super Input, ?> keyFunction ) {
+        return new CoalescingProcessor<>( processor, keyFunction );
+    }
+
+    /**
+     * Collects the chunks which are processed concurrently into batches of at
+     * least the given size for the given processor, so a stage can use larger
+     * batches than the chunks of the job - like a database sink after a
+     * download with small chunks. Each chunk still gets its own results, so
+     * listeners and statistics are not affected.
+     *
+     * A chunk waits at most the linger time for other chunks before its batch
+     * is processed anyway, so this only pays off if chunks are processed in
+     * parallel.
+     *
+     * @param batchSize a batch is processed as soon as it contains at least this number of items
+     * @param maxLinger the maximum time a batch waits for more chunks
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> rebatched( final Processor<OriginalItem, Input, Output> processor,
+            final int batchSize, final long maxLinger, final TimeUnit unit ) {
+        return new RebatchingProcessor<>( processor, batchSize, unit.toNanos( maxLinger ) );
+    }
+
+    /**
+     * Adapts a synchronous processor to {@link AsyncProcessor}, processing in
+     * the calling thread. Useful for cheap stages chained to asynchronous
+     * ones.
+     */
+    public static <OriginalItem, Input, Output> AsyncProcessor<OriginalItem, Input, Output> async( final Processor<OriginalItem, Input, Output> processor ) {
+        return new AsyncProcessorAdapter<>( processor, null );
+    }
+
+    /**
+     * Adapts a synchronous processor to {@link AsyncProcessor}, processing in
+     * the threads of the given executor.
+     */
+    public static <OriginalItem, Input, Output> AsyncProcessor<OriginalItem, Input, Output> async( final Processor<OriginalItem, Input, Output> processor,
+            final Executor executor ) {
+        return new AsyncProcessorAdapter<>( processor, Objects.requireNonNull( executor, "Executor must be set" ) );
+    }
+
+    /**
+     * Adapts an {@link AsyncProcessor} to a synchronous processor, which waits
+     * for the results in the calling thread.
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> blocking( final AsyncProcessor<OriginalItem, Input, Output> processor ) {
+        return new BlockingProcessor<>( processor );
+    }
+
     /**
      * Compose two processors. Note that the input of g will be a set of the
      * successful and failed output values from f. Also note that f must not
@@ -121,6 +231,29 @@ public class Processors {
         return new RetryingFunctionProcessor<OriginalItem, Input, Output>( function );
     }
 
+    /**
+     * Like {@link #retryableBatchedFunction(Function)}, but a failed batch is
+     * retried as given by the retry mode. With
+     * {@link BatchRetryMode#BISECTION}, an item may be passed to the function
+     * several times - as part of ever smaller batches - as long as each of
+     * these calls failed with an exception.
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> retryableBatchedFunction(
+            final Function<List<Input>, List<Output>> function, final BatchRetryMode retryMode ) {
+        return new RetryingFunctionProcessor<OriginalItem, Input, Output>( function, retryMode );
+    }
+
+    /**
+     * Like {@link #retryableBatchedFunction(Function, BatchRetryMode)}, but
+     * each call of the function is attempted again as given by the retry
+     * policy before the batch is split. So transient errors, like a lost
+     * database connection, do not lead to failed items.
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> retryableBatchedFunction(
+            final Function<List<Input>, List<Output>> function, final BatchRetryMode retryMode, final RetryPolicy retryPolicy ) {
+        return new RetryingFunctionProcessor<OriginalItem, Input, Output>( function, retryMode, retryPolicy );
+    }
+
     /**
      * Wraps a function that persists a single item.
      *
@@ -144,6 +277,19 @@ public class Processors {
         return new SingleItemFunctionProcessor<OriginalItem, Input, Output>( function );
     }
 
+    /**
+     * Like {@link #singleItemFunction(Function)}, but transforms the outputs
+     * of a whole chunk at once instead of creating one new result per item,
+     * which saves allocations for large chunks. The results are created when
+     * they are iterated by a stage which does not transform batches.
+     *
+     * @see #singleItemFunction(Function)
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> columnarSingleItemFunction(
+            final Function<Input, Output> function ) {
+        return new SingleItemFunctionProcessor<OriginalItem, Input, Output>( function, true );
+    }
+
     /**
      * A processor that processes a single item, allowing access to the original
      * fetched item.
@@ -341,6 +487,20 @@ public class Processors {
             final HttpDownloaderSettings<Input> settings ) {
         return new HttpDownloader<OriginalItem, Input, String>( client, settings, input -> IOStreamUtils.consumeAsString( input ) );
     }
+
+    /**
+     * A Processor that uses an apache HttpClient to download the required data,
+     * based on the input data that was provided by the fetcher. Failed
+     * downloads are attempted again as given by the retry policy.
+     */
+    public static <OriginalItem, Input, Output> Processor<OriginalItem, Input, Output> httpDownloader(
+            final Supplier<HttpClient> client,
+            final HttpDownloaderSettings<Input> settings,
+            final Function<InputStream, Output> converter,
+            final RetryPolicy retryPolicy ) {
+        return new HttpDownloader<OriginalItem, Input, Output>( new HttpFetcherImpl( client ), settings, converter, retryPolicy );
+    }
+
     /**
      * A Processor which reads control files and moves them (and the file
      * referenced by the control file) to the targetDir. 
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the chunks passed to this processor by concurrent threads into
+ * larger batches for the wrapped processor, and returns the part of the
+ * results belonging to each chunk to the thread which passed it.
+ *
+ * The thread which starts a batch waits until the batch reached its size or
+ * until the linger time has passed, and then processes the batch. A thread
+ * whose chunk completes a batch processes it immediately. All other threads
+ * wait for the results of the batch their chunk was added to.
+ */
+final class RebatchingProcessor<OriginalItem, Input, Output> implements Processor<OriginalItem, Input, Output> {
+    private static final Logger LOG = LoggerFactory.getLogger( RebatchingProcessor.class );
+
+    private final class Batch {
+        private final List<Result<OriginalItem, Input>> inputs = new ArrayList<>();
+        private final long createdNanos = System.nanoTime();
+        // guarded by lock
+        private boolean closed;
+        private boolean done;
+        // null if processing the batch failed with fatalError
+        private List<Result<OriginalItem, Output>> outputs;
+        private VirtualMachineError fatalError;
+    }
+
+    private final Processor<OriginalItem, Input, Output> delegee;
+    private final int batchSize;
+    private final long maxLingerNanos;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private Batch openBatch;
+
+    RebatchingProcessor( final Processor<OriginalItem, Input, Output> delegee, final int batchSize, final long maxLingerNanos ) {
+        if ( batchSize <= 0 ) {
+            throw new IllegalArgumentException( "The batch size must be positive [batchSize=" + batchSize + "]" );
+        }
+        if ( maxLingerNanos < 0 ) {
+            throw new IllegalArgumentException( "The linger time must not be negative [maxLingerNanos=" + maxLingerNanos + "]" );
+        }
+        this.delegee = Objects.requireNonNull( delegee, "Processor must be set" );
+        this.batchSize = batchSize;
+        this.maxLingerNanos = maxLingerNanos;
+    }
+
+    @Override
+    public Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        final List<Result<OriginalItem, Input>> inputs = IterableUtils.asList( iterable );
+        if ( inputs.isEmpty() ) {
+            return Collections.emptyList();
+        }
+        final Batch batch;
+        final int start;
+        boolean processBatch = false;
+        synchronized ( lock ) {
+            if ( openBatch == null ) {
+                openBatch = new Batch();
+            }
+            batch = openBatch;
+            final boolean startedBatch = batch.inputs.isEmpty();
+            start = batch.inputs.size();
+            batch.inputs.addAll( inputs );
+            if ( batch.inputs.size() >= batchSize ) {
+                close( batch );
+                processBatch = true;
+            } else if ( startedBatch ) {
+                processBatch = awaitBatchSize( batch );
+            }
+        }
+        if ( processBatch ) {
+            processBatch( batch );
+        }
+        final List<Result<OriginalItem, Output>> outputs = awaitOutputs( batch );
+        if ( outputs == null ) {
+            // the thread processing the batch rethrows the error, results must not contain it
+            final List<Result<OriginalItem, Output>> failed = new ArrayList<>( inputs.size() );
+            for ( final Result<OriginalItem, Input> input : inputs ) {
+                failed.add( Result.<OriginalItem, Output>builder( input ).withFailureMessage( "Processing the batch failed with " + batch.fatalError ).failed() );
+            }
+            return Collections.unmodifiableList( failed );
+        }
+        return Collections.unmodifiableList( new ArrayList<>( outputs.subList( start, start + inputs.size() ) ) );
+    }
+
+    /**
+     * Waits until the given batch was closed by another thread, or until the
+     * linger time passed.
+     *
+     * @return true if the calling thread closed the batch and must process it
+     */
+    private boolean awaitBatchSize( final Batch batch ) {
+        long remainingNanos;
+        while ( !batch.closed && ( remainingNanos = maxLingerNanos - ( System.nanoTime() - batch.createdNanos ) ) > 0 ) {
+            try {
+                TimeUnit.NANOSECONDS.timedWait( lock, remainingNanos );
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                LOG.warn( "Interrupted while waiting for more items, processing a batch of {} items", batch.inputs.size() );
+                break;
+            }
+        }
+        if ( batch.closed ) {
+            return false;
+        }
+        close( batch );
+        return true;
+    }
+
+    private void close( final Batch batch ) {
+        batch.closed = true;
+        openBatch = null;
+        lock.notifyAll();
+    }
+
+    private void processBatch( final Batch batch ) {
+        List<Result<OriginalItem, Output>> outputs = null;
+        VirtualMachineError fatalError = null;
+        try {
+            outputs = attribute( batch.inputs, IterableUtils.asList( delegee.process( batch.inputs ) ) );
+        } catch ( final VirtualMachineError e ) {
+            // there is absolutely no way how those types of errors could be handled, rethrow it
+            fatalError = e;
+            throw e;
+        } catch ( final Throwable t ) {
+            outputs = new ArrayList<>( batch.inputs.size() );
+            for ( final Result<OriginalItem, Input> input : batch.inputs ) {
+                outputs.add( Result.<OriginalItem, Output>builder( input ).failed( t ) );
+            }
+        } finally {
+            synchronized ( lock ) {
+                batch.outputs = outputs;
+                batch.fatalError = fatalError;
+                batch.done = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The outputs in the order of the inputs.
+     */
+    private List<Result<OriginalItem, Output>> attribute( final List<Result<OriginalItem, Input>> inputs, final List<Result<OriginalItem, Output>> outputs ) {
+        final int[] inputIndexes = ResultAttribution.inputIndexes( inputs, outputs );
+        if ( inputIndexes == null ) {
+            throw new IllegalStateException( "Could not attribute the results of " + delegee + " to its inputs" );
+        }
+        @SuppressWarnings( "unchecked" )
+        final Result<OriginalItem, Output>[] ordered = (Result<OriginalItem, Output>[]) new Result<?, ?>[outputs.size()];
+        for ( int i = 0; i < outputs.size(); i++ ) {
+            ordered[inputIndexes[i]] = outputs.get( i );
+        }
+        return Arrays.asList( ordered );
+    }
+
+    /**
+     * The items of a chunk cannot be abandoned once they were added to a
+     * batch, so this waits uninterruptibly.
+     *
+     * @return null if processing the batch failed with a fatal error
+     */
+    private List<Result<OriginalItem, Output>> awaitOutputs( final Batch batch ) {
+        boolean interrupted = false;
+        try {
+            synchronized ( lock ) {
+                while ( !batch.done ) {
+                    try {
+                        lock.wait();
+                    } catch ( final InterruptedException e ) {
+                        interrupted = true;
+                    }
+                }
+                return batch.outputs;
+            }
+        } finally {
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String getStageName() {
+        return delegee.getStageName();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegee.isIdempotent();
+    }
+
+    @Override
+    public String toString() {
+        return "Rebatched " + delegee;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the input result belonging to each output result of a processor.
+ *
+ * Processors must return exactly one result for each input, but not
+ * necessarily in the order of the input - so the results are attributed via
+ * the identity of their original item, which is passed through unchanged.
+ */
+final class ResultAttribution {
+
+    private ResultAttribution() {
+        // static utility class
+    }
+
+    /**
+     * The index of the input belonging to each output, or null if the outputs
+     * cannot be attributed unambiguously to the inputs.
+     */
+    @Nullable
+    static int[] inputIndexes( final List<? extends Result<?, ?>> inputs, final List<? extends Result<?, ?>> outputs ) {
+        if ( inputs.size() != outputs.size() ) {
+            return null;
+        }
+        final Map<Object, Deque<Integer>> indexesByOriginalItem = new IdentityHashMap<>( inputs.size() * 2 );
+        for ( int i = 0; i < inputs.size(); i++ ) {
+            indexesByOriginalItem.computeIfAbsent( inputs.get( i ).getInput(), k -> new ArrayDeque<>( 1 ) ).add( i );
+        }
+        final int[] inputIndexes = new int[outputs.size()];
+        for ( int i = 0; i < outputs.size(); i++ ) {
+            final Deque<Integer> indexes = indexesByOriginalItem.get( outputs.get( i ).getInput() );
+            if ( indexes == null || indexes.isEmpty() ) {
+                return null;
+            }
+            inputIndexes[i] = indexes.poll().intValue();
+        }
+        return inputIndexes;
+    }
+}
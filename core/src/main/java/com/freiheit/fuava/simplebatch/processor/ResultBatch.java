@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+/**
+ * The results of a chunk stored in columns: the inputs and outputs in
+ * arrays, success in a bitmap, and the rarely used messages and throwables
+ * in side tables by index.
+ *
+ * Single item processors which opt in with
+ * {@link SingleItemProcessor#SingleItemProcessor(boolean)} create the next
+ * batch with {@link #mapSuccesses(Function)} instead of one new
+ * {@link Result} per item. Since this is a list of results, processors which
+ * do not know about batches keep working: {@link #get(int)} creates the
+ * result of an index when it is first requested.
+ *
+ * @param <OriginalItem>
+ *            The item which is considered the input for the processing step
+ * @param <Output>
+ *            The item which is the result of the processing step
+ */
+final class ResultBatch<OriginalItem, Output> extends AbstractList<Result<OriginalItem, Output>> implements RandomAccess {
+    private final Object[] inputs;
+    private final Object[] outputs;
+    private final BitSet successes;
+    // the side tables are null as long as they are empty
+    private final Map<Integer, List<String>> warningMessages;
+    private final Map<Integer, List<String>> failureMessages;
+    private final Map<Integer, List<Throwable>> throwables;
+    // the results created by get, null until the first call
+    private Result<OriginalItem, Output>[] created;
+
+    private ResultBatch(
+            final Object[] inputs,
+            final Object[] outputs,
+            final BitSet successes,
+            final Map<Integer, List<String>> warningMessages,
+            final Map<Integer, List<String>> failureMessages,
+            final Map<Integer, List<Throwable>> throwables ) {
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.successes = successes;
+        this.warningMessages = warningMessages;
+        this.failureMessages = failureMessages;
+        this.throwables = throwables;
+    }
+
+    /**
+     * The given results as batch. If they already are a batch, it is returned
+     * without copying.
+     */
+    @SuppressWarnings( "unchecked" )
+    static <OriginalItem, Output> ResultBatch<OriginalItem, Output> of( final Iterable<Result<OriginalItem, Output>> results ) {
+        if ( results instanceof ResultBatch ) {
+            return (ResultBatch<OriginalItem, Output>) results;
+        }
+        final List<Result<OriginalItem, Output>> list = IterableUtils.asList( results );
+        final int size = list.size();
+        final Object[] inputs = new Object[size];
+        final Object[] outputs = new Object[size];
+        final BitSet successes = new BitSet( size );
+        Map<Integer, List<String>> warningMessages = null;
+        Map<Integer, List<String>> failureMessages = null;
+        Map<Integer, List<Throwable>> throwables = null;
+        int i = 0;
+        for ( final Result<OriginalItem, Output> result : list ) {
+            inputs[i] = result.getInput();
+            outputs[i] = result.getOutput();
+            if ( result.isSuccess() ) {
+                successes.set( i );
+            }
+            warningMessages = putIfNotEmpty( warningMessages, i, result.getWarningMessages() );
+            failureMessages = putIfNotEmpty( failureMessages, i, result.getFailureMessages() );
+            throwables = putIfNotEmpty( throwables, i, result.getThrowables() );
+            i++;
+        }
+        return new ResultBatch<>( inputs, outputs, successes, warningMessages, failureMessages, throwables );
+    }
+
+    private static <T> Map<Integer, List<T>> putIfNotEmpty( final Map<Integer, List<T>> table, final int index, final Iterable<T> values ) {
+        final List<T> list = IterableUtils.asList( values );
+        if ( list.isEmpty() ) {
+            return table;
+        }
+        final Map<Integer, List<T>> result = table == null ? new HashMap<>() : table;
+        result.put( index, list );
+        return result;
+    }
+
+    /**
+     * Transforms the output of each successful result with the given
+     * function, like a {@link Result#success(Object, Object)} with the new
+     * output. The messages of successful results are not kept.
+     *
+     * Failed results stay failed and keep their messages and throwables. If
+     * the function throws or returns null, the result of this index fails
+     * with the throwable.
+     */
+    @SuppressWarnings( "unchecked" )
+    <NewOutput> ResultBatch<OriginalItem, NewOutput> mapSuccesses( final Function<? super Output, ? extends NewOutput> function ) {
+        final int size = size();
+        final Object[] newOutputs = new Object[size];
+        final BitSet newSuccesses = (BitSet) successes.clone();
+        Map<Integer, List<Throwable>> newThrowables = failedOnly( throwables );
+        for ( int i = successes.nextSetBit( 0 ); i >= 0; i = successes.nextSetBit( i + 1 ) ) {
+            try {
+                final NewOutput output = function.apply( (Output) outputs[i] );
+                if ( output == null ) {
+                    throw new IllegalArgumentException( "Successful results always must contain a result" );
+                }
+                newOutputs[i] = output;
+            } catch ( final VirtualMachineError e ) {
+                // there is absolutely no way how those types of errors could be handled, rethrow it
+                throw e;
+            } catch ( final Throwable t ) {
+                // the failed result logs the throwable, like processItem does
+                final Result<Object, Object> failed = Result.failed( inputs[i], t );
+                newSuccesses.clear( i );
+                if ( newThrowables == null ) {
+                    newThrowables = new HashMap<>();
+                }
+                newThrowables.put( i, IterableUtils.asList( failed.getThrowables() ) );
+            }
+        }
+        return new ResultBatch<>( inputs, newOutputs, newSuccesses, failedOnly( warningMessages ), failedOnly( failureMessages ), newThrowables );
+    }
+
+    private <T> Map<Integer, List<T>> failedOnly( final Map<Integer, List<T>> table ) {
+        if ( table == null ) {
+            return null;
+        }
+        Map<Integer, List<T>> result = null;
+        for ( final Map.Entry<Integer, List<T>> e : table.entrySet() ) {
+            if ( !successes.get( e.getKey() ) ) {
+                if ( result == null ) {
+                    result = new HashMap<>();
+                }
+                result.put( e.getKey(), e.getValue() );
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return inputs.length;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    OriginalItem getInput( final int index ) {
+        return (OriginalItem) inputs[index];
+    }
+
+    @SuppressWarnings( "unchecked" )
+    Output getOutput( final int index ) {
+        return (Output) outputs[index];
+    }
+
+    boolean isSuccess( final int index ) {
+        if ( index < 0 || index >= size() ) {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size() );
+        }
+        return successes.get( index );
+    }
+
+    /**
+     * The number of successful results.
+     */
+    int getNumSuccess() {
+        return successes.cardinality();
+    }
+
+    /**
+     * The result of the given index, which is created when it is first
+     * requested. Later calls return the same instance, unless several threads
+     * request an index for the first time at once.
+     */
+    @SuppressWarnings( "unchecked" )
+    @Override
+    public Result<OriginalItem, Output> get( final int index ) {
+        if ( created == null ) {
+            created = (Result<OriginalItem, Output>[]) new Result<?, ?>[size()];
+        }
+        Result<OriginalItem, Output> result = created[index];
+        if ( result == null ) {
+            result = create( index );
+            created[index] = result;
+        }
+        return result;
+    }
+
+    private Result<OriginalItem, Output> create( final int index ) {
+        if ( isSuccess( index ) && !contains( warningMessages, index ) && !contains( failureMessages, index ) && !contains( throwables, index ) ) {
+            return Result.success( getInput( index ), getOutput( index ) );
+        }
+        final Result.Builder<OriginalItem, Output> builder = Result.<OriginalItem, Output>builder()
+                .withInput( getInput( index ) )
+                .withOutput( getOutput( index ) )
+                .withWarningMessages( lookup( warningMessages, index ) )
+                .withFailureMessages( lookup( failureMessages, index ) )
+                .withThrowables( lookup( throwables, index ) );
+        return isSuccess( index ) ? builder.success() : builder.failed();
+    }
+
+    private static boolean contains( final Map<Integer, ?> table, final int index ) {
+        return table != null && table.containsKey( index );
+    }
+
+    private static <T> List<T> lookup( final Map<Integer, List<T>> table, final int index ) {
+        if ( table == null ) {
+            return Collections.emptyList();
+        }
+        return table.getOrDefault( index, Collections.emptyList() );
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.exceptions.FetchFailedException;
+import com.freiheit.fuava.simplebatch.util.RunContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Decides whether and when a failed call is attempted again: up to a maximum
+ * number of attempts, with exponentially growing, randomized pauses between
+ * them, only for errors classified as transient, and only as long as the
+ * retry budget is not used up.
+ *
+ * The retry budget is shared by all calls of the same run of a
+ * {@link com.freiheit.fuava.simplebatch.BatchJob} using the policy, so a
+ * backend which is down does not get hammered with retries for every single
+ * item. Each run starts with the full budget. Calls outside of a run share
+ * one budget per policy instance.
+ *
+ * By default, only errors which are typically transient are retried: I/O
+ * errors, timeouts and server errors (5xx) of HTTP requests. Errors caused by
+ * the data, like a poison row, would fail every attempt - with
+ * {@link BatchRetryMode#BISECTION}, the policy is applied on each level of the
+ * bisection, so such errors must not be classified as transient.
+ *
+ * Instances are thread safe.
+ *
+ * @see Processors#retryableBatchedFunction(java.util.function.Function, BatchRetryMode, RetryPolicy)
+ * @see Processors#httpDownloader(java.util.function.Supplier, com.freiheit.fuava.simplebatch.http.HttpDownloaderSettings, java.util.function.Function, RetryPolicy)
+ */
+public final class RetryPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger( RetryPolicy.class );
+
+    private static final RetryPolicy NONE = builder().setMaxAttempts( 1 ).build();
+
+    public static final class Builder {
+        private int maxAttempts = 3;
+        private long initialBackoffMs = 100;
+        private long maxBackoffMs = 10000;
+        private double backoffMultiplier = 2.0;
+        private double jitter = 0.5;
+        private Predicate<? super Throwable> transientErrors = RetryPolicy::isTransientByDefault;
+        private int retryBudget = Integer.MAX_VALUE;
+
+        /**
+        * The maximum number of attempts of a call, including the first one
+        * @return this for method chaining
+        */
+        public Builder setMaxAttempts( final int maxAttempts ) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+        * The pause before the first retry, the following pauses grow by the
+        * backoff multiplier up to the maximum pause
+        * @return this for method chaining
+        */
+        public Builder setBackoff( final long initialBackoffMs, final long maxBackoffMs, final double backoffMultiplier ) {
+            this.initialBackoffMs = initialBackoffMs;
+            this.maxBackoffMs = maxBackoffMs;
+            this.backoffMultiplier = backoffMultiplier;
+            return this;
+        }
+
+        /**
+        * The fraction of each pause which is randomized, so retries of calls
+        * which failed at the same time are spread. 0 for fixed pauses, 1 for
+        * pauses between 0 and the computed backoff.
+        * @return this for method chaining
+        */
+        public Builder setJitter( final double jitter ) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+        * Decides which errors are transient and thus retried. By default,
+        * {@link IOException}s, {@link TimeoutException}s and
+        * {@link FetchFailedException}s with a server error status - also as
+        * cause of another exception - are retried.
+        * @return this for method chaining
+        */
+        public Builder setTransientErrors( final Predicate<? super Throwable> transientErrors ) {
+            this.transientErrors = transientErrors;
+            return this;
+        }
+
+        /**
+        * The maximum number of retries of all calls using the policy in a run
+        * of a job. Once used up, failed calls are not retried any more.
+        * @return this for method chaining
+        */
+        public Builder setRetryBudget( final int retryBudget ) {
+            this.retryBudget = retryBudget;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy( maxAttempts, initialBackoffMs, maxBackoffMs, backoffMultiplier, jitter, transientErrors, retryBudget );
+        }
+    }
+
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final double backoffMultiplier;
+    private final double jitter;
+    private final Predicate<? super Throwable> transientErrors;
+    private final int retryBudget;
+    /**
+     * The retry budget of calls outside of a run.
+     */
+    private final AtomicInteger remainingRetries;
+    private final Map<RunContext, AtomicInteger> remainingRetriesOfRuns = Collections.synchronizedMap( new WeakHashMap<>() );
+
+    private RetryPolicy( final int maxAttempts, final long initialBackoffMs, final long maxBackoffMs, final double backoffMultiplier,
+            final double jitter, final Predicate<? super Throwable> transientErrors, final int retryBudget ) {
+        if ( maxAttempts < 1 ) {
+            throw new IllegalArgumentException( "At least one attempt is needed [maxAttempts=" + maxAttempts + "]" );
+        }
+        if ( initialBackoffMs < 0 || maxBackoffMs < initialBackoffMs || backoffMultiplier < 1 ) {
+            throw new IllegalArgumentException( "Invalid backoff [initial=" + initialBackoffMs + ", max=" + maxBackoffMs + ", multiplier=" + backoffMultiplier + "]" );
+        }
+        if ( jitter < 0 || jitter > 1 ) {
+            throw new IllegalArgumentException( "The jitter must be between 0 and 1 [jitter=" + jitter + "]" );
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.backoffMultiplier = backoffMultiplier;
+        this.jitter = jitter;
+        this.transientErrors = Objects.requireNonNull( transientErrors, "Transient Errors must be set" );
+        this.retryBudget = retryBudget;
+        this.remainingRetries = new AtomicInteger( retryBudget );
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A policy which never retries.
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Calls the given function, retrying it as long as it fails with a
+     * transient error and attempts and retry budget are left.
+     *
+     * @throws Exception
+     *             the error of the last attempt
+     */
+    public <T> T call( final Callable<T> function ) throws Exception {
+        for ( int attempt = 1; ; attempt++ ) {
+            try {
+                return function.call();
+            } catch ( final VirtualMachineError e ) {
+                throw e;
+            } catch ( final Exception | Error e ) {
+                if ( attempt >= maxAttempts || !transientErrors.test( e ) || !tryAcquireRetry() ) {
+                    throw e;
+                }
+                final long backoffMs = getBackoffMs( attempt );
+                LOG.debug( "Attempt {} failed with {}, retrying in {} ms", attempt, e, backoffMs );
+                try {
+                    Thread.sleep( backoffMs );
+                } catch ( final InterruptedException ie ) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of retries left in the retry budget of the current run.
+     */
+    public int getRemainingRetries() {
+        return getRetryBudget().get();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * The pause after the given failed attempt, starting with 1.
+     */
+    long getBackoffMs( final int attempt ) {
+        final double backoff = Math.min( maxBackoffMs, initialBackoffMs * Math.pow( backoffMultiplier, attempt - 1 ) );
+        return (long) ( backoff * ( 1 - jitter * ThreadLocalRandom.current().nextDouble() ) );
+    }
+
+    private AtomicInteger getRetryBudget() {
+        final RunContext run = RunContext.current();
+        return run == null
+            ? remainingRetries
+            : remainingRetriesOfRuns.computeIfAbsent( run, r -> new AtomicInteger( retryBudget ) );
+    }
+
+    private boolean tryAcquireRetry() {
+        final AtomicInteger remainingRetries = getRetryBudget();
+        while ( true ) {
+            final int remaining = remainingRetries.get();
+            if ( remaining <= 0 ) {
+                return false;
+            }
+            if ( remainingRetries.compareAndSet( remaining, remaining - 1 ) ) {
+                if ( remaining == 1 ) {
+                    LOG.warn( "The retry budget is used up, failed calls will not be retried any more" );
+                }
+                return true;
+            }
+        }
+    }
+
+    private static boolean isTransientByDefault( final Throwable t ) {
+        for ( Throwable cause = t; cause != null; cause = cause.getCause() ) {
+            if ( cause instanceof IOException || cause instanceof TimeoutException ) {
+                return true;
+            }
+            if ( cause instanceof FetchFailedException && ( (FetchFailedException) cause ).isServerError() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -61,6 +61,24 @@ class RetryingFunctionProcessor<OriginalItem, Input, Output> extends RetryingPro
         _func = func;
     }
 
+    /**
+     * Like {@link #RetryingFunctionProcessor(Function)}, but failed batches are retried as given by
+     * the retry mode.
+     */
+    public RetryingFunctionProcessor( final Function<List<Input>, List<Output>> func, final BatchRetryMode retryMode ) {
+        super( retryMode );
+        _func = func;
+    }
+
+    /**
+     * Like {@link #RetryingFunctionProcessor(Function, BatchRetryMode)}, but each call of the
+     * function is attempted as given by the retry policy.
+     */
+    public RetryingFunctionProcessor( final Function<List<Input>, List<Output>> func, final BatchRetryMode retryMode, final RetryPolicy retryPolicy ) {
+        super( retryMode, retryPolicy );
+        _func = func;
+    }
+
     @Override
     protected List<Output> apply( final List<Input> input ) {
         return _func.apply( input );
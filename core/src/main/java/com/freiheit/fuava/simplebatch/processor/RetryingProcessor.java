@@ -22,6 +22,7 @@ import com.freiheit.fuava.simplebatch.util.IterableUtils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -30,7 +31,9 @@ import java.util.stream.StreamSupport;
  * (successful) values to a function.
  *
  * If persisting of a batch failed, it will be divided into singleton batches
- * and retried.
+ * and retried - or recursively into halves, see {@link BatchRetryMode}.
+ * Before that, a failing call may be attempted again as given by a
+ * {@link RetryPolicy}.
  *
  * You have to ensure that aborting and retying the function will not lead to
  * illegal states.
@@ -45,6 +48,9 @@ import java.util.stream.StreamSupport;
  */
 public abstract class RetryingProcessor<OriginalItem, Input, Output>
         implements Processor<OriginalItem, Input, Output> {
+    private final BatchRetryMode retryMode;
+    private final RetryPolicy retryPolicy;
+
     /**
      * Creates a new processor that delegates to the given function.
      *
@@ -61,6 +67,29 @@ public abstract class RetryingProcessor<OriginalItem, Input, Output>
      * interface yourself.
      */
     public RetryingProcessor() {
+        this( BatchRetryMode.SINGLE_ITEMS );
+    }
+
+    /**
+     * Creates a new processor which retries failed batches as given by the
+     * retry mode.
+     *
+     * @see #RetryingProcessor()
+     */
+    public RetryingProcessor( final BatchRetryMode retryMode ) {
+        this( retryMode, RetryPolicy.none() );
+    }
+
+    /**
+     * Creates a new processor which attempts each call to the function as
+     * given by the retry policy, and retries batches which still failed as
+     * given by the retry mode.
+     *
+     * @see #RetryingProcessor()
+     */
+    public RetryingProcessor( final BatchRetryMode retryMode, final RetryPolicy retryPolicy ) {
+        this.retryMode = Objects.requireNonNull( retryMode, "Retry Mode must be set" );
+        this.retryPolicy = Objects.requireNonNull( retryPolicy, "Retry Policy must be set" );
     }
 
     @Override
@@ -70,7 +99,7 @@ public abstract class RetryingProcessor<OriginalItem, Input, Output>
             return Collections.emptyList();
         }
         try {
-            return doPersist( inputList );
+            return retryPolicy.call( () -> doPersist( inputList ) );
         } catch ( final VirtualMachineError e ) {
             // there is absolutely no way how those types of errors could be handled, rethrow it
             throw e;
@@ -80,6 +109,10 @@ public abstract class RetryingProcessor<OriginalItem, Input, Output>
                 return Collections.singletonList( Result.<OriginalItem, Output> builder( result ).failed( t ) );
             }
 
+            if ( retryMode == BatchRetryMode.BISECTION ) {
+                return bisect( inputList );
+            }
+
             final List<Result<OriginalItem, Output>> retriedResults = new ArrayList<>( inputList.size() );
             for ( final Result<OriginalItem, Input> input : inputList ) {
                 final Iterable<Result<OriginalItem, Output>> outputs = process( Collections.singletonList( input ) );
@@ -92,6 +125,14 @@ public abstract class RetryingProcessor<OriginalItem, Input, Output>
         }
     }
 
+    private Iterable<Result<OriginalItem, Output>> bisect( final List<Result<OriginalItem, Input>> inputList ) {
+        final int middle = inputList.size() / 2;
+        final List<Result<OriginalItem, Output>> retriedResults = new ArrayList<>( inputList.size() );
+        process( inputList.subList( 0, middle ) ).forEach( retriedResults::add );
+        process( inputList.subList( middle, inputList.size() ) ).forEach( retriedResults::add );
+        return Collections.unmodifiableList( retriedResults );
+    }
+
     private Iterable<Result<OriginalItem, Output>> doPersist( final Iterable<Result<OriginalItem, Input>> iterable ) {
         final List<Result<OriginalItem, Input>> successes = StreamSupport.stream( iterable.spliterator(), false )
                 .filter( Result::isSuccess )
@@ -66,6 +66,24 @@ class RetryingResultFunctionProcessor<OriginalItem, Input, Output> extends Retry
         _func = func;
     }
 
+    /**
+     * Like {@link #RetryingResultFunctionProcessor(Function)}, but failed batches are retried as given by
+     * the retry mode.
+     */
+    public RetryingResultFunctionProcessor( final Function<List<Result<OriginalItem, Input>>, List<Output>> func, final BatchRetryMode retryMode ) {
+        super( retryMode );
+        _func = func;
+    }
+
+    /**
+     * Like {@link #RetryingResultFunctionProcessor(Function, BatchRetryMode)}, but each call of the
+     * function is attempted as given by the retry policy.
+     */
+    public RetryingResultFunctionProcessor( final Function<List<Result<OriginalItem, Input>>, List<Output>> func, final BatchRetryMode retryMode, final RetryPolicy retryPolicy ) {
+        super( retryMode, retryPolicy );
+        _func = func;
+    }
+
     @Override
     protected List<Output> apply( final List<Result<OriginalItem, Input>> input ) {
         return _func.apply( input );
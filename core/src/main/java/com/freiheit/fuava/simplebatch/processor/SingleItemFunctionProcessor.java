@@ -24,6 +24,14 @@ public class SingleItemFunctionProcessor<OriginalItem, Input, Output> extends
     private final Function<Input, Output> _func;
 
     public SingleItemFunctionProcessor( final Function<Input, Output> func ) {
+        this( func, false );
+    }
+
+    /**
+     * @see SingleItemProcessor#SingleItemProcessor(boolean)
+     */
+    public SingleItemFunctionProcessor( final Function<Input, Output> func, final boolean columnar ) {
+        super( columnar );
         _func = func;
     }
 
@@ -21,11 +21,53 @@ import com.freiheit.fuava.simplebatch.result.Result;
 public abstract class SingleItemProcessor<OriginalItem, Input, Output> extends
         AbstractSingleItemProcessor<OriginalItem, Input, Output> {
 
+    private final boolean columnar;
+
     public SingleItemProcessor() {
+        this( false );
+    }
+
+    /**
+     * @param columnar
+     *            if true, the outputs of a whole chunk are transformed at once
+     *            and stored in columns instead of one new {@link Result} per
+     *            item. The results are the same as those of
+     *            {@link #processItem(Result)}, so subclasses which override
+     *            it cannot opt in.
+     */
+    protected SingleItemProcessor( final boolean columnar ) {
+        if ( columnar && !isProcessItemInherited( getClass() ) ) {
+            throw new IllegalArgumentException( "Processors which override processItem cannot process columns [type=" + getClass().getName() + "]" );
+        }
+        this.columnar = columnar;
     }
 
     protected abstract Output apply( Input input );
 
+    /**
+     * Whether all items can be processed at once with
+     * {@link ResultBatch#mapSuccesses(java.util.function.Function)}.
+     */
+    boolean isColumnar() {
+        return columnar;
+    }
+
+    @Override
+    Iterable<Result<OriginalItem, Output>> processAll( final Iterable<Result<OriginalItem, Input>> iterable ) {
+        if ( !columnar ) {
+            return super.processAll( iterable );
+        }
+        return ResultBatch.of( iterable ).mapSuccesses( this::apply );
+    }
+
+    private static boolean isProcessItemInherited( final Class<?> type ) {
+        try {
+            return type.getMethod( "processItem", Result.class ).getDeclaringClass() == SingleItemProcessor.class;
+        } catch ( final NoSuchMethodException e ) {
+            return false;
+        }
+    }
+
     @Override
     public Result<OriginalItem, Output> processItem( final Result<OriginalItem, Input> input ) {
         if ( !input.isSuccess() ) {
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -20,7 +21,12 @@ public class TimeLoggingProcessor<OriginalItem, Input, Output> implements Proces
     public static final Logger JOB_PERFORMANCE_LOGGER = LoggerFactory.getLogger( "Job Performance Logger" );
     private static final String STAGE_ID_TOTAL = "Total   ";
     private static final String STAGE_ID_PREPARE = "Prepare ";
-    
+    /**
+     * Each n-th item of a fused run of stages is timed per stage, the
+     * durations of the others are estimated from these samples.
+     */
+    private static final int FUSED_SAMPLING_INTERVAL = 64;
+
 
     private static final class Stage {
         private final String id;
@@ -160,6 +166,7 @@ public class TimeLoggingProcessor<OriginalItem, Input, Output> implements Proces
     private final long minMillisBetweenLogging = TimeUnit.SECONDS.toMillis( 10 );
 
     private final List<Stage> stages;
+    private final int[] fusedRunLengths;
     private final ConcurrentHashMap<String, Counts> counts;
     private final String stageIdTotal;
     private final String stageIdPrepare;
@@ -174,6 +181,7 @@ public class TimeLoggingProcessor<OriginalItem, Input, Output> implements Proces
         this.stageIdTotal = buildStageName( prefix, STAGE_ID_TOTAL );
         this.stageIdPrepare = buildStageName( prefix, STAGE_ID_PREPARE );
         this.stages = fixStageIds( prefix, toStages( processor ) );
+        this.fusedRunLengths = toFusedRunLengths( stages );
         this.counts = new ConcurrentHashMap<>();
 
     }
@@ -210,29 +218,110 @@ public class TimeLoggingProcessor<OriginalItem, Input, Output> implements Proces
         return Collections.unmodifiableList( b );
     }
 
-    @SuppressWarnings( "rawtypes" )
-    private List<Stage> toStages( final Processor processor ) {
-        if ( processor instanceof ComposedProcessor ) {
-            final ComposedProcessor cp = (ComposedProcessor) processor;
-            final List<Stage> first = toStages( cp.getFirst() );
-            final List<Stage> second = toStages( cp.getSecond() );
-            final List<Stage> results = new ArrayList<>( first.size() + second.size() );
-            results.addAll( first );
-            results.addAll( second );
-            return Collections.unmodifiableList( results );
-        } else if ( processor instanceof ChainedProcessor ) {
-            final ChainedProcessor chained = (ChainedProcessor) processor;
-            return toStages( chained.f );
-        } else {
-            return Collections.singletonList( new Stage( "", processor.getStageName(), processor ) );
+    private List<Stage> toStages( final Processor<?, ?, ?> processor ) {
+        final List<Stage> results = new ArrayList<>();
+        for ( final Processor<?, ?, ?> stage : ProcessorStages.flatten( processor ) ) {
+            results.add( new Stage( "", stage.getStageName(), stage ) );
+        }
+        return Collections.unmodifiableList( results );
+    }
+
+    /**
+     * For each stage the number of consecutive single item stages starting
+     * there, the stage itself included. Columnar stages are not fused, since
+     * they already transform a chunk without one new result per item.
+     */
+    private static int[] toFusedRunLengths( final List<Stage> stages ) {
+        final int[] result = new int[stages.size()];
+        for ( int i = stages.size() - 1; i >= 0; i-- ) {
+            final Processor<?, ?, ?> processor = stages.get( i ).processor;
+            if ( processor instanceof AbstractSingleItemProcessor
+                    && !( processor instanceof SingleItemProcessor && ( (SingleItemProcessor<?, ?, ?>) processor ).isColumnar() ) ) {
+                result[i] = i + 1 < stages.size() ? result[i + 1] + 1 : 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The stages of the wrapped processor, each of them recording its
+     * performance measures in this instance. Use this for calling the stages
+     * separately, for example in different threads: passing a chunk through
+     * all of the stages is equivalent to processing it with this processor.
+     */
+    public List<Processor<OriginalItem, ?, ?>> getTimedStages() {
+        final List<Processor<OriginalItem, ?, ?>> result = new ArrayList<>( stages.size() );
+        for ( int i = 0; i < stages.size(); i++ ) {
+            result.add( new TimedStage<>( stages.get( i ), i == 0, i == stages.size() - 1 ) );
+        }
+        return Collections.unmodifiableList( result );
+    }
+
+    /**
+     * A single stage called on its own, see {@link #getTimedStages()}.
+     */
+    private final class TimedStage<I, O> implements Processor<OriginalItem, I, O> {
+        private final Stage stage;
+        private final boolean first;
+        private final boolean last;
+
+        private TimedStage( final Stage stage, final boolean first, final boolean last ) {
+            this.stage = stage;
+            this.first = first;
+            this.last = last;
+        }
+
+        @SuppressWarnings( { "unchecked", "rawtypes" } )
+        @Override
+        public Iterable<Result<OriginalItem, O>> process( final Iterable<Result<OriginalItem, I>> input ) {
+            if ( first ) {
+                markProcessingStart( System.nanoTime() );
+            }
+            final Iterable inputValues = prepareInputIterable( input );
+            final long start = System.nanoTime();
+
+            final Iterable outputValues = stage.apply( inputValues );
+
+            final long stop = System.nanoTime();
+            final int numTotal = getNumTotalItems( inputValues, outputValues );
+            final long numSuccess = getNumFiltered( outputValues, Result::isSuccess );
+            final long numFailed = getNumFiltered( outputValues, Result::isFailed );
+            addCounts( stage.getId(), numTotal, numSuccess, numFailed, stop - start );
+
+            if ( last ) {
+                addTotalCounts( numTotal, numSuccess == Counts.NUM_ITEMS_UNKNOWN ? 0 : numSuccess, Math.max( 0, numFailed ), stop );
+                logCountsPeriodically();
+            }
+            return outputValues;
+        }
+
+        @Override
+        public String getStageName() {
+            return stage.getDisplayName();
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return stage.processor.isIdempotent();
         }
     }
 
+    @Override
+    public boolean isIdempotent() {
+        return stages.stream().allMatch( stage -> stage.processor.isIdempotent() );
+    }
+
     @SuppressWarnings( { "unchecked", "rawtypes" } )
     @Override
     public Iterable<Result<OriginalItem, Output>> process( final Iterable<Result<OriginalItem, Input>> input ) {
         final Iterable values = doProcess( input );
 
+        logCountsPeriodically();
+
+        return values;
+    }
+
+    private void logCountsPeriodically() {
         // maximal alle x millisekunden loggen
         final long now = System.currentTimeMillis();
         final long last = lastloggedMillis.get();
@@ -240,8 +329,6 @@ public class TimeLoggingProcessor<OriginalItem, Input, Output> implements Proces
             lastloggedMillis.set( now );
             logCounts( stages, counts );
         }
-
-        return values;
     }
 
     /**
@@ -266,19 +353,27 @@ public class TimeLoggingProcessor<OriginalItem, Input, Output> implements Proces
     @SuppressWarnings( { "unchecked", "rawtypes" } )
     private Iterable<Result<OriginalItem, Output>> doProcess( final Iterable<Result<OriginalItem, Input>> input ) {
         Iterable outputValues = input;
-        final long processingBatchStartNanos = System.nanoTime();
-        /* remember the time of very first call */
-        final long processingStartNanos = this.processingStartNanos.get();
-        if (processingStartNanos == Counts.NOT_INITIALIZED_NANOS) {
-            if ( this.processingStartNanos.compareAndSet( Counts.NOT_INITIALIZED_NANOS, processingBatchStartNanos ) ) {
-                addCounts( stageIdPrepare, Counts.NUM_ITEMS_UNKNOWN, Counts.NUM_ITEMS_UNKNOWN, Counts.NUM_ITEMS_UNKNOWN, processingBatchStartNanos - this.initializationNanos );
-            }
-        }
+        markProcessingStart( System.nanoTime() );
         long numItemsMax = 0;
         long numSuccessMin = Counts.NUM_ITEMS_UNKNOWN;
         long numFailedMax = 0;
 
-        for ( final Stage stage : stages ) {
+        for ( int i = 0; i < stages.size(); i++ ) {
+            final int runLength = fusedRunLengths[i];
+            if ( runLength > 1 ) {
+                final long[] numSuccess = new long[runLength];
+                final List<Result> fusedOutputValues = processFused( stages.subList( i, i + runLength ), outputValues, numSuccess );
+                final int numTotal = fusedOutputValues.size();
+                for ( final long stageNumSuccess : numSuccess ) {
+                    numSuccessMin = numSuccessMin == Counts.NUM_ITEMS_UNKNOWN ? stageNumSuccess : Math.min( numSuccessMin, stageNumSuccess );
+                    numFailedMax = Math.max( numFailedMax, numTotal - stageNumSuccess );
+                }
+                numItemsMax = Math.max( numItemsMax, numTotal );
+                outputValues = fusedOutputValues;
+                i += runLength - 1;
+                continue;
+            }
+            final Stage stage = stages.get( i );
             final Iterable inputValues = prepareInputIterable( outputValues );
             final long start = System.nanoTime();
             
@@ -308,14 +403,94 @@ public class TimeLoggingProcessor<OriginalItem, Input, Output> implements Proces
          * g. by a fetcher or some other outside stuff, or decreased e. g. by
          * doing things in parallel.
          */
-        final long totalItems = this.totalCounter.addAndGet( numItemsMax );
-        final long totalSuccessItems = this.totalSuccessCounter.addAndGet( numSuccessMin );
-        final long totalFailedItems = this.totalFailCounter.addAndGet( numFailedMax );
-        replaceCounts( stageIdTotal, totalItems, totalSuccessItems, totalFailedItems, processingBatchStopNanos - this.processingStartNanos.get() );
+        addTotalCounts( numItemsMax, numSuccessMin, numFailedMax, processingBatchStopNanos );
 
         return outputValues;
     }
 
+    /**
+     * Passes each item through all of the given single item stages before the
+     * next item is processed, so the stages do not collect their output in
+     * lists of their own. The counts of each stage are exact, but only each
+     * {@value #FUSED_SAMPLING_INTERVAL}th item is timed per stage: the
+     * duration of the whole run is split between its stages in proportion to
+     * these samples.
+     *
+     * @param numSuccess
+     *            receives the number of successful results of each stage
+     */
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private List<Result> processFused( final List<Stage> run, final Iterable<Result> input, final long[] numSuccess ) {
+        final int numStages = run.size();
+        final AbstractSingleItemProcessor[] processors = new AbstractSingleItemProcessor[numStages];
+        for ( int s = 0; s < numStages; s++ ) {
+            processors[s] = (AbstractSingleItemProcessor) run.get( s ).processor;
+        }
+        final long[] sampledNanos = new long[numStages];
+        final List<Result> results = input instanceof Collection
+            ? new ArrayList<>( ( (Collection<?>) input ).size() )
+            : new ArrayList<>();
+
+        final long start = System.nanoTime();
+        int n = 0;
+        for ( final Result item : input ) {
+            Result result = item;
+            if ( n++ % FUSED_SAMPLING_INTERVAL == 0 ) {
+                long sampleStart = System.nanoTime();
+                for ( int s = 0; s < numStages; s++ ) {
+                    result = processors[s].processItem( result );
+                    final long sampleStop = System.nanoTime();
+                    sampledNanos[s] += sampleStop - sampleStart;
+                    sampleStart = sampleStop;
+                    if ( result.isSuccess() ) {
+                        numSuccess[s]++;
+                    }
+                }
+            } else {
+                for ( int s = 0; s < numStages; s++ ) {
+                    result = processors[s].processItem( result );
+                    if ( result.isSuccess() ) {
+                        numSuccess[s]++;
+                    }
+                }
+            }
+            results.add( result );
+        }
+        final long durationNanos = System.nanoTime() - start;
+
+        long sampledTotalNanos = 0;
+        for ( int s = 0; s < numStages; s++ ) {
+            sampledTotalNanos += sampledNanos[s];
+        }
+        final int numTotal = results.size();
+        for ( int s = 0; s < numStages; s++ ) {
+            final long stageNanos = sampledTotalNanos == 0
+                ? durationNanos / numStages
+                : (long) ( durationNanos * ( (double) sampledNanos[s] / sampledTotalNanos ) );
+            addCounts( run.get( s ).getId(), numTotal, numSuccess[s], numTotal - numSuccess[s], stageNanos );
+        }
+        return Collections.unmodifiableList( results );
+    }
+
+    /**
+     * Remember the time of the very first call.
+     */
+    private void markProcessingStart( final long processingBatchStartNanos ) {
+        final long processingStartNanos = this.processingStartNanos.get();
+        if ( processingStartNanos == Counts.NOT_INITIALIZED_NANOS ) {
+            if ( this.processingStartNanos.compareAndSet( Counts.NOT_INITIALIZED_NANOS, processingBatchStartNanos ) ) {
+                addCounts( stageIdPrepare, Counts.NUM_ITEMS_UNKNOWN, Counts.NUM_ITEMS_UNKNOWN, Counts.NUM_ITEMS_UNKNOWN, processingBatchStartNanos - this.initializationNanos );
+            }
+        }
+    }
+
+    private void addTotalCounts( final long numItems, final long numSuccess, final long numFailed, final long processingBatchStopNanos ) {
+        final long totalItems = this.totalCounter.addAndGet( numItems );
+        final long totalSuccessItems = this.totalSuccessCounter.addAndGet( numSuccess );
+        final long totalFailedItems = this.totalFailCounter.addAndGet( numFailed );
+        replaceCounts( stageIdTotal, totalItems, totalSuccessItems, totalFailedItems, processingBatchStopNanos - this.processingStartNanos.get() );
+    }
+
     @SuppressWarnings( "rawtypes" ) 
     private int getNumTotalItems( final Iterable inputValues, final Iterable outputValues ) {
         if ( outputValues instanceof Collection ) {
@@ -389,6 +564,20 @@ public class TimeLoggingProcessor<OriginalItem, Input, Output> implements Proces
         return sb.toString();
     }
 
+    /**
+     * The success and failure counts of each stage, keyed by stage id and
+     * name, in the order of processing.
+     */
+    public Map<String, com.freiheit.fuava.simplebatch.result.Counts> getStageResultCounts() {
+        final Map<String, com.freiheit.fuava.simplebatch.result.Counts> result = new LinkedHashMap<>();
+        for ( final Stage stage : stages ) {
+            final Counts c = counts.getOrDefault( stage.getId(), Counts.NOTHING );
+            result.put( stage.getId() + " " + stage.getDisplayName(),
+                    new com.freiheit.fuava.simplebatch.result.Counts( Math.max( 0, c.getNumSuccess() ), Math.max( 0, c.getNumFailed() ) ) );
+        }
+        return Collections.unmodifiableMap( result );
+    }
+
     /**
      * Expose the current counts for testing or reporting.
      * 
@@ -16,23 +16,41 @@
  */
 package com.freiheit.fuava.simplebatch.result;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
 public final class Counts {
+    /**
+     * The failure category of failed results without a throwable.
+     */
+    public static final String NO_THROWABLE_CATEGORY = "(no throwable)";
+
+    /**
+     * Counts results. Results may be added from several threads at the same
+     * time: the counters are striped, so the threads do not contend for them.
+     */
     public static final class Builder {
-        private int success;
-        private int error;
+        private final LongAdder success = new LongAdder();
+        private final LongAdder error = new LongAdder();
+        private final ConcurrentHashMap<String, LongAdder> failureCategories = new ConcurrentHashMap<>();
 
         public Counts.Builder success() {
-            success++;
+            success.increment();
             return this;
         }
 
         public Counts.Builder failed() {
-            error++;
+            error.increment();
             return this;
         }
 
         public Counts build() {
-            return new Counts( success, error );
+            final Map<String, Long> categories = new TreeMap<>();
+            failureCategories.forEach( ( category, count ) -> categories.put( category, count.sum() ) );
+            return new Counts( success.sum(), error.sum(), categories );
         }
 
         public void addAll( final Iterable<? extends Result<?, ?>> it ) {
@@ -44,6 +62,7 @@ public final class Counts {
         public void add( final Result<?, ?> result ) {
             if ( result.isFailed() ) {
                 failed();
+                failureCategories.computeIfAbsent( getFailureCategory( result ), k -> new LongAdder() ).increment();
             } else {
                 success();
             }
@@ -51,24 +70,82 @@ public final class Counts {
 
     }
 
-    private final int success;
-    private final int error;
+    private final long success;
+    private final long error;
+    private final Map<String, Long> failureCategories;
 
     public Counts( final int success, final int error ) {
+        this( (long) success, (long) error );
+    }
+
+    public Counts( final long success, final long error ) {
+        this( success, error, Collections.emptyMap() );
+    }
+
+    /**
+     * @param failureCategories the number of failed results by category, see {@link #getFailureCategory(Result)}
+     */
+    public Counts( final long success, final long error, final Map<String, Long> failureCategories ) {
         this.success = success;
         this.error = error;
+        this.failureCategories = Collections.unmodifiableMap( new TreeMap<>( failureCategories ) );
     }
 
+    /**
+     * @deprecated the number is capped at {@link Integer#MAX_VALUE}, use {@link #getSuccessCount()}
+     */
+    @Deprecated
     public int getSuccess() {
-        return success;
+        return (int) Math.min( success, Integer.MAX_VALUE );
     }
 
+    /**
+     * @deprecated the number is capped at {@link Integer#MAX_VALUE}, use {@link #getErrorCount()}
+     */
+    @Deprecated
     public int getError() {
+        return (int) Math.min( error, Integer.MAX_VALUE );
+    }
+
+    public long getSuccessCount() {
+        return success;
+    }
+
+    public long getErrorCount() {
         return error;
     }
 
+    /**
+     * The number of failed results by category, sorted by category.
+     *
+     * @see #getFailureCategory(Result)
+     */
+    public Map<String, Long> getFailureCategories() {
+        return failureCategories;
+    }
+
+    /**
+     * The category of a failed result: the class name of its first throwable,
+     * or {@link #NO_THROWABLE_CATEGORY}.
+     */
+    public static String getFailureCategory( final Result<?, ?> result ) {
+        for ( final Throwable t : result.getThrowables() ) {
+            return t.getClass().getName();
+        }
+        return NO_THROWABLE_CATEGORY;
+    }
+
+    /**
+     * The sum of these and the given counts.
+     */
+    public Counts plus( final Counts other ) {
+        final Map<String, Long> categories = new TreeMap<>( failureCategories );
+        other.failureCategories.forEach( ( category, count ) -> categories.merge( category, count, Long::sum ) );
+        return new Counts( success + other.success, error + other.error, categories );
+    }
+
     public static final Counts.Builder builder() {
         return new Builder();
     }
 
-}
\ No newline at end of file
+}
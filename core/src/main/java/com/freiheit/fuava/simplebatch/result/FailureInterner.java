@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.result;
+
+import com.freiheit.fuava.simplebatch.util.RunContext;
+import com.freiheit.fuava.simplebatch.util.Sysprops;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Deduplicates the throwables of failed results: if a backend is down, the
+ * same exception may be thrown for millions of items.
+ *
+ * Throwables with the same class, message, cause and top stack frames share
+ * a fingerprint. The first throwable of a fingerprint is kept as exemplar and
+ * is stored in all failed results with that fingerprint instead of their own
+ * throwable, and only its stack trace is logged. Repetitions are logged in a
+ * single line, and after a configured number of repetitions only when the
+ * number of occurrences reaches a power of two.
+ *
+ * At most a configured number of fingerprints is retained. Beyond that,
+ * the first further throwable of each class is kept as exemplar of that
+ * class: it is stored in all failed results with a new fingerprint of that
+ * class, and the logs of that class are throttled like those of a
+ * fingerprint, so failures with unique messages do not retain one stack
+ * trace per item.
+ *
+ * Each run of a {@link com.freiheit.fuava.simplebatch.BatchJob} has an
+ * instance of its own, so the exemplars and the throttling of the logs do
+ * not outlive the run. Failures outside of a run are logged as they are.
+ *
+ * The instances of the runs are configured with the system properties
+ * {@code fdc.simplebatch.failures.intern},
+ * {@code fdc.simplebatch.failures.maxdistinct} and
+ * {@code fdc.simplebatch.failures.maxloggedrepeats}, see {@link Sysprops}.
+ */
+public final class FailureInterner {
+    /**
+     * The number of stack frames which are part of a fingerprint.
+     */
+    static final int NUM_FINGERPRINT_FRAMES = 8;
+
+    private static final class Exemplar {
+        private final Throwable throwable;
+        private final AtomicLong occurrences = new AtomicLong();
+
+        private Exemplar( final Throwable throwable ) {
+            this.throwable = throwable;
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxDistinct;
+    private final int maxLoggedRepeats;
+    private final ConcurrentHashMap<String, Exemplar> exemplars = new ConcurrentHashMap<>();
+    // exemplars by throwable class, once the number of fingerprints is exhausted
+    private final ConcurrentHashMap<Class<?>, Exemplar> exemplarsByClass = new ConcurrentHashMap<>();
+
+    FailureInterner( final boolean enabled, final int maxDistinct, final int maxLoggedRepeats ) {
+        if ( maxDistinct < 0 || maxLoggedRepeats < 0 ) {
+            throw new IllegalArgumentException( "Limits must not be negative [maxDistinct=" + maxDistinct + ", maxLoggedRepeats=" + maxLoggedRepeats + "]" );
+        }
+        this.enabled = enabled;
+        this.maxDistinct = maxDistinct;
+        this.maxLoggedRepeats = maxLoggedRepeats;
+    }
+
+    /**
+     * The instance of the current run, null outside of a run.
+     */
+    @Nullable
+    public static FailureInterner current() {
+        final RunContext run = RunContext.current();
+        return run == null
+            ? null
+            : run.get( FailureInterner.class, () -> new FailureInterner(
+                    Sysprops.FAILURE_INTERNING,
+                    Sysprops.FAILURE_INTERNING_MAX_DISTINCT,
+                    Sysprops.FAILURE_INTERNING_MAX_LOGGED_REPEATS ) );
+    }
+
+    /**
+     * Logs the failure of an item with the instance of the current run, see
+     * {@link #intern(Logger, String, Throwable)}. Outside of a run, the
+     * failure is logged and the given throwable is returned.
+     */
+    static Throwable internInCurrentRun( final Logger log, final String msg, final Throwable t ) {
+        final FailureInterner interner = current();
+        if ( interner == null ) {
+            log.error( msg, t );
+            return t;
+        }
+        return interner.intern( log, msg, t );
+    }
+
+    /**
+     * Logs the failure of an item, and returns the throwable to store in its
+     * result: the exemplar of its fingerprint or of its class, or the given
+     * throwable.
+     *
+     * @param log the logger of the failure
+     * @param msg describes the failed item
+     * @param t the throwable which caused the failure
+     */
+    public Throwable intern( final Logger log, final String msg, final Throwable t ) {
+        if ( !enabled || t instanceof VirtualMachineError ) {
+            log.error( msg, t );
+            return t;
+        }
+        final String fingerprint = fingerprint( t );
+        Exemplar exemplar = exemplars.get( fingerprint );
+        if ( exemplar == null ) {
+            exemplar = exemplars.size() >= maxDistinct
+                ? exemplarsByClass.computeIfAbsent( t.getClass(), k -> new Exemplar( t ) )
+                : exemplars.computeIfAbsent( fingerprint, k -> new Exemplar( t ) );
+        }
+        final long occurrences = exemplar.occurrences.incrementAndGet();
+        if ( occurrences == 1 ) {
+            log.error( msg, t );
+        } else if ( occurrences <= maxLoggedRepeats + 1 || Long.bitCount( occurrences ) == 1 ) {
+            log.error( "{} - {}: {} (occurred {} times, the stack trace was logged for the first occurrence)",
+                    msg, t.getClass().getName(), t.getMessage(), occurrences );
+        }
+        return exemplar.throwable;
+    }
+
+    /**
+     * The number of occurrences of each retained exemplar, with the most
+     * frequent first.
+     */
+    public Map<Throwable, Long> getOccurrences() {
+        final Map<Throwable, Long> result = new LinkedHashMap<>();
+        Stream.concat( exemplars.values().stream(), exemplarsByClass.values().stream() )
+                .sorted( ( a, b ) -> Long.compare( b.occurrences.get(), a.occurrences.get() ) )
+                .forEach( e -> result.put( e.throwable, e.occurrences.get() ) );
+        return Collections.unmodifiableMap( result );
+    }
+
+    static String fingerprint( final Throwable t ) {
+        final StringBuilder sb = new StringBuilder();
+        Throwable current = t;
+        // the causes are limited, as they may form a cycle
+        for ( int depth = 0; current != null && depth < NUM_FINGERPRINT_FRAMES; depth++ ) {
+            if ( depth > 0 ) {
+                sb.append( "\ncaused by " );
+            }
+            sb.append( current.getClass().getName() ).append( ": " ).append( current.getMessage() );
+            final StackTraceElement[] stackTrace = current.getStackTrace();
+            for ( int i = 0; i < Math.min( stackTrace.length, NUM_FINGERPRINT_FRAMES ); i++ ) {
+                sb.append( "\n\tat " ).append( stackTrace[i] );
+            }
+            current = current.getCause();
+        }
+        return sb.toString();
+    }
+}
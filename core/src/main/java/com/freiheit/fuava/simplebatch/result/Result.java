@@ -22,6 +22,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
@@ -29,7 +30,9 @@ import java.util.function.Function;
 /**
  * Contains the result of a fetching or processing step.
  * 
- * A result can either be successful or failed.
+ * A result can either be successful or failed. The throwables of failed
+ * results are deduplicated with the {@link FailureInterner} of the current
+ * run.
  * 
  * @author klas.kalass@freiheit.com
  *
@@ -108,6 +111,9 @@ public class Result<OriginalItem, Output> {
         }
 
         private Result<OriginalItem, Output> build( final boolean failed ) {
+            if ( !failed && warningMessages == null && failureMessages == null && throwables == null ) {
+                return new Result<>( input, output );
+            }
             return new Result<>( input, output, failed, warningMessages, failureMessages, throwables );
         }
 
@@ -120,9 +126,9 @@ public class Result<OriginalItem, Output> {
                 final String msg = input + " - " + ( failureMessages == null
                     ? ""
                     : String.join( " | ", failureMessages ) );
-                LOG.error( msg, t );
-                withFailureMessage( t.getMessage() );
-                withThrowable( t );
+                final Throwable interned = FailureInterner.internInCurrentRun( LOG, msg, t );
+                withFailureMessage( interned.getMessage() );
+                withThrowable( interned );
             }
             return build( true );
         }
@@ -140,6 +146,22 @@ public class Result<OriginalItem, Output> {
     private final List<String> warningMessages;
     private final List<Throwable> throwables;
 
+    /**
+     * A success without any messages - the most common case, which does not
+     * need to copy or check any lists.
+     */
+    private Result( final OriginalItem input, final Output output ) {
+        if ( output == null ) {
+            throw new IllegalArgumentException( "Successful results always must contain a result" );
+        }
+        this.input = input;
+        this.output = output;
+        this.failed = false;
+        this.failureMessages = Collections.emptyList();
+        this.warningMessages = Collections.emptyList();
+        this.throwables = Collections.emptyList();
+    }
+
     private Result(
             final OriginalItem input,
             final Output output,
@@ -181,13 +203,20 @@ public class Result<OriginalItem, Output> {
     }
 
     public static <OriginalItem, Output> Builder<OriginalItem, Output> builder( final Result<?, ?> orig, final OriginalItem input ) {
-        return new Builder<OriginalItem, Output>()
-                .withInput( input )
+        final Builder<OriginalItem, Output> builder = new Builder<OriginalItem, Output>().withInput( input );
+        if ( !orig.hasMessagesOrThrowables() ) {
+            return builder;
+        }
+        return builder
                 .withThrowables( orig.getThrowables() )
                 .withWarningMessages( orig.getWarningMessages() )
                 .withFailureMessages( orig.getFailureMessages() );
     }
 
+    private boolean hasMessagesOrThrowables() {
+        return !( warningMessages.isEmpty() && failureMessages.isEmpty() && throwables.isEmpty() );
+    }
+
     public OriginalItem getInput() {
         return input;
     }
@@ -217,6 +246,9 @@ public class Result<OriginalItem, Output> {
     }
 
     public List<String> getAllMessages() {
+        if ( warningMessages.isEmpty() && failureMessages.isEmpty() ) {
+            return Collections.emptyList();
+        }
         final List<String> results = new ArrayList<>();
         getWarningMessages().forEach( results::add );
         getFailureMessages().forEach( results::add );
@@ -225,10 +257,13 @@ public class Result<OriginalItem, Output> {
     }
 
     public static <OriginalItem, Output> Result<OriginalItem, Output> success( final OriginalItem originalItem, final Output output ) {
-        return success( originalItem, output, Collections.emptyList() );
+        return new Result<>( originalItem, output );
     }
 
     public static <OriginalItem, Output> Result<OriginalItem, Output> success( final OriginalItem originalItem, final Output output, final Iterable<String> warnings ) {
+        if ( warnings == null || warnings instanceof Collection && ( (Collection<?>) warnings ).isEmpty() ) {
+            return new Result<>( originalItem, output );
+        }
         return new Result<>( originalItem, output, false, warnings, Collections.emptyList(), null );
     }
 
@@ -249,15 +284,14 @@ public class Result<OriginalItem, Output> {
     }
 
     public static <OriginalItem, Output> Result<OriginalItem, Output> failed( final OriginalItem originalItem, final Iterable<String> failureMessages, final Throwable t ) {
-        if ( t != null ) {
-            final String msg = originalItem + " - " + ( failureMessages == null
-                ? ""
-                : String.join( " | ", failureMessages ) );
-            LOG.error( msg, t );
+        if ( t == null ) {
+            return new Result<>( originalItem, null, true, Collections.emptyList(), failureMessages, Collections.emptyList() );
         }
-        return new Result<>( originalItem, null, true, Collections.emptyList(), failureMessages, t == null
-                ? Collections.emptyList()
-                : Collections.singletonList( t ) );
+        final String msg = originalItem + " - " + ( failureMessages == null
+            ? ""
+            : String.join( " | ", failureMessages ) );
+        final Throwable interned = FailureInterner.internInCurrentRun( LOG, msg, t );
+        return new Result<>( originalItem, null, true, Collections.emptyList(), failureMessages, Collections.singletonList( interned ) );
     }
 
     public static <OriginalItem, Output> Result<OriginalItem, Output> failed( final OriginalItem originalItem, final Iterable<String> failureMessages ) {
@@ -301,6 +335,14 @@ public class Result<OriginalItem, Output> {
             @Nonnull final Function<Output, NewOutput> successMapper, 
             @Nonnull final Function<Output, NewOutput> failureMapper 
     ) {
+        if ( this.isSuccess() && !hasMessagesOrThrowables() ) {
+            // fast path without a builder
+            try {
+                return new Result<>( input, successMapper.apply( output ) );
+            } catch (final Throwable t) {
+                return Result.<OriginalItem, NewOutput>builder( this ).failed( t );
+            }
+        }
         final Builder<OriginalItem, NewOutput> builder = Result.builder( this );
         
         if (this.isSuccess()) {
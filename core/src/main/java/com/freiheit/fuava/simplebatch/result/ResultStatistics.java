@@ -18,25 +18,42 @@ package com.freiheit.fuava.simplebatch.result;
 
 import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class ResultStatistics {
 
+    /**
+     * Collects the statistics of a run. The results of parallel chunks may
+     * be reported from several threads at the same time.
+     */
     public static final class Builder<OriginalInput, Output> implements ProcessingResultListener<OriginalInput, Output> {
 
         private final Counts.Builder fetch = Counts.builder();
         private final Counts.Builder processing = Counts.builder();
-        private boolean hasListenerDelegationFailures = false;
+        private volatile boolean hasListenerDelegationFailures = false;
+        private volatile Map<String, Counts> stageCounts = Collections.emptyMap();
 
         public ResultStatistics build() {
             return new ResultStatistics(
                     fetch.build(),
                     processing.build(),
-                    hasListenerDelegationFailures );
+                    hasListenerDelegationFailures,
+                    stageCounts );
         }
 
         public void setListenerDelegationFailures( final boolean b ) {
             hasListenerDelegationFailures = b;
         }
 
+        /**
+         * @param stageCounts the processing counts by stage of the processor, in the order of processing
+         */
+        public void setStageCounts( final Map<String, Counts> stageCounts ) {
+            this.stageCounts = stageCounts;
+        }
+
         @Override
         public void onFetchResult( final Result<FetchedItem<OriginalInput>, OriginalInput> result ) {
             fetch.add( result );
@@ -52,11 +69,17 @@ public class ResultStatistics {
     private final Counts fetch;
     private final Counts processing;
     private final boolean hasListenerDelegationFailures;
+    private final Map<String, Counts> stageCounts;
 
     public ResultStatistics( final Counts fetch, final Counts persist, final boolean hasListenerDelegationFailures ) {
+        this( fetch, persist, hasListenerDelegationFailures, Collections.emptyMap() );
+    }
+
+    public ResultStatistics( final Counts fetch, final Counts persist, final boolean hasListenerDelegationFailures, final Map<String, Counts> stageCounts ) {
         this.fetch = fetch;
         this.processing = persist;
         this.hasListenerDelegationFailures = hasListenerDelegationFailures;
+        this.stageCounts = Collections.unmodifiableMap( new LinkedHashMap<>( stageCounts ) );
     }
 
     public Counts getFetchCounts() {
@@ -67,12 +90,23 @@ public class ResultStatistics {
         return processing;
     }
 
+    /**
+     * The processing counts of each stage of the processor, in the order of
+     * processing, counted in the run of the job. Only available if the
+     * processor of the job is a
+     * {@link com.freiheit.fuava.simplebatch.processor.TimeLoggingProcessor},
+     * otherwise empty.
+     */
+    public Map<String, Counts> getStageCounts() {
+        return stageCounts;
+    }
+
     private static boolean allFailed( final Counts counts ) {
-        return counts.getError() != 0 && counts.getSuccess() == 0;
+        return counts.getErrorCount() != 0 && counts.getSuccessCount() == 0;
     }
 
     private static boolean allSuccess( final Counts counts ) {
-        return counts.getError() == 0;
+        return counts.getErrorCount() == 0;
     }
 
     public boolean isAllFailed() {
@@ -91,6 +125,24 @@ public class ResultStatistics {
         return hasListenerDelegationFailures;
     }
 
+    /**
+     * Combines the statistics of several runs, for example of the shards of a
+     * job (see {@link com.freiheit.fuava.simplebatch.BatchJob.Builder#setShard(int, int, java.util.function.Function)}).
+     */
+    public static ResultStatistics merge( final Iterable<ResultStatistics> statistics ) {
+        Counts fetch = new Counts( 0, 0 );
+        Counts processing = new Counts( 0, 0 );
+        boolean hasListenerDelegationFailures = false;
+        final Map<String, Counts> stageCounts = new LinkedHashMap<>();
+        for ( final ResultStatistics s : statistics ) {
+            fetch = fetch.plus( s.fetch );
+            processing = processing.plus( s.processing );
+            hasListenerDelegationFailures |= s.hasListenerDelegationFailures;
+            s.stageCounts.forEach( ( stage, counts ) -> stageCounts.merge( stage, counts, Counts::plus ) );
+        }
+        return new ResultStatistics( fetch, processing, hasListenerDelegationFailures, stageCounts );
+    }
+
     public static final <OriginalInput, Output> Builder<OriginalInput, Output> builder() {
         return new Builder<OriginalInput, Output>();
     }
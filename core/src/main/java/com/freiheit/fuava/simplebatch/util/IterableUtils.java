@@ -6,6 +6,8 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
 
 /**
  * Helper functions to better deal with Iterables.
@@ -54,21 +56,55 @@ public class IterableUtils {
         if ( batchSize <= 0 ) {
             throw new IllegalArgumentException( "Lists cannot be partioned with negative batch sizes! [batchsize=" + batchSize + "]" );
         }
+        return () -> new BatchedIterator<>( iterable, () -> batchSize );
+    }
+
+    /**
+     * Like {@link #partition(Iterable, int)}, but the size of each batch is
+     * determined when the batch is collected, so it may change while iterating.
+     * @param iterable The iterable to collect the data from. If null or empty an empty list will be returned.
+     * @param batchSize Called once per batch. Values smaller than 1 are treated as 1.
+     */
+    public static <T> Iterable<List<T>> partition( final Iterable<T> iterable, final IntSupplier batchSize ) {
+        if ( iterable == null ) {
+            return Collections.emptyList();
+        }
         return () -> new BatchedIterator<>( iterable, batchSize );
     }
 
+    /**
+     * Like {@link #partition(Iterable, IntSupplier)}, but each batch only
+     * contains items of the same lane. Items are collected per lane, and the
+     * batch of a lane is returned as soon as it is full. When the base iterable
+     * is exhausted, the incomplete batches of all lanes are returned.
+     * @param iterable The iterable to collect the data from. If null or empty an empty list will be returned.
+     * @param batchSize Called once per batch. Values smaller than 1 are treated as 1.
+     * @param numLanes The number of lanes, larger than 0.
+     * @param laneOf Determines the lane of an item, a value from 0 (inclusive) to numLanes (exclusive).
+     */
+    public static <T> Iterable<List<T>> partitionByLane( final Iterable<T> iterable, final IntSupplier batchSize, final int numLanes,
+            final ToIntFunction<? super T> laneOf ) {
+        if ( iterable == null ) {
+            return Collections.emptyList();
+        }
+        if ( numLanes <= 0 ) {
+            throw new IllegalArgumentException( "The number of lanes must be positive [numLanes=" + numLanes + "]" );
+        }
+        return () -> new LaneBatchedIterator<>( iterable, batchSize, numLanes, laneOf );
+    }
+
     /**
      * Iterator to iterate over all items of a given Iterable in batches of fixed size.
      * @author Matthias Bender (matthias.bender@freiheit.com)
      */
     static class BatchedIterator<T> implements Iterator<List<T>> {
         private final Iterator<T> data;
-        private final int batchSize;
+        private final IntSupplier batchSize;
 
         /**
          * Ctor.
          */
-        public BatchedIterator( final Iterable<T> data, final int batchSize ) {
+        public BatchedIterator( final Iterable<T> data, final IntSupplier batchSize ) {
             this.data = data.iterator();
             this.batchSize = batchSize;
         }
@@ -83,11 +119,81 @@ public class IterableUtils {
             if ( !hasNext() ) {
                 throw new NoSuchElementException();
             }
-            final List<T> batch = new ArrayList<>( batchSize );
-            for ( int i = 0; i < batchSize && hasNext(); i++ ) {
+            final int size = Math.max( 1, batchSize.getAsInt() );
+            final List<T> batch = new ArrayList<>( size );
+            for ( int i = 0; i < size && hasNext(); i++ ) {
                 batch.add( data.next() );
             }
             return Collections.unmodifiableList( batch );
         }
     }
+
+    /**
+     * Iterator collecting the items of a given Iterable in batches per lane.
+     */
+    static class LaneBatchedIterator<T> implements Iterator<List<T>> {
+        private final Iterator<T> data;
+        private final IntSupplier batchSize;
+        private final ToIntFunction<? super T> laneOf;
+        private final List<List<T>> lanes;
+        private final int[] laneBatchSizes;
+        private int nextLaneToFlush = 0;
+        private List<T> next;
+
+        public LaneBatchedIterator( final Iterable<T> data, final IntSupplier batchSize, final int numLanes, final ToIntFunction<? super T> laneOf ) {
+            this.data = data.iterator();
+            this.batchSize = batchSize;
+            this.laneOf = laneOf;
+            this.lanes = new ArrayList<>( numLanes );
+            this.laneBatchSizes = new int[numLanes];
+            for ( int i = 0; i < numLanes; i++ ) {
+                this.lanes.add( null );
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ( next == null ) {
+                next = collectNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<T> next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            final List<T> result = next;
+            next = null;
+            return result;
+        }
+
+        private List<T> collectNext() {
+            while ( data.hasNext() ) {
+                final T item = data.next();
+                final int lane = laneOf.applyAsInt( item );
+                List<T> batch = lanes.get( lane );
+                if ( batch == null ) {
+                    laneBatchSizes[lane] = Math.max( 1, batchSize.getAsInt() );
+                    batch = new ArrayList<>( laneBatchSizes[lane] );
+                    lanes.set( lane, batch );
+                }
+                batch.add( item );
+                if ( batch.size() >= laneBatchSizes[lane] ) {
+                    lanes.set( lane, null );
+                    return Collections.unmodifiableList( batch );
+                }
+            }
+            while ( nextLaneToFlush < lanes.size() ) {
+                final List<T> batch = lanes.get( nextLaneToFlush );
+                lanes.set( nextLaneToFlush, null );
+                nextLaneToFlush++;
+                if ( batch != null ) {
+                    return Collections.unmodifiableList( batch );
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.util;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Identifies a single run of a {@link com.freiheit.fuava.simplebatch.BatchJob}
+ * to the code fetching and processing its items, so state which must not
+ * outlive the run - like retry budgets - can be kept per run. Values stored
+ * with {@link #get(Object, Supplier)} are dropped together with the run.
+ *
+ * The job makes its run the current one of each of its threads while the
+ * thread fetches or processes items. Processors passing work to threads of
+ * their own need to pass the run on with {@link #wrap(Runnable)}.
+ */
+public final class RunContext {
+    private static final ThreadLocal<RunContext> CURRENT = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<Object, Object> values = new ConcurrentHashMap<>();
+
+    /**
+     * The run of the calling thread, null outside of a run.
+     */
+    @Nullable
+    public static RunContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * The value of this run for the given key, which is created with the
+     * given factory on the first call.
+     */
+    @SuppressWarnings( "unchecked" )
+    public <T> T get( final Object key, final Supplier<T> factory ) {
+        return (T) values.computeIfAbsent( key, k -> factory.get() );
+    }
+
+    /**
+     * Calls the given task with this run as the current one of the calling
+     * thread.
+     */
+    public <T> T call( final Supplier<T> task ) {
+        final RunContext previous = CURRENT.get();
+        CURRENT.set( this );
+        try {
+            return task.get();
+        } finally {
+            if ( previous == null ) {
+                // pooled threads must not keep the run reachable
+                CURRENT.remove();
+            } else {
+                CURRENT.set( previous );
+            }
+        }
+    }
+
+    /**
+     * Runs the given task with this run as the current one of the calling
+     * thread.
+     */
+    public void run( final Runnable task ) {
+        call( () -> {
+            task.run();
+            return null;
+        } );
+    }
+
+    /**
+     * Passes the current run of the calling thread, if any, to a task which
+     * will be executed by another thread.
+     */
+    public static Runnable wrap( final Runnable task ) {
+        final RunContext current = current();
+        return current == null
+            ? task
+            : () -> current.run( task );
+    }
+}
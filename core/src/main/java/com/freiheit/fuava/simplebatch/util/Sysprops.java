@@ -143,6 +143,9 @@ public class Sysprops {
     public static final String INSTANCE_NAME = new StringProp( "fsjobs.instance", "inst_01" ).get();
     public static final SubdirStrategy SUBDIR_STRATEGY = new SubdirStrategyProp( "fsjobs.files.subdirstrategy", StandardSubdirStrategies.MD5_ONE_LETTER_TWO_DIRS ).get();
     public static final SubdirStrategy SFTP_SUBDIR_STRATEGY = new SubdirStrategyProp( "sftp.files.subdirstrategy", StandardSubdirStrategies.NONE ).get();
+    public static final boolean FAILURE_INTERNING = new BooleanProp( "failures.intern", true ).is();
+    public static final Integer FAILURE_INTERNING_MAX_DISTINCT = new IntegerProp( "failures.maxdistinct", 1000 ).get();
+    public static final Integer FAILURE_INTERNING_MAX_LOGGED_REPEATS = new IntegerProp( "failures.maxloggedrepeats", 10 ).get();
     
     private static final Logger LOG = LoggerFactory.getLogger( Sysprops.class );
     
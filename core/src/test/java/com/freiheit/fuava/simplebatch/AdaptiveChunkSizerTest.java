@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class AdaptiveChunkSizerTest {
+
+    @Test
+    public void testGrowsUpToMaximumWhileThroughputIsStable() {
+        final AdaptiveChunkSizer sizer = new AdaptiveChunkSizer( 10, 10, 100 );
+        for ( int i = 0; i < 100; i++ ) {
+            final int size = sizer.getChunkSize();
+            // constant time per item
+            sizer.onChunkProcessed( size, TimeUnit.MILLISECONDS.toNanos( size ), 0 );
+        }
+        Assert.assertEquals( sizer.getChunkSize(), 100 );
+    }
+
+    @Test
+    public void testShrinksWhenThroughputDrops() {
+        final AdaptiveChunkSizer sizer = new AdaptiveChunkSizer( 100, 10, 1000 );
+        sizer.onChunkProcessed( 100, TimeUnit.MILLISECONDS.toNanos( 100 ), 0 );
+        final int grown = sizer.getChunkSize();
+        Assert.assertTrue( grown > 100 );
+
+        // ten times slower per item
+        sizer.onChunkProcessed( grown, TimeUnit.MILLISECONDS.toNanos( grown * 10 ), 0 );
+        Assert.assertTrue( sizer.getChunkSize() < grown, "Expected " + sizer.getChunkSize() + " to be less than " + grown );
+    }
+
+    @Test
+    public void testHalvesOnFailuresButRespectsMinimum() {
+        final AdaptiveChunkSizer sizer = new AdaptiveChunkSizer( 100, 30, 1000 );
+        sizer.onChunkProcessed( 100, TimeUnit.MILLISECONDS.toNanos( 100 ), 50 );
+        Assert.assertEquals( sizer.getChunkSize(), 50 );
+        sizer.onChunkProcessed( 50, TimeUnit.MILLISECONDS.toNanos( 50 ), 50 );
+        Assert.assertEquals( sizer.getChunkSize(), 30 );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void testRejectsInvalidBounds() {
+        new AdaptiveChunkSizer( 10, 20, 10 );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void testBuildRejectsInvalidBounds() {
+        BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( new ArrayList<>() ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> list ) )
+                .setAdaptiveProcessingBatchSize( 100, 10 )
+                .build();
+    }
+
+    @Test
+    public void testJobWithAdaptiveBatchSize() {
+        final List<Integer> data = IntStream.range( 0, 500 ).boxed().collect( Collectors.toList() );
+        final List<Integer> chunkSizes = new ArrayList<>();
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> {
+                    chunkSizes.add( list.size() );
+                    return list;
+                } ) )
+                .setProcessingBatchSize( 5 )
+                .setAdaptiveProcessingBatchSize( 5, 50 )
+                .build()
+                .run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( statistics.getProcessingCounts().getSuccessCount(), data.size() );
+        Assert.assertEquals( chunkSizes.stream().mapToInt( Integer::intValue ).sum(), data.size() );
+        Assert.assertTrue( chunkSizes.stream().allMatch( s -> s <= 50 ) );
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.AsyncProcessor;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import com.freiheit.fuava.simplebatch.util.RunContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class AsyncProcessorTest {
+
+    @Test
+    public void testSingleThreadDrivesManyChunks() {
+        final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final List<Integer> data = IntStream.range( 0, 40 ).boxed().collect( Collectors.toList() );
+            final AtomicInteger pending = new AtomicInteger();
+            final AtomicInteger maxPending = new AtomicInteger();
+
+            // simulates a non-blocking client which answers after 100 ms
+            final AsyncProcessor<FetchedItem<Integer>, Integer, Integer> processor = inputs -> {
+                maxPending.accumulateAndGet( pending.incrementAndGet(), Math::max );
+                final CompletableFuture<Iterable<Result<FetchedItem<Integer>, Integer>>> future = new CompletableFuture<>();
+                io.schedule( () -> {
+                    pending.decrementAndGet();
+                    future.complete( inputs );
+                }, 100, TimeUnit.MILLISECONDS );
+                return future;
+            };
+
+            final long start = System.nanoTime();
+            final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                    .setFetcher( Fetchers.iterable( data ) )
+                    .setAsyncProcessor( processor, 40 )
+                    .setProcessingBatchSize( 1 )
+                    .build()
+                    .run();
+            final long durationMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+            Assert.assertTrue( statistics.isAllSuccess() );
+            Assert.assertEquals( statistics.getProcessingCounts().getSuccessCount(), data.size() );
+            Assert.assertTrue( maxPending.get() > 10, "Chunks should have been processed concurrently, but at most " + maxPending.get() + " were pending" );
+            Assert.assertTrue( durationMs < 2000, "Chunks should have been processed concurrently, but the job took " + durationMs + " ms" );
+        } finally {
+            io.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExceptionallyCompletedChunkFails() {
+        final List<Integer> data = IntStream.range( 0, 10 ).boxed().collect( Collectors.toList() );
+        final List<Integer> failed = Collections.synchronizedList( new ArrayList<>() );
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setAsyncProcessor( inputs -> {
+                    final CompletableFuture<Iterable<Result<FetchedItem<Integer>, Integer>>> future = new CompletableFuture<>();
+                    if ( inputs.iterator().next().getOutput().intValue() == 4 ) {
+                        future.completeExceptionally( new IllegalStateException( "backend unavailable" ) );
+                    } else {
+                        future.complete( inputs );
+                    }
+                    return future;
+                }, 4 )
+                .setProcessingBatchSize( 2 )
+                .addListener( new ProcessingResultListener<Integer, Integer>() {
+                    @Override
+                    public void onProcessingResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                        if ( result.isFailed() ) {
+                            failed.add( result.getInput().getValue() );
+                        }
+                    }
+                } )
+                .build()
+                .run();
+
+        Assert.assertEquals( statistics.getProcessingCounts().getSuccessCount(), 8 );
+        Assert.assertEquals( statistics.getProcessingCounts().getErrorCount(), 2 );
+        Collections.sort( failed );
+        Assert.assertEquals( failed, Arrays.asList( 4, 5 ) );
+    }
+
+    @Test
+    public void testChainedSynchronousProcessors() {
+        final List<Integer> data = IntStream.range( 0, 10 ).boxed().collect( Collectors.toList() );
+        final List<Integer> outputs = Collections.synchronizedList( new ArrayList<>() );
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final AsyncProcessor<FetchedItem<Integer>, Integer, Integer> processor =
+                    Processors.<FetchedItem<Integer>, Integer, Integer>async( Processors.retryableBatchedFunction( list -> list.stream().map( i -> i * 2 ).collect( Collectors.toList() ) ), executor )
+                    .then( Processors.async( Processors.retryableBatchedFunction( list -> list.stream().map( i -> i + 1 ).collect( Collectors.toList() ) ) ) );
+
+            final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                    .setFetcher( Fetchers.iterable( data ) )
+                    .setAsyncProcessor( processor, 2 )
+                    .setProcessingBatchSize( 3 )
+                    .addListener( new ProcessingResultListener<Integer, Integer>() {
+                        @Override
+                        public void onProcessingResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                            outputs.add( result.getOutput() );
+                        }
+                    } )
+                    .build()
+                    .run();
+
+            Assert.assertTrue( statistics.isAllSuccess() );
+            Collections.sort( outputs );
+            Assert.assertEquals( outputs, data.stream().map( i -> i * 2 + 1 ).collect( Collectors.toList() ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testProcessorsAndListenersRunInTheRunOfTheJob() {
+        final List<Integer> data = IntStream.range( 0, 10 ).boxed().collect( Collectors.toList() );
+        final Set<Object> runs = ConcurrentHashMap.newKeySet();
+        final ScheduledExecutorService executor = Executors.newScheduledThreadPool( 2 );
+        try {
+            final AsyncProcessor<FetchedItem<Integer>, Integer, Integer> processor =
+                    Processors.<FetchedItem<Integer>, Integer, Integer>async( Processors.retryableBatchedFunction( list -> {
+                        runs.add( String.valueOf( RunContext.current() ) );
+                        return list;
+                    } ), executor )
+                    .then( inputs -> {
+                        runs.add( String.valueOf( RunContext.current() ) );
+                        final CompletableFuture<Iterable<Result<FetchedItem<Integer>, Integer>>> future = new CompletableFuture<>();
+                        executor.schedule( () -> future.complete( inputs ), 10, TimeUnit.MILLISECONDS );
+                        return future;
+                    } );
+
+            final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                    .setFetcher( Fetchers.iterable( data ) )
+                    .setAsyncProcessor( processor, 4 )
+                    .setProcessingBatchSize( 2 )
+                    .addListener( new ProcessingResultListener<Integer, Integer>() {
+                        @Override
+                        public void onProcessingResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                            runs.add( String.valueOf( RunContext.current() ) );
+                        }
+                    } )
+                    .build()
+                    .run();
+
+            Assert.assertTrue( statistics.isAllSuccess() );
+            Assert.assertEquals( runs.size(), 1 );
+            Assert.assertFalse( runs.contains( "null" ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test( expectedExceptions = StackOverflowError.class )
+    public void testBlockingRethrowsVirtualMachineError() {
+        Processors.<String, String, String>blocking( inputs -> {
+            final CompletableFuture<Iterable<Result<String, String>>> future = new CompletableFuture<>();
+            future.completeExceptionally( new StackOverflowError() );
+            return future;
+        } ).process( Collections.singletonList( Result.success( "a", "a" ) ) );
+    }
+}
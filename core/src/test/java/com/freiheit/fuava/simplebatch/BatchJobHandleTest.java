@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class BatchJobHandleTest {
+
+    @Test
+    public void testResultAndProgress() throws Exception {
+        final List<Integer> data = IntStream.range( 0, 1000 ).boxed().collect( Collectors.toList() );
+
+        final BatchJobHandle handle = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> list ) )
+                .setProcessingBatchSize( 10 )
+                .setParallel( true )
+                .setNumParallelThreads( 4 )
+                .build()
+                .runAsync();
+
+        final ResultStatistics statistics = handle.getResult().get( 1, TimeUnit.MINUTES );
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertTrue( handle.isDone() );
+        Assert.assertFalse( handle.isCancelled() );
+        Assert.assertEquals( handle.getNumFetched(), 1000 );
+        Assert.assertEquals( handle.getNumProcessed(), 1000 );
+        Assert.assertEquals( handle.getNumFailed(), 0 );
+        Assert.assertTrue( handle.getItemsPerSecond() > 0 );
+
+        // the job is already finished
+        handle.cancel();
+        Assert.assertFalse( handle.isCancelled() );
+    }
+
+    @Test
+    public void testCancellingTheResultCancelsTheJob() {
+        final BatchJobHandle handle = new BatchJobHandle();
+        handle.getResult().cancel( false );
+        Assert.assertTrue( handle.isCancelled() );
+    }
+
+    @Test
+    public void testCancelStopsFetching() throws Exception {
+        final List<Integer> data = IntStream.range( 0, 100000 ).boxed().collect( Collectors.toList() );
+        final CountDownLatch started = new CountDownLatch( 1 );
+
+        final BatchJobHandle handle = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep( 5 );
+                    } catch ( final InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return list;
+                } ) )
+                .setProcessingBatchSize( 10 )
+                .setParallel( true )
+                .setNumParallelThreads( 2 )
+                .build()
+                .runAsync();
+
+        Assert.assertTrue( started.await( 1, TimeUnit.MINUTES ) );
+        handle.cancel();
+        final ResultStatistics statistics = handle.getResult().get( 1, TimeUnit.MINUTES );
+
+        Assert.assertTrue( handle.isCancelled() );
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertTrue( handle.getNumProcessed() < data.size(), "Processing should have stopped early, but processed " + handle.getNumProcessed() );
+        // all fetched chunks were drained
+        Assert.assertEquals( handle.getNumProcessed(), handle.getNumFetched() );
+        Assert.assertEquals( statistics.getProcessingCounts().getSuccessCount(), handle.getNumProcessed() );
+    }
+
+    @Test
+    public void testFailureCompletesExceptionally() throws Exception {
+        final BatchJobHandle handle = BatchJob.<Integer, Integer>builder()
+                .setFetcher( () -> {
+                    throw new IllegalStateException( "Failing on purpose" );
+                } )
+                .setProcessor( Processors.retryableBatchedFunction( list -> list ) )
+                .build()
+                .runAsync();
+
+        try {
+            handle.getResult().get( 1, TimeUnit.MINUTES );
+            Assert.fail( "Expected an exception" );
+        } catch ( final ExecutionException e ) {
+            Assert.assertTrue( e.getCause() instanceof IllegalStateException );
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.Result;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class BatchJobPublisherTest {
+
+    /**
+     * Emits the numbers from 0 to max - 1, honoring the demand.
+     */
+    private static final class RangePublisher implements Publisher<Integer> {
+        private final int max;
+        private final AtomicLong emitted = new AtomicLong();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private RangePublisher( final int max ) {
+            this.max = max;
+        }
+
+        @Override
+        public void subscribe( final Subscriber<? super Integer> subscriber ) {
+            subscriber.onSubscribe( new Subscription() {
+                private long demand;
+                private boolean emitting;
+                private boolean done;
+
+                @Override
+                public synchronized void request( final long n ) {
+                    demand += n;
+                    if ( emitting ) {
+                        return;
+                    }
+                    emitting = true;
+                    while ( demand > 0 && !done ) {
+                        final long next = emitted.getAndIncrement();
+                        if ( next >= max ) {
+                            done = true;
+                            subscriber.onComplete();
+                        } else {
+                            demand--;
+                            subscriber.onNext( (int) next );
+                        }
+                    }
+                    emitting = false;
+                }
+
+                @Override
+                public synchronized void cancel() {
+                    done = true;
+                    cancelled.set( true );
+                }
+            } );
+        }
+    }
+
+    private static class CollectingSubscriber implements Subscriber<Result<FetchedItem<Integer>, Integer>> {
+        private final List<Integer> outputs = new ArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch( 1 );
+        private final long initialRequest;
+        private Subscription subscription;
+
+        private CollectingSubscriber( final long initialRequest ) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe( final Subscription s ) {
+            this.subscription = s;
+            s.request( initialRequest );
+        }
+
+        @Override
+        public synchronized void onNext( final Result<FetchedItem<Integer>, Integer> result ) {
+            outputs.add( result.getOutput() );
+        }
+
+        @Override
+        public void onError( final Throwable t ) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        private synchronized List<Integer> getOutputs() {
+            return new ArrayList<>( outputs );
+        }
+    }
+
+    @Test
+    public void testPublishesAllResults() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final RangePublisher source = new RangePublisher( 100 );
+            final BatchJobPublisher<Integer, Integer> publisher = new BatchJobPublisher<>( builder( source ), executor );
+
+            final CollectingSubscriber subscriber = new CollectingSubscriber( Long.MAX_VALUE );
+            publisher.subscribe( subscriber );
+
+            Assert.assertTrue( subscriber.completed.await( 10, TimeUnit.SECONDS ) );
+            Assert.assertEquals( subscriber.getOutputs(), IntStream.range( 0, 100 ).map( i -> i * 2 ).boxed().collect( Collectors.toList() ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFetchingFollowsDemand() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final RangePublisher source = new RangePublisher( 1000 );
+            final BatchJobPublisher<Integer, Integer> publisher = new BatchJobPublisher<>( builder( source ), executor );
+
+            final CollectingSubscriber subscriber = new CollectingSubscriber( 3 );
+            publisher.subscribe( subscriber );
+
+            final long maxEndTime = System.currentTimeMillis() + 10000;
+            while ( subscriber.getOutputs().size() < 3 && System.currentTimeMillis() < maxEndTime ) {
+                Thread.sleep( 10 );
+            }
+            Thread.sleep( 50 );
+            Assert.assertEquals( subscriber.getOutputs(), IntStream.range( 0, 3 ).map( i -> i * 2 ).boxed().collect( Collectors.toList() ) );
+            // one chunk of 5 is processed, the fetcher has at most 4 more items requested
+            Assert.assertTrue( source.emitted.get() <= 10, "Fetched too many items: " + source.emitted.get() );
+
+            subscriber.subscription.request( Long.MAX_VALUE );
+            Assert.assertTrue( subscriber.completed.await( 10, TimeUnit.SECONDS ) );
+            Assert.assertEquals( subscriber.getOutputs().size(), 1000 );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelStopsJobAndSource() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final RangePublisher source = new RangePublisher( 1000 );
+            final BatchJob.Builder<Integer, Integer> builder = builder( source );
+            final BatchJobPublisher<Integer, Integer> publisher = new BatchJobPublisher<>( builder, executor );
+
+            final CollectingSubscriber subscriber = new CollectingSubscriber( 3 );
+            publisher.subscribe( subscriber );
+            Assert.assertTrue( builder.getListeners().isEmpty() );
+
+            final long maxEndTime = System.currentTimeMillis() + 10000;
+            while ( subscriber.getOutputs().size() < 3 && System.currentTimeMillis() < maxEndTime ) {
+                Thread.sleep( 10 );
+            }
+            subscriber.subscription.cancel();
+
+            executor.shutdown();
+            Assert.assertTrue( executor.awaitTermination( 10, TimeUnit.SECONDS ), "Job still running after cancel" );
+            Assert.assertTrue( source.cancelled.get(), "Source subscription was not cancelled" );
+            Assert.assertEquals( subscriber.completed.getCount(), 1, "Subscriber signalled after cancel" );
+            Assert.assertEquals( subscriber.getOutputs().size(), 3 );
+            Assert.assertTrue( source.emitted.get() < 1000, "Fetched all items: " + source.emitted.get() );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test( timeOut = 10000 )
+    public void testSubscriberMayRequestFromAnotherThreadWhileSignalled() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final AtomicBoolean requestBlocked = new AtomicBoolean();
+            final CollectingSubscriber subscriber = new CollectingSubscriber( 1 ) {
+                @Override
+                public synchronized void onNext( final Result<FetchedItem<Integer>, Integer> result ) {
+                    super.onNext( result );
+                    final Subscription s = ( (CollectingSubscriber) this ).subscription;
+                    final Thread requester = new Thread( () -> s.request( 1 ) );
+                    requester.start();
+                    try {
+                        requester.join( 1000 );
+                    } catch ( final InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if ( requester.isAlive() ) {
+                        requestBlocked.set( true );
+                    }
+                }
+            };
+            new BatchJobPublisher<>( builder( new RangePublisher( 3 ) ), executor ).subscribe( subscriber );
+
+            Assert.assertTrue( subscriber.completed.await( 10, TimeUnit.SECONDS ) );
+            Assert.assertFalse( requestBlocked.get(), "Request blocked while the subscriber was signalled" );
+            Assert.assertEquals( subscriber.getOutputs(), Arrays.asList( 0, 2, 4 ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBuildFailureIsSignalledAfterSubscribe() {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final List<String> signals = new ArrayList<>();
+            final BatchJobPublisher<Integer, Integer> publisher = new BatchJobPublisher<>(
+                    builder( new RangePublisher( 3 ) ).setSpeculationPercentile( 0.9 ), executor );
+            publisher.subscribe( new Subscriber<Result<FetchedItem<Integer>, Integer>>() {
+                @Override
+                public void onSubscribe( final Subscription s ) {
+                    signals.add( "subscribe" );
+                }
+
+                @Override
+                public void onNext( final Result<FetchedItem<Integer>, Integer> result ) {
+                    signals.add( "next" );
+                }
+
+                @Override
+                public void onError( final Throwable t ) {
+                    signals.add( t.getClass().getSimpleName() );
+                }
+
+                @Override
+                public void onComplete() {
+                    signals.add( "complete" );
+                }
+            } );
+            Assert.assertEquals( signals, Arrays.asList( "subscribe", "IllegalArgumentException" ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static BatchJob.Builder<Integer, Integer> builder( final RangePublisher source ) {
+        return BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.publisher( source, 4 ) )
+                .setProcessor( Processors.singleItemFunction( i -> i * 2 ) )
+                .setProcessingBatchSize( 5 );
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class BlockingQueueExecutorTest {
+
+    @DataProvider
+    public Object[][] waitStrategies() {
+        return new Object[][] {
+            { QueueWaitStrategy.BLOCKING },
+            { QueueWaitStrategy.SPIN_THEN_BLOCK },
+        };
+    }
+
+    @Test( dataProvider = "waitStrategies" )
+    public void testProcessesAllChunksAndTerminatesWithoutPolling( final QueueWaitStrategy waitStrategy ) {
+        final AtomicLong sum = new AtomicLong();
+        final BlockingQueueExecutor<Integer> executor = new BlockingQueueExecutor<Integer>(
+                4, 1, waitStrategy, TimeUnit.MINUTES.toMillis( 1 ), chunk -> sum.addAndGet( chunk ), new ThreadGroup( "test" ) );
+
+        final long start = System.nanoTime();
+        executor.accept( IntStream.rangeClosed( 1, 1000 ).boxed().collect( Collectors.toList() ) );
+        final long durationMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+        Assert.assertEquals( sum.get(), 500500 );
+        // the previous implementation polled with a timeout of one second
+        Assert.assertTrue( durationMs < 1000, "Termination took " + durationMs + " ms" );
+    }
+
+    @Test( timeOut = 10000 )
+    public void testWorkersTerminateWhenProducerIsInterrupted() throws InterruptedException {
+        final ThreadGroup group = new ThreadGroup( "test" );
+        final CountDownLatch started = new CountDownLatch( 2 );
+        final BlockingQueueExecutor<Integer> executor = new BlockingQueueExecutor<Integer>(
+                2, 1, QueueWaitStrategy.BLOCKING, TimeUnit.MINUTES.toMillis( 1 ), chunk -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep( 200 );
+                    } catch ( final InterruptedException e ) {
+                        // swallowed, like many processors do
+                    }
+                }, group );
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread producer = new Thread( () -> {
+            try {
+                executor.accept( () -> IntStream.range( 0, 1000000 ).boxed().iterator() );
+            } catch ( final Throwable t ) {
+                error.set( t );
+            }
+        } );
+        producer.start();
+        started.await();
+        producer.interrupt();
+        producer.join();
+
+        Assert.assertEquals( group.activeCount(), 0 );
+        Assert.assertTrue( error.get() instanceof IllegalStateException, String.valueOf( error.get() ) );
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void testRejectsInvalidCapacity() {
+        new BlockingQueueExecutor<Integer>( 1, 0, QueueWaitStrategy.BLOCKING, 1000, i -> { }, new ThreadGroup( "test" ) );
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.checkpoint.CheckpointStore;
+import com.freiheit.fuava.simplebatch.checkpoint.CompletedItems;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class CheckpointTest {
+
+    private static final class InMemoryCheckpointStore implements CheckpointStore {
+        private final CompletedItems completed = new CompletedItems();
+        private final List<Thread> writerThreads = Collections.synchronizedList( new ArrayList<>() );
+        private boolean cleared;
+
+        @Override
+        public synchronized CompletedItems load() {
+            final CompletedItems copy = new CompletedItems();
+            copy.addAll( completed );
+            return copy;
+        }
+
+        @Override
+        public synchronized void markCompleted( final CompletedItems items ) {
+            writerThreads.add( Thread.currentThread() );
+            completed.addAll( items );
+        }
+
+        @Override
+        public synchronized void clear() {
+            cleared = true;
+        }
+    }
+
+    @Test
+    public void testCompletedItemsAreSkipped() {
+        final List<Integer> data = IntStream.range( 0, 100 ).boxed().collect( Collectors.toList() );
+        final InMemoryCheckpointStore store = new InMemoryCheckpointStore();
+        store.completed.add( 0, 59 );
+        store.completed.add( 80 );
+        final List<Integer> processed = Collections.synchronizedList( new ArrayList<>() );
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> {
+                    processed.addAll( list );
+                    return list;
+                } ) )
+                .setProcessingBatchSize( 7 )
+                .setCheckpointStore( store )
+                .build()
+                .run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        final List<Integer> expected = IntStream.range( 60, 100 ).filter( i -> i != 80 ).boxed().collect( Collectors.toList() );
+        Assert.assertEquals( processed, expected );
+        Assert.assertTrue( store.cleared );
+    }
+
+    @Test
+    public void testSuccessfulItemsAreRecorded() {
+        final List<Integer> data = IntStream.range( 0, 1000 ).boxed().collect( Collectors.toList() );
+        final InMemoryCheckpointStore store = new InMemoryCheckpointStore();
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.singleItemFunction( i -> {
+                    if ( i.intValue() == 500 ) {
+                        throw new IllegalArgumentException( "Failing on purpose" );
+                    }
+                    return i;
+                } ) )
+                .setProcessingBatchSize( 10 )
+                .setParallel( true )
+                .setNumParallelThreads( 4 )
+                .setCheckpointStore( store )
+                .build()
+                .run();
+
+        Assert.assertFalse( statistics.isAllSuccess() );
+        final CompletedItems completed = store.load();
+        Assert.assertEquals( completed.size(), 999 );
+        Assert.assertFalse( completed.contains( 500 ) );
+        Assert.assertTrue( store.writerThreads.stream().allMatch( t -> t.getName().equals( "SBCheckpoint" ) ) );
+    }
+}
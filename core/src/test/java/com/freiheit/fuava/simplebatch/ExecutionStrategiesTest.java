@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ExecutionStrategiesTest {
+
+    @DataProvider
+    public Object[][] strategies() {
+        return new Object[][] {
+            { ExecutionStrategies.sequential() },
+            { ExecutionStrategies.parallelStreams() },
+            { ExecutionStrategies.virtualThreads( 4 ) },
+        };
+    }
+
+    @Test( dataProvider = "strategies" )
+    public void testAllItemsProcessed( final ExecutionStrategy strategy ) {
+        final List<Integer> data = IntStream.range( 0, 1000 ).boxed().collect( Collectors.toList() );
+        final AtomicInteger processed = new AtomicInteger();
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> {
+                    processed.addAndGet( list.size() );
+                    return list;
+                } ) )
+                .setProcessingBatchSize( 7 )
+                .setExecutionStrategy( strategy )
+                .build()
+                .run();
+
+        Assert.assertEquals( processed.get(), data.size() );
+        Assert.assertTrue( statistics.isAllSuccess() );
+    }
+
+    @Test
+    public void testSharedPoolLimitsChunksInFlight() {
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            final AtomicInteger inFlight = new AtomicInteger();
+            final AtomicInteger maxInFlight = new AtomicInteger();
+            final List<Integer> seen = new ArrayList<>();
+            final ExecutionStrategy strategy = ExecutionStrategies.sharedPool( executor, 2 );
+
+            strategy.execute( IntStream.range( 0, 50 ).boxed().collect( Collectors.toList() ), chunk -> {
+                final int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet( current, Math::max );
+                try {
+                    Thread.sleep( 2 );
+                } catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized ( seen ) {
+                    seen.add( chunk );
+                }
+                inFlight.decrementAndGet();
+            } );
+
+            Assert.assertEquals( seen.size(), 50 );
+            Assert.assertTrue( maxInFlight.get() <= 2, "At most two chunks may be in flight, but there were " + maxInFlight.get() );
+            Assert.assertFalse( executor.isShutdown(), "Shared executors must not be shut down" );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test( timeOut = 10000 )
+    public void testInterruptedCallerWaitsForChunksInFlight() throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try {
+            final CountDownLatch started = new CountDownLatch( 2 );
+            final AtomicInteger finished = new AtomicInteger();
+            final AtomicInteger finishedOnReturn = new AtomicInteger( -1 );
+            final AtomicBoolean interruptRestored = new AtomicBoolean();
+            final ExecutionStrategy strategy = ExecutionStrategies.sharedPool( executor, 2 );
+
+            final Thread caller = new Thread( () -> {
+                strategy.execute( IntStream.range( 0, 10 ).boxed().collect( Collectors.toList() ), chunk -> {
+                    started.countDown();
+                    final long end = System.currentTimeMillis() + 300;
+                    while ( System.currentTimeMillis() < end ) {
+                        try {
+                            Thread.sleep( end - System.currentTimeMillis() );
+                        } catch ( final InterruptedException e ) {
+                            // keep processing
+                        }
+                    }
+                    finished.incrementAndGet();
+                } );
+                finishedOnReturn.set( finished.get() );
+                interruptRestored.set( Thread.currentThread().isInterrupted() );
+            } );
+            caller.start();
+            Assert.assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+            caller.interrupt();
+            caller.join();
+
+            Assert.assertTrue( interruptRestored.get(), "The interrupt of the caller was not restored" );
+            // the two chunks in flight are finished, no more chunks are submitted
+            Assert.assertEquals( finishedOnReturn.get(), 2 );
+            Assert.assertEquals( finished.get(), 2 );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
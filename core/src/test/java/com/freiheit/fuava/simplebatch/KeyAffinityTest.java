@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class KeyAffinityTest {
+
+    @Test
+    public void testSameKeyNeverProcessedConcurrently() {
+        final List<Integer> data = IntStream.range( 0, 2000 ).boxed().collect( Collectors.toList() );
+        final ConcurrentHashMap<Integer, AtomicInteger> inFlightPerKey = new ConcurrentHashMap<>();
+        final AtomicBoolean concurrentSameKey = new AtomicBoolean();
+        final AtomicInteger processed = new AtomicInteger();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> {
+                    threads.add( Thread.currentThread().getName() );
+                    final Set<Integer> keys = list.stream().map( i -> i % 10 ).collect( Collectors.toSet() );
+                    for ( final Integer key : keys ) {
+                        if ( inFlightPerKey.computeIfAbsent( key, k -> new AtomicInteger() ).incrementAndGet() > 1 ) {
+                            concurrentSameKey.set( true );
+                        }
+                    }
+                    Thread.yield();
+                    for ( final Integer key : keys ) {
+                        inFlightPerKey.get( key ).decrementAndGet();
+                    }
+                    processed.addAndGet( list.size() );
+                    return list;
+                } ) )
+                .setProcessingBatchSize( 5 )
+                .setParallel( true )
+                .setNumParallelThreads( 4 )
+                .setPartitionKey( i -> i % 10 )
+                .build()
+                .run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( processed.get(), data.size() );
+        Assert.assertFalse( concurrentSameKey.get(), "Items with the same key were processed concurrently" );
+        Assert.assertTrue( threads.size() > 1, "Expected processing in more than one lane, but was " + threads );
+    }
+}
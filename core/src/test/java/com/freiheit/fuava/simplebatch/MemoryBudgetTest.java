@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class MemoryBudgetTest {
+    private static final long BUDGET = 20;
+
+    @DataProvider
+    public Object[][] configurations() {
+        final Consumer<BatchJob.Builder<Integer, Integer>> blockingQueue = b -> b.setParallel( true ).setNumParallelThreads( 8 );
+        final Consumer<BatchJob.Builder<Integer, Integer>> parallelStreams = b -> b.setParallel( true );
+        final Consumer<BatchJob.Builder<Integer, Integer>> pipeline = b -> b.setPipelineStageThreads( Arrays.asList( 8 ) );
+        return new Object[][] {
+            { "blocking queue", blockingQueue },
+            { "parallel streams", parallelStreams },
+            { "pipeline", pipeline },
+        };
+    }
+
+    @Test( dataProvider = "configurations" )
+    public void testInFlightWeightStaysWithinBudget( final String name, final Consumer<BatchJob.Builder<Integer, Integer>> configuration ) {
+        // the weight of each item is its value
+        final List<Integer> data = IntStream.range( 0, 200 ).map( i -> 1 + i % 10 ).boxed().collect( Collectors.toList() );
+        final AtomicLong inFlight = new AtomicLong();
+        final AtomicLong maxInFlight = new AtomicLong();
+        final AtomicInteger processed = new AtomicInteger();
+
+        final BatchJob.Builder<Integer, Integer> builder = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> {
+                    final long weight = list.stream().mapToLong( Integer::longValue ).sum();
+                    maxInFlight.accumulateAndGet( inFlight.addAndGet( weight ), Math::max );
+                    sleep( 2 );
+                    inFlight.addAndGet( -weight );
+                    processed.addAndGet( list.size() );
+                    return list;
+                } ) )
+                .setProcessingBatchSize( 2 )
+                .setMemoryBudget( Integer::longValue, BUDGET );
+        configuration.accept( builder );
+        final ResultStatistics statistics = builder.build().run();
+
+        Assert.assertTrue( statistics.isAllSuccess(), name );
+        Assert.assertEquals( processed.get(), data.size(), name );
+        Assert.assertTrue( maxInFlight.get() <= BUDGET, name + ": at most " + BUDGET + " may be in flight, but there were " + maxInFlight.get() );
+    }
+
+    @Test
+    public void testChunkExceedingBudgetIsProcessedAlone() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( Arrays.asList( 100, 100, 100, 100 ) ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> {
+                    maxInFlight.accumulateAndGet( inFlight.incrementAndGet(), Math::max );
+                    sleep( 5 );
+                    inFlight.decrementAndGet();
+                    return list;
+                } ) )
+                .setProcessingBatchSize( 1 )
+                .setParallel( true )
+                .setNumParallelThreads( 4 )
+                .setMemoryBudget( Integer::longValue, BUDGET )
+                .build()
+                .run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( maxInFlight.get(), 1 );
+    }
+
+    private static void sleep( final long millis ) {
+        try {
+            Thread.sleep( millis );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+public class PipelineExecutorTest {
+
+    private static Integer sleep( final Integer chunk ) {
+        try {
+            Thread.sleep( 200 );
+        } catch ( final InterruptedException e ) {
+            // swallowed, like many processors do
+        }
+        return chunk;
+    }
+
+    @Test( timeOut = 10000 )
+    public void testWorkersTerminateWhenProducerIsInterrupted() throws InterruptedException {
+        final ThreadGroup group = new ThreadGroup( "test" );
+        final CountDownLatch started = new CountDownLatch( 2 );
+        final AtomicInteger dropped = new AtomicInteger();
+        final PipelineExecutor<Integer> executor = new PipelineExecutor<Integer>(
+                Arrays.asList(
+                        new PipelineExecutor.Stage<Integer>( "first", 2, 1, chunk -> {
+                            started.countDown();
+                            return sleep( chunk );
+                        } ),
+                        new PipelineExecutor.Stage<Integer>( "second", 1, 1, PipelineExecutorTest::sleep ) ),
+                chunk -> { },
+                chunk -> dropped.incrementAndGet(),
+                ( message, exitCode ) -> { },
+                TimeUnit.MINUTES.toMillis( 1 ),
+                group );
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread producer = new Thread( () -> {
+            try {
+                executor.accept( () -> IntStream.range( 0, 1000000 ).boxed().iterator() );
+            } catch ( final Throwable t ) {
+                error.set( t );
+            }
+        } );
+        producer.start();
+        started.await();
+        producer.interrupt();
+        producer.join();
+
+        Assert.assertEquals( group.activeCount(), 0 );
+        Assert.assertTrue( error.get() instanceof IllegalStateException, String.valueOf( error.get() ) );
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processor;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.processor.TimeLoggingProcessor;
+import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class PipelinedBatchJobTest {
+
+    @Test
+    public void testAllStagesApplied() {
+        final List<Integer> data = IntStream.range( 0, 1000 ).boxed().collect( Collectors.toList() );
+        final List<String> outputs = Collections.synchronizedList( new ArrayList<>() );
+        final Processor<FetchedItem<Integer>, Integer, String> processor = Processors.<FetchedItem<Integer>, Integer, Integer>singleItemFunction( i -> i * 2 )
+                .then( Processors.singleItemFunction( i -> i + 1 ) )
+                .then( Processors.singleItemFunction( i -> "v" + i ) );
+
+        final ResultStatistics statistics = BatchJob.<Integer, String>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( processor )
+                .setProcessingBatchSize( 7 )
+                .setPipelineStageThreads( Arrays.asList( 3, 1 ) )
+                .addListener( new ProcessingResultListener<Integer, String>() {
+                    @Override
+                    public void onProcessingResult( final Result<FetchedItem<Integer>, String> result ) {
+                        outputs.add( result.getOutput() );
+                    }
+                } )
+                .build()
+                .run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( outputs.size(), data.size() );
+        Assert.assertEquals( outputs.stream().sorted().collect( Collectors.toList() ),
+                data.stream().map( i -> "v" + ( i * 2 + 1 ) ).sorted().collect( Collectors.toList() ) );
+    }
+
+    @Test( timeOut = 60000 )
+    public void testVirtualMachineErrorDropsChunk() {
+        final List<Integer> data = IntStream.range( 0, 100 ).boxed().collect( Collectors.toList() );
+        final List<String> panics = Collections.synchronizedList( new ArrayList<>() );
+        final List<Integer> outputs = Collections.synchronizedList( new ArrayList<>() );
+        final Processor<FetchedItem<Integer>, Integer, Integer> processor = Processors.<FetchedItem<Integer>, Integer, Integer>singleItemFunction( i -> {
+            if ( i == 5 ) {
+                throw new StackOverflowError( "test" );
+            }
+            return i;
+        } ).then( Processors.singleItemFunction( i -> i ) );
+
+        // a panic callback which does not exit, the remaining chunks must still be delivered in order
+        BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( processor )
+                .setProcessingBatchSize( 10 )
+                .setPipelineStageThreads( Arrays.asList( 2, 1 ) )
+                .setPreserveOrder( true )
+                .setMemoryBudget( i -> 1, 20 )
+                .setPanicCallback( ( reason, code ) -> panics.add( reason ) )
+                .addListener( new ProcessingResultListener<Integer, Integer>() {
+                    @Override
+                    public void onProcessingResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                        outputs.add( result.getOutput() );
+                    }
+                } )
+                .build()
+                .run();
+
+        Assert.assertEquals( panics.size(), 1 );
+        Assert.assertEquals( outputs, data.subList( 10, 100 ) );
+    }
+
+    @Test
+    public void testStagesOverlap() {
+        // The second stage waits for the first stage to start with the next
+        // chunk, which never happens if both stages run in the same thread
+        final CountDownLatch secondChunkFetched = new CountDownLatch( 2 );
+        final Set<String> secondStageResults = ConcurrentHashMap.newKeySet();
+        final Processor<FetchedItem<Integer>, Integer, Integer> processor = Processors.<FetchedItem<Integer>, Integer, Integer>singleItemFunction( i -> {
+            secondChunkFetched.countDown();
+            return i;
+        } ).then( Processors.singleItemFunction( i -> {
+            try {
+                secondStageResults.add( String.valueOf( secondChunkFetched.await( 10, TimeUnit.SECONDS ) ) );
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            return i;
+        } ) );
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( Arrays.asList( 1, 2 ) ) )
+                .setProcessor( processor )
+                .setProcessingBatchSize( 1 )
+                .setPipelineStageThreads( Collections.emptyList() )
+                .build()
+                .run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( secondStageResults, Collections.singleton( "true" ) );
+    }
+
+    @Test
+    public void testTimeLoggingProcessorCountsStages() {
+        final TimeLoggingProcessor<FetchedItem<Integer>, Integer, Integer> processor = TimeLoggingProcessor.wrap(
+                Processors.<FetchedItem<Integer>, Integer, Integer>singleItemFunction( i -> i + 1 )
+                    .then( Processors.singleItemFunction( i -> i * 2 ) ) );
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( IntStream.range( 0, 100 ).boxed().collect( Collectors.toList() ) ) )
+                .setProcessor( processor )
+                .setProcessingBatchSize( 10 )
+                .setPipelineStageThreads( Arrays.asList( 2, 2 ) )
+                .build()
+                .run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( processor.getCurrentCounts().get( "Stage 01" ).getItems(), 100 );
+        Assert.assertEquals( processor.getCurrentCounts().get( "Stage 02" ).getItems(), 100 );
+        Assert.assertEquals( processor.getCurrentCounts().get( processor.getStageIdTotal() ).getItems(), 100 );
+    }
+}
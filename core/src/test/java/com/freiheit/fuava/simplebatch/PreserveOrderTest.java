@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class PreserveOrderTest {
+
+    @DataProvider
+    public Object[][] parallelModes() {
+        return new Object[][] {
+            { (UnaryOperator<BatchJob.Builder<Integer, Integer>>) b -> b.setParallel( true ) },
+            { (UnaryOperator<BatchJob.Builder<Integer, Integer>>) b -> b.setParallel( true ).setNumParallelThreads( 4 ) },
+            { (UnaryOperator<BatchJob.Builder<Integer, Integer>>) b -> b.setExecutionStrategy( ExecutionStrategies.virtualThreads( 8 ) ) },
+            { (UnaryOperator<BatchJob.Builder<Integer, Integer>>) b -> b.setPipelineStageThreads( Arrays.asList( 4, 4 ) ) },
+        };
+    }
+
+    @Test( dataProvider = "parallelModes" )
+    public void testResultsInFetchOrder( final UnaryOperator<BatchJob.Builder<Integer, Integer>> parallelMode ) {
+        final List<Integer> data = IntStream.range( 0, 500 ).boxed().collect( Collectors.toList() );
+        final List<Integer> outputs = Collections.synchronizedList( new ArrayList<>() );
+
+        final BatchJob.Builder<Integer, Integer> builder = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.<FetchedItem<Integer>, Integer, Integer>singleItemFunction( i -> {
+                    sleepRandomly();
+                    return i;
+                } ).then( Processors.singleItemFunction( i -> i ) ) )
+                .setProcessingBatchSize( 3 )
+                .setPreserveOrder( true )
+                .setReorderWindow( 5 )
+                .addListener( new ProcessingResultListener<Integer, Integer>() {
+                    @Override
+                    public void onProcessingResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                        outputs.add( result.getOutput() );
+                    }
+                } );
+        final ResultStatistics statistics = parallelMode.apply( builder ).build().run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( outputs, data );
+    }
+
+    @Test
+    public void testFailedChunkDoesNotBlockLaterChunks() {
+        final List<Integer> outputs = Collections.synchronizedList( new ArrayList<>() );
+
+        BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( IntStream.range( 0, 20 ).boxed().collect( Collectors.toList() ) ) )
+                .setProcessor( ( final Iterable<Result<FetchedItem<Integer>, Integer>> results ) -> {
+                    if ( results.iterator().next().getInput().getValue() == 0 ) {
+                        // violates the processor contract, the chunk is lost
+                        throw new IllegalStateException( "Expected failure" );
+                    }
+                    return results;
+                } )
+                .setProcessingBatchSize( 2 )
+                .setParallel( true )
+                .setNumParallelThreads( 3 )
+                .setPreserveOrder( true )
+                .setReorderWindow( 2 )
+                .addListener( new ProcessingResultListener<Integer, Integer>() {
+                    @Override
+                    public void onProcessingResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                        outputs.add( result.getOutput() );
+                    }
+                } )
+                .build()
+                .run();
+
+        Assert.assertEquals( outputs, IntStream.range( 2, 20 ).boxed().collect( Collectors.toList() ) );
+    }
+
+    @Test
+    public void testWindowLimitsSequenceNumbers() throws InterruptedException {
+        final List<String> delivered = new ArrayList<>();
+        final ReorderBuffer<String> buffer = new ReorderBuffer<>( 2, delivered::add );
+        Assert.assertEquals( buffer.acquire(), 0 );
+        Assert.assertEquals( buffer.acquire(), 1 );
+
+        final Thread acquiring = new Thread( buffer::acquire );
+        acquiring.start();
+        acquiring.join( 100 );
+        Assert.assertTrue( acquiring.isAlive(), "The third sequence number must not be handed out before the first was delivered" );
+
+        buffer.complete( 1, "b" );
+        Assert.assertEquals( delivered, Collections.emptyList() );
+        buffer.complete( 0, "a" );
+        acquiring.join( 10000 );
+        Assert.assertFalse( acquiring.isAlive() );
+        Assert.assertEquals( delivered, Arrays.asList( "a", "b" ) );
+    }
+
+    private static void sleepRandomly() {
+        try {
+            Thread.sleep( ThreadLocalRandom.current().nextInt( 3 ) );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch;
+
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class SpeculativeExecutionTest {
+    private static final int SLOW_ITEM = 35;
+
+    @Test
+    public void testStragglerIsProcessedAgain() {
+        final List<Integer> data = IntStream.range( 0, 40 ).boxed().collect( Collectors.toList() );
+        final ConcurrentHashMap<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Integer, AtomicInteger> fetched = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Integer, AtomicInteger> processed = new ConcurrentHashMap<>();
+
+        final long start = System.nanoTime();
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.idempotent( Processors.retryableBatchedFunction( list -> {
+                    for ( final Integer i : list ) {
+                        final int attempt = attempts.computeIfAbsent( i, k -> new AtomicInteger() ).incrementAndGet();
+                        sleep( i.intValue() == SLOW_ITEM && attempt == 1 ? 3000 : 5 );
+                    }
+                    return list;
+                } ) ) )
+                .setProcessingBatchSize( 1 )
+                .setParallel( true )
+                .setNumParallelThreads( 4 )
+                .setSpeculationPercentile( 0.9 )
+                .addListener( new ProcessingResultListener<Integer, Integer>() {
+                    @Override
+                    public void onFetchResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                        fetched.computeIfAbsent( result.getOutput(), k -> new AtomicInteger() ).incrementAndGet();
+                    }
+
+                    @Override
+                    public void onProcessingResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                        processed.computeIfAbsent( result.getOutput(), k -> new AtomicInteger() ).incrementAndGet();
+                    }
+                } )
+                .build()
+                .run();
+        final long durationMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( attempts.get( SLOW_ITEM ).get(), 2 );
+        Assert.assertTrue( durationMs < 2500, "The straggler should have been overtaken, but the job took " + durationMs + " ms" );
+        for ( final Integer i : data ) {
+            Assert.assertEquals( fetched.get( i ).get(), 1, "Fetch results of " + i + " passed on more than once" );
+            Assert.assertEquals( processed.get( i ).get(), 1, "Processing results of " + i + " passed on more than once" );
+        }
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void testRequiresIdempotentProcessor() {
+        BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( IntStream.range( 0, 10 ).boxed().collect( Collectors.toList() ) ) )
+                .setProcessor( Processors.retryableBatchedFunction( list -> list ) )
+                .setSpeculationPercentile( 0.9 )
+                .build();
+    }
+
+    private static void sleep( final long millis ) {
+        try {
+            Thread.sleep( millis );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.checkpoint;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class FileCheckpointStoreTest {
+
+    @Test
+    public void testRangesAreMerged() {
+        final CompletedItems items = new CompletedItems();
+        items.add( 5 );
+        items.add( 1, 3 );
+        items.add( 7, 9 );
+        items.add( 4 );
+        items.add( 6 );
+        items.add( 20 );
+
+        Assert.assertEquals( items.getRanges(), Arrays.asList( new CompletedItems.Range( 1, 9 ), new CompletedItems.Range( 20, 20 ) ) );
+        Assert.assertEquals( items.size(), 10 );
+        Assert.assertTrue( items.contains( 1 ) );
+        Assert.assertTrue( items.contains( 9 ) );
+        Assert.assertFalse( items.contains( 0 ) );
+        Assert.assertFalse( items.contains( 10 ) );
+        Assert.assertTrue( items.contains( 20 ) );
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        final Path file = Files.createTempFile( "checkpoint", ".txt" );
+        Files.delete( file );
+        final FileCheckpointStore store = new FileCheckpointStore( file );
+        try {
+            Assert.assertTrue( store.load().isEmpty() );
+
+            final CompletedItems first = new CompletedItems();
+            first.add( 0, 99 );
+            store.markCompleted( first );
+            final CompletedItems second = new CompletedItems();
+            second.add( 100, 149 );
+            second.add( 200 );
+            store.markCompleted( second );
+            // interrupted write
+            Files.write( file, "30".getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+
+            Assert.assertEquals( store.load().getRanges(), Arrays.asList( new CompletedItems.Range( 0, 149 ), new CompletedItems.Range( 200, 200 ) ) );
+
+            store.clear();
+            Assert.assertTrue( store.load().isEmpty() );
+        } finally {
+            Files.deleteIfExists( file );
+        }
+    }
+}
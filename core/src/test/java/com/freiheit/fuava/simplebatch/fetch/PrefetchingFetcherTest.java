@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.fetch;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class PrefetchingFetcherTest {
+
+    @Test
+    public void testAllItemsInOrder() {
+        final List<Integer> data = IntStream.range( 0, 1000 ).boxed().collect( Collectors.toList() );
+        final Fetcher<Integer> fetcher = Fetchers.prefetching( lazy( data, new AtomicInteger() ), 10 );
+
+        final List<Integer> fetched = new ArrayList<>();
+        for ( final Result<FetchedItem<Integer>, Integer> result : fetcher.fetchAll() ) {
+            Assert.assertTrue( result.isSuccess() );
+            fetched.add( result.getOutput() );
+        }
+        Assert.assertEquals( fetched, data );
+    }
+
+    @Test
+    public void testFetchesAheadUpToDepth() throws InterruptedException {
+        final AtomicInteger numFetched = new AtomicInteger();
+        final Fetcher<Integer> fetcher = Fetchers.prefetching( lazy( IntStream.range( 0, 100 ).boxed().collect( Collectors.toList() ), numFetched ), 5 );
+
+        final Iterator<Result<FetchedItem<Integer>, Integer>> iterator = fetcher.fetchAll().iterator();
+        final long maxEndTime = System.currentTimeMillis() + 10000;
+        while ( numFetched.get() < 6 && System.currentTimeMillis() < maxEndTime ) {
+            Thread.sleep( 10 );
+        }
+        Thread.sleep( 50 );
+        // five items in the buffer, one waiting for space in the buffer
+        Assert.assertEquals( numFetched.get(), 6 );
+
+        Assert.assertEquals( iterator.next().getOutput(), Integer.valueOf( 0 ) );
+    }
+
+    @Test
+    public void testFailingIterableEndsIteration() {
+        final Fetcher<Integer> fetcher = Fetchers.prefetching( () -> () -> new Iterator<Result<FetchedItem<Integer>, Integer>>() {
+            @Override
+            public boolean hasNext() {
+                throw new IllegalStateException( "Expected failure" );
+            }
+
+            @Override
+            public Result<FetchedItem<Integer>, Integer> next() {
+                throw new IllegalStateException( "Expected failure" );
+            }
+        }, 3 );
+
+        final List<Result<FetchedItem<Integer>, Integer>> results = new ArrayList<>();
+        fetcher.fetchAll().forEach( results::add );
+        Assert.assertEquals( results.size(), 1 );
+        Assert.assertTrue( results.get( 0 ).isFailed() );
+    }
+
+    @Test( expectedExceptions = StackOverflowError.class, timeOut = 10000 )
+    public void testVirtualMachineErrorIsRethrown() {
+        final Fetcher<Integer> fetcher = Fetchers.prefetching( () -> () -> new Iterator<Result<FetchedItem<Integer>, Integer>>() {
+            @Override
+            public boolean hasNext() {
+                throw new StackOverflowError( "Expected failure" );
+            }
+
+            @Override
+            public Result<FetchedItem<Integer>, Integer> next() {
+                throw new StackOverflowError( "Expected failure" );
+            }
+        }, 3 );
+
+        fetcher.fetchAll().forEach( r -> { } );
+    }
+
+    @Test
+    public void testAbandonedIterationStopsProducer() throws InterruptedException {
+        final AtomicReference<Thread> producer = new AtomicReference<>();
+        final List<Integer> data = IntStream.range( 0, 1000 ).boxed().collect( Collectors.toList() );
+        final Fetcher<Integer> fetcher = Fetchers.prefetching( Fetchers.supplied( () -> () -> data.stream()
+                .peek( i -> producer.set( Thread.currentThread() ) )
+                .iterator() ), 2 );
+
+        Iterator<Result<FetchedItem<Integer>, Integer>> iterator = fetcher.fetchAll().iterator();
+        Assert.assertEquals( iterator.next().getOutput(), Integer.valueOf( 0 ) );
+        iterator = null;
+
+        final long maxEndTime = System.currentTimeMillis() + 30000;
+        while ( producer.get().isAlive() && System.currentTimeMillis() < maxEndTime ) {
+            System.gc();
+            Thread.sleep( 100 );
+        }
+        Assert.assertFalse( producer.get().isAlive() );
+    }
+
+    @Test
+    public void testClosedIterationStopsProducer() throws Exception {
+        final AtomicReference<Thread> producer = new AtomicReference<>();
+        final List<Integer> data = IntStream.range( 0, 1000 ).boxed().collect( Collectors.toList() );
+        final Fetcher<Integer> fetcher = Fetchers.prefetching( Fetchers.supplied( () -> () -> data.stream()
+                .peek( i -> producer.set( Thread.currentThread() ) )
+                .iterator() ), 2 );
+
+        final Iterator<Result<FetchedItem<Integer>, Integer>> iterator = fetcher.fetchAll().iterator();
+        Assert.assertEquals( iterator.next().getOutput(), Integer.valueOf( 0 ) );
+        ( (AutoCloseable) iterator ).close();
+
+        producer.get().join( 10000 );
+        Assert.assertFalse( producer.get().isAlive() );
+        Assert.assertFalse( iterator.hasNext() );
+    }
+
+    private static Fetcher<Integer> lazy( final List<Integer> data, final AtomicInteger numFetched ) {
+        return Fetchers.supplied( () -> () -> data.stream().peek( i -> numFetched.incrementAndGet() ).iterator() );
+    }
+}
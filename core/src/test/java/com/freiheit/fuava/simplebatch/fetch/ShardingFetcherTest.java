@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.fetch;
+
+import com.freiheit.fuava.simplebatch.BatchJob;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ShardingFetcherTest {
+
+    @Test
+    public void testShardsAreDisjointAndComplete() {
+        final List<Integer> data = IntStream.range( 0, 1000 ).boxed().collect( Collectors.toList() );
+        final Set<Integer> seen = new TreeSet<>();
+        int total = 0;
+        for ( int shard = 0; shard < 3; shard++ ) {
+            final List<Integer> shardItems = new ArrayList<>();
+            for ( final Result<FetchedItem<Integer>, Integer> result : Fetchers.sharded( Fetchers.iterable( data ), shard, 3, i -> i % 100 ).fetchAll() ) {
+                Assert.assertEquals( result.getInput().getNum(), result.getOutput().intValue(), "Row numbers must be kept" );
+                shardItems.add( result.getOutput() );
+            }
+            Assert.assertTrue( shardItems.size() > 200, "Shards should be roughly balanced, but shard " + shard + " has " + shardItems.size() + " items" );
+            // items with the same key are in the same shard
+            for ( final Integer item : shardItems ) {
+                Assert.assertTrue( shardItems.contains( ( item.intValue() + 100 ) % 1000 ) );
+            }
+            seen.addAll( shardItems );
+            total += shardItems.size();
+        }
+        Assert.assertEquals( total, data.size() );
+        Assert.assertEquals( seen.size(), data.size() );
+    }
+
+    private enum Color {
+        RED, GREEN, BLUE
+    }
+
+    @Test
+    public void testShardsAreStableAcrossJvms() {
+        // enums and objects hash by identity, their shard must not
+        for ( final Color color : Color.values() ) {
+            Assert.assertEquals( ShardingFetcher.shardOfKey( color, 7 ), ShardingFetcher.shardOfKey( color.name(), 7 ) );
+        }
+        final List<Integer> shards = IntStream.range( 0, 8 )
+                .mapToObj( i -> ShardingFetcher.shardOfKey( "key-" + i, 4 ) )
+                .collect( Collectors.toList() );
+        Assert.assertEquals( shards, Arrays.asList( 3, 1, 1, 3, 3, 1, 3, 2 ), "The shard of a key must never change" );
+        Assert.assertEquals( ShardingFetcher.shardOfKey( null, 4 ), ShardingFetcher.shardOfKey( null, 4 ) );
+    }
+
+    @Test
+    public void testMergedStatistics() {
+        final List<Integer> data = IntStream.range( 0, 500 ).boxed().collect( Collectors.toList() );
+        final List<Integer> processed = Collections.synchronizedList( new ArrayList<>() );
+        final List<ResultStatistics> statistics = new ArrayList<>();
+        for ( int shard = 0; shard < 4; shard++ ) {
+            statistics.add( BatchJob.<Integer, Integer>builder()
+                    .setFetcher( Fetchers.iterable( data ) )
+                    .setProcessor( Processors.retryableBatchedFunction( list -> {
+                        processed.addAll( list );
+                        return list;
+                    } ) )
+                    .setShard( shard, 4, i -> i )
+                    .build()
+                    .run() );
+        }
+
+        final ResultStatistics merged = ResultStatistics.merge( statistics );
+        Assert.assertTrue( merged.isAllSuccess() );
+        Assert.assertEquals( merged.getFetchCounts().getSuccessCount(), data.size() );
+        Assert.assertEquals( merged.getProcessingCounts().getSuccessCount(), data.size() );
+        Assert.assertEquals( processed.size(), data.size() );
+    }
+}
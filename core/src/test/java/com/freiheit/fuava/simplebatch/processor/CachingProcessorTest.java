@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class CachingProcessorTest {
+
+    @Test
+    public void testHitsSkipTheProcessor() {
+        final List<Integer> processed = new ArrayList<>();
+        final CachingProcessor<Integer, Integer, String> processor = Processors.cached( Processors.singleItemFunction( ( final Integer i ) -> {
+            processed.add( i );
+            return "v" + i;
+        } ), Function.identity(), CacheSpec.builder().build() );
+
+        final List<Result<Integer, String>> first = IterableUtils.asList( processor.process( prepare( 1, 2, 3 ) ) );
+        final List<Result<Integer, String>> second = IterableUtils.asList( processor.process( prepare( 3, 1, 4 ) ) );
+
+        Assert.assertEquals( processed, Arrays.asList( 1, 2, 3, 4 ) );
+        Assert.assertEquals( outputs( first ), Arrays.asList( "v1", "v2", "v3" ) );
+        Assert.assertEquals( outputs( second ), Arrays.asList( "v3", "v1", "v4" ) );
+        Assert.assertEquals( processor.getHitCount(), 2 );
+        Assert.assertEquals( processor.getMissCount(), 4 );
+    }
+
+    @Test
+    public void testResultsKeepInputOrderAndFailuresAreNotCached() {
+        // the retrying processor returns the failed items last
+        final CachingProcessor<Integer, Integer, Integer> processor = Processors.cached( Processors.retryableBatchedFunction( ( final List<Integer> list ) -> {
+            if ( list.contains( 2 ) ) {
+                throw new IllegalArgumentException( "bad item" );
+            }
+            return list;
+        } ), Function.identity(), CacheSpec.builder().build() );
+
+        final List<Result<Integer, Integer>> results = IterableUtils.asList( processor.process( prepare( 1, 2, 3 ) ) );
+        Assert.assertEquals( results.stream().map( Result::getInput ).collect( Collectors.toList() ), Arrays.asList( 1, 2, 3 ) );
+        Assert.assertTrue( results.get( 1 ).isFailed() );
+
+        IterableUtils.asList( processor.process( prepare( 2 ) ) );
+        Assert.assertEquals( processor.getHitCount(), 0 );
+        Assert.assertEquals( processor.getSize(), 2 );
+    }
+
+    @Test
+    public void testEntriesExpireAndAreEvicted() {
+        final AtomicLong nanoTime = new AtomicLong();
+        final CachingProcessor<Integer, Integer, Integer> processor = new CachingProcessor<>( Processors.singleItemFunction( ( final Integer i ) -> i ),
+                Function.identity(), CacheSpec.builder().setMaximumSize( 2 ).setExpireAfterWrite( 1, TimeUnit.SECONDS ).build(), nanoTime::get );
+
+        processor.process( prepare( 1, 2 ) );
+        processor.process( prepare( 1, 2 ) );
+        Assert.assertEquals( processor.getHitCount(), 2 );
+
+        nanoTime.addAndGet( TimeUnit.SECONDS.toNanos( 2 ) );
+        processor.process( prepare( 1 ) );
+        Assert.assertEquals( processor.getHitCount(), 2, "Expired entry must not be used" );
+
+        // 1 is fresh, 2 is expired, 3 evicts the least recently used entry
+        processor.process( prepare( 3 ) );
+        Assert.assertEquals( processor.getSize(), 2 );
+        Assert.assertEquals( processor.getEvictionCount(), 2 );
+    }
+
+    private static List<Result<Integer, Integer>> prepare( final int... values ) {
+        return IntStream.of( values ).mapToObj( i -> Result.success( i, i ) ).collect( Collectors.toList() );
+    }
+
+    private static <T> List<T> outputs( final List<? extends Result<?, T>> results ) {
+        return results.stream().map( Result::getOutput ).collect( Collectors.toList() );
+    }
+}
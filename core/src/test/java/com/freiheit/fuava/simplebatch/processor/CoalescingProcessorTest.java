@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class CoalescingProcessorTest {
+
+    @Test
+    public void testDuplicatesAreProcessedOnce() {
+        final List<Integer> processed = new ArrayList<>();
+        final Processor<String, Integer, String> processor = Processors.coalescing( Processors.singleItemFunction( ( final Integer i ) -> {
+            processed.add( i );
+            return "v" + i;
+        } ), Function.identity() );
+
+        final List<Result<String, String>> results = IterableUtils.asList( processor.process( Arrays.asList(
+                Result.success( "item0", 1 ),
+                Result.success( "item1", 2 ),
+                Result.success( "item2", 1 ),
+                Result.<String, Integer>failed( "item3", "fetch failed" ),
+                Result.success( "item4", 1 ) ) ) );
+
+        Assert.assertEquals( processed, Arrays.asList( 1, 2 ) );
+        Assert.assertEquals( results.stream().map( Result::getInput ).collect( Collectors.toList() ),
+                Arrays.asList( "item0", "item1", "item2", "item3", "item4" ) );
+        Assert.assertEquals( results.get( 2 ).getOutput(), "v1" );
+        Assert.assertEquals( results.get( 4 ).getOutput(), "v1" );
+        Assert.assertTrue( results.get( 3 ).isFailed() );
+    }
+
+    @Test
+    public void testFailuresAreCopiedToDuplicates() {
+        final List<List<Integer>> calls = new ArrayList<>();
+        // the retrying processor returns the failed items last
+        final Processor<String, Integer, Integer> processor = Processors.coalescing( Processors.retryableBatchedFunction( ( final List<Integer> list ) -> {
+            calls.add( list );
+            if ( list.contains( 7 ) ) {
+                throw new IllegalArgumentException( "bad item" );
+            }
+            return list;
+        } ), Function.identity() );
+
+        final List<Result<String, Integer>> results = IterableUtils.asList( processor.process( Arrays.asList(
+                Result.success( "item0", 7 ),
+                Result.success( "item1", 8 ),
+                Result.success( "item2", 7 ) ) ) );
+
+        Assert.assertEquals( calls, Arrays.asList( Arrays.asList( 7, 8 ), Arrays.asList( 7 ), Arrays.asList( 8 ) ) );
+        Assert.assertEquals( results.stream().map( Result::getInput ).collect( Collectors.toList() ), Arrays.asList( "item0", "item1", "item2" ) );
+        Assert.assertTrue( results.get( 0 ).isFailed() );
+        Assert.assertTrue( results.get( 1 ).isSuccess() );
+        Assert.assertTrue( results.get( 2 ).isFailed() );
+        Assert.assertFalse( results.get( 2 ).getFailureMessages().iterator().next().isEmpty() );
+    }
+}
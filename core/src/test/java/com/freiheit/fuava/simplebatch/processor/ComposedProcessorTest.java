@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ComposedProcessorTest {
+
+    @Test
+    public void testSingleItemStagesAreFused() {
+        final List<String> calls = new ArrayList<>();
+        final List<List<String>> batches = new ArrayList<>();
+        final Processor<String, String, String> processor = Processors.<String, String, String>singleItemFunction( ( final String s ) -> {
+            calls.add( "a" + s );
+            return s + "a";
+        } ).then( Processors.<String, String, String>singleItemFunction( ( final String s ) -> {
+            calls.add( "b" + s );
+            return s + "b";
+        } ) ).then( Processors.<String, String, String>retryableBatchedFunction( ( final List<String> list ) -> {
+            batches.add( list );
+            return list;
+        } ) ).then( Processors.<String, String, String>singleItemFunction( ( final String s ) -> s + "c" ) );
+
+        final List<Result<String, String>> results = IterableUtils.asList( processor.process( Arrays.asList(
+                Result.success( "item0", "1" ),
+                Result.success( "item1", "2" ) ) ) );
+
+        Assert.assertEquals( calls, Arrays.asList( "a1", "b1a", "a2", "b2a" ) );
+        Assert.assertEquals( batches, Arrays.asList( Arrays.asList( "1ab", "2ab" ) ) );
+        Assert.assertEquals( results.stream().map( Result::getOutput ).collect( Collectors.toList() ), Arrays.asList( "1abc", "2abc" ) );
+        Assert.assertEquals( ProcessorStages.flatten( processor ).size(), 4 );
+    }
+
+    @Test
+    public void testFailuresArePassedThroughFusedStages() {
+        final Processor<String, String, String> processor = Processors.<String, String, String>singleItemFunction( ( final String s ) -> {
+            if ( s.equals( "bad" ) ) {
+                throw new IllegalArgumentException( "bad item" );
+            }
+            return s + "a";
+        } ).then( Processors.<String, String, String>singleItemFunction( ( final String s ) -> s + "b" ) );
+
+        final List<Result<String, String>> results = IterableUtils.asList( processor.process( Arrays.asList(
+                Result.success( "item0", "bad" ),
+                Result.success( "item1", "good" ) ) ) );
+
+        Assert.assertTrue( results.get( 0 ).isFailed() );
+        Assert.assertEquals( results.get( 1 ).getOutput(), "goodab" );
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import com.freiheit.fuava.simplebatch.util.RunContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ParallelProcessorTest {
+
+    @Test
+    public void testItemsAreProcessedConcurrentlyInOrder() {
+        final ExecutorService executor = Executors.newFixedThreadPool( 9 );
+        try {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final Processor<Integer, Integer, Integer> processor = Processors.parallel( Processors.singleItemFunction( ( final Integer i ) -> {
+                maxRunning.accumulateAndGet( running.incrementAndGet(), Math::max );
+                sleep( 50 );
+                running.decrementAndGet();
+                if ( i.intValue() == 7 ) {
+                    throw new IllegalArgumentException( "bad item" );
+                }
+                return i * 2;
+            } ), 10, executor );
+
+            final long start = System.nanoTime();
+            final List<Result<Integer, Integer>> results = IterableUtils.asList( processor.process( prepare( 40 ) ) );
+            final long durationMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+            Assert.assertEquals( results.stream().map( Result::getInput ).collect( Collectors.toList() ),
+                    IntStream.range( 0, 40 ).boxed().collect( Collectors.toList() ) );
+            for ( final Result<Integer, Integer> result : results ) {
+                if ( result.getInput().intValue() == 7 ) {
+                    Assert.assertTrue( result.isFailed() );
+                } else {
+                    Assert.assertEquals( result.getOutput().intValue(), result.getInput().intValue() * 2 );
+                }
+            }
+            Assert.assertTrue( maxRunning.get() > 1 && maxRunning.get() <= 10, "Unexpected parallelism " + maxRunning.get() );
+            Assert.assertTrue( durationMs < 1000, "Items should have been processed concurrently, but it took " + durationMs + " ms" );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testProcessesInCallingThreadIfExecutorRejects() {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        final Processor<Integer, Integer, Integer> processor = Processors.parallel( Processors.singleItemFunction( ( final Integer i ) -> i + 1 ), 4, executor );
+
+        final List<Result<Integer, Integer>> results = IterableUtils.asList( processor.process( prepare( 10 ) ) );
+
+        Assert.assertEquals( results.stream().map( Result::getOutput ).collect( Collectors.toList() ),
+                IntStream.range( 1, 11 ).boxed().collect( Collectors.toList() ) );
+    }
+
+    @Test
+    public void testHelpersProcessInTheRunOfTheCaller() {
+        final ExecutorService executor = Executors.newFixedThreadPool( 3 );
+        try {
+            final RunContext run = new RunContext();
+            final Processor<Integer, Integer, Integer> processor = Processors.parallel( Processors.singleItemFunction( ( final Integer i ) -> {
+                Assert.assertSame( RunContext.current(), run );
+                return i + 1;
+            } ), 4, executor );
+
+            final List<Result<Integer, Integer>> results = run.call( () -> IterableUtils.asList( processor.process( prepare( 20 ) ) ) );
+
+            Assert.assertTrue( results.stream().allMatch( Result::isSuccess ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test( expectedExceptions = StackOverflowError.class )
+    public void testVirtualMachineErrorOfHelperIsRethrown() {
+        final ExecutorService executor = Executors.newFixedThreadPool( 3 );
+        try {
+            final Thread caller = Thread.currentThread();
+            final Processor<Integer, Integer, Integer> processor = Processors.parallel( Processors.singleItemFunction( ( final Integer i ) -> {
+                sleep( 5 );
+                if ( Thread.currentThread() != caller ) {
+                    throw new StackOverflowError( "Expected failure" );
+                }
+                return i;
+            } ), 4, executor );
+
+            processor.process( prepare( 20 ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Result<Integer, Integer>> prepare( final int numItems ) {
+        return IntStream.range( 0, numItems ).mapToObj( i -> Result.success( i, i ) ).collect( Collectors.toList() );
+    }
+
+    private static void sleep( final long millis ) {
+        try {
+            Thread.sleep( millis );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.BatchJob;
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.result.ProcessingResultListener;
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.result.ResultStatistics;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class RebatchingProcessorTest {
+
+    @Test
+    public void testChunksAreCombined() {
+        final List<Integer> data = IntStream.range( 0, 200 ).boxed().collect( Collectors.toList() );
+        final List<Integer> batchSizes = Collections.synchronizedList( new ArrayList<>() );
+        final List<Integer> processed = Collections.synchronizedList( new ArrayList<>() );
+        final ConcurrentHashMap<Integer, Integer> listenerOutputs = new ConcurrentHashMap<>();
+
+        final ResultStatistics statistics = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( Processors.rebatched( Processors.retryableBatchedFunction( ( final List<Integer> list ) -> {
+                    batchSizes.add( list.size() );
+                    processed.addAll( list );
+                    return list.stream().map( i -> i * 2 ).collect( Collectors.toList() );
+                } ), 20, 1, TimeUnit.SECONDS ) )
+                .setProcessingBatchSize( 5 )
+                .setParallel( true )
+                .setNumParallelThreads( 8 )
+                .addListener( new ProcessingResultListener<Integer, Integer>() {
+                    @Override
+                    public void onProcessingResult( final Result<FetchedItem<Integer>, Integer> result ) {
+                        listenerOutputs.put( result.getInput().getValue(), result.getOutput() );
+                    }
+                } )
+                .build()
+                .run();
+
+        Assert.assertTrue( statistics.isAllSuccess() );
+        Assert.assertEquals( statistics.getProcessingCounts().getSuccessCount(), data.size() );
+        Assert.assertEquals( processed.stream().sorted().collect( Collectors.toList() ), data );
+        Assert.assertTrue( batchSizes.stream().anyMatch( size -> size > 5 ), "Chunks should have been combined: " + batchSizes );
+        Assert.assertEquals( listenerOutputs.size(), data.size() );
+        for ( final Integer i : data ) {
+            Assert.assertEquals( listenerOutputs.get( i ), Integer.valueOf( i * 2 ) );
+        }
+    }
+
+    @Test
+    public void testBatchIsProcessedAfterLingerTime() {
+        final Processor<String, Integer, Integer> processor = Processors.rebatched(
+                Processors.singleItemFunction( ( final Integer i ) -> i + 1 ), 100, 50, TimeUnit.MILLISECONDS );
+
+        final long start = System.nanoTime();
+        final List<Result<String, Integer>> results = IterableUtils.asList( processor.process( Arrays.asList(
+                Result.success( "item0", 1 ),
+                Result.success( "item1", 2 ) ) ) );
+
+        Assert.assertTrue( System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos( 50 ) );
+        Assert.assertEquals( results.stream().map( Result::getOutput ).collect( Collectors.toList() ), Arrays.asList( 2, 3 ) );
+    }
+
+    @Test
+    public void testResultsAreAttributedToTheirChunk() throws InterruptedException {
+        // the retrying processor returns the failed items last
+        final Processor<String, Integer, Integer> processor = Processors.rebatched( Processors.retryableBatchedFunction( ( final List<Integer> list ) -> {
+            if ( list.contains( 1 ) ) {
+                throw new IllegalArgumentException( "bad item" );
+            }
+            return list;
+        } ), 4, 10, TimeUnit.SECONDS );
+
+        final List<List<Result<String, Integer>>> otherResults = new ArrayList<>();
+        final Thread other = new Thread( () -> otherResults.add( IterableUtils.asList( processor.process( Arrays.asList(
+                Result.success( "item0", 1 ),
+                Result.success( "item1", 2 ) ) ) ) ) );
+        other.start();
+        while ( other.getState() != Thread.State.TIMED_WAITING ) {
+            Thread.sleep( 1 );
+        }
+        final List<Result<String, Integer>> results = IterableUtils.asList( processor.process( Arrays.asList(
+                Result.success( "item2", 3 ),
+                Result.success( "item3", 4 ) ) ) );
+        other.join();
+
+        Assert.assertEquals( results.stream().map( Result::getInput ).collect( Collectors.toList() ), Arrays.asList( "item2", "item3" ) );
+        Assert.assertTrue( results.stream().allMatch( Result::isSuccess ) );
+        final List<Result<String, Integer>> failedChunk = otherResults.get( 0 );
+        Assert.assertEquals( failedChunk.stream().map( Result::getInput ).collect( Collectors.toList() ), Arrays.asList( "item0", "item1" ) );
+        Assert.assertTrue( failedChunk.get( 0 ).isFailed() );
+        Assert.assertTrue( failedChunk.get( 1 ).isSuccess() );
+    }
+
+    @Test
+    public void testVirtualMachineErrorFailsTheOtherChunks() throws InterruptedException {
+        final Processor<String, Integer, Integer> processor = Processors.rebatched( iterable -> {
+            throw new StackOverflowError( "Expected failure" );
+        }, 4, 10, TimeUnit.SECONDS );
+
+        final List<List<Result<String, Integer>>> otherResults = new ArrayList<>();
+        final Thread other = new Thread( () -> otherResults.add( IterableUtils.asList( processor.process( Arrays.asList(
+                Result.success( "item0", 1 ),
+                Result.success( "item1", 2 ) ) ) ) ) );
+        other.start();
+        while ( other.getState() != Thread.State.TIMED_WAITING ) {
+            Thread.sleep( 1 );
+        }
+        try {
+            processor.process( Arrays.asList( Result.success( "item2", 3 ), Result.success( "item3", 4 ) ) );
+            Assert.fail( "StackOverflowError expected" );
+        } catch ( final StackOverflowError e ) {
+            // expected in the thread processing the batch
+        }
+        other.join( 5000 );
+
+        Assert.assertFalse( other.isAlive(), "Other chunk still waits for the failed batch" );
+        final List<Result<String, Integer>> failedChunk = otherResults.get( 0 );
+        Assert.assertEquals( failedChunk.stream().map( Result::getInput ).collect( Collectors.toList() ), Arrays.asList( "item0", "item1" ) );
+        Assert.assertTrue( failedChunk.stream().allMatch( Result::isFailed ) );
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ResultBatchTest {
+
+    private static List<Result<String, Integer>> results() {
+        return Arrays.asList(
+                Result.success( "item0", 1, Collections.singletonList( "warning" ) ),
+                Result.<String, Integer>failed( "item1", "fetch failed" ),
+                Result.success( "item2", 0 ),
+                Result.success( "item3", 3 ) );
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final List<Result<String, Integer>> results = results();
+        final ResultBatch<String, Integer> batch = ResultBatch.of( results );
+
+        Assert.assertSame( ResultBatch.of( batch ), batch );
+        Assert.assertEquals( batch.size(), results.size() );
+        Assert.assertEquals( batch.getNumSuccess(), 3 );
+        for ( int i = 0; i < results.size(); i++ ) {
+            assertSameResult( batch.get( i ), results.get( i ) );
+            Assert.assertSame( batch.get( i ), batch.get( i ) );
+        }
+    }
+
+    @Test
+    public void testColumnarOptIn() {
+        final SingleItemFunctionProcessor<String, Integer, Integer> plain = new SingleItemFunctionProcessor<>( i -> i + 1 );
+        final SingleItemFunctionProcessor<String, Integer, Integer> columnar = new SingleItemFunctionProcessor<>( i -> i + 1, true );
+
+        Assert.assertFalse( plain.process( results() ) instanceof ResultBatch );
+        final Iterable<Result<String, Integer>> processed = columnar.process( results() );
+        Assert.assertTrue( processed instanceof ResultBatch );
+        final List<Result<String, Integer>> expected = IterableUtils.asList( plain.process( results() ) );
+        final List<Result<String, Integer>> actual = IterableUtils.asList( processed );
+        Assert.assertEquals( actual.size(), expected.size() );
+        for ( int i = 0; i < expected.size(); i++ ) {
+            assertSameResult( actual.get( i ), expected.get( i ) );
+        }
+    }
+
+    @Test( expectedExceptions = IllegalArgumentException.class )
+    public void testColumnarRejectsOverriddenProcessItem() {
+        new SingleItemProcessor<String, Integer, Integer>( true ) {
+            @Override
+            protected Integer apply( final Integer input ) {
+                return input;
+            }
+
+            @Override
+            public Result<String, Integer> processItem( final Result<String, Integer> input ) {
+                return input;
+            }
+        };
+    }
+
+    @Test
+    public void testMapSuccessesLikeSingleItemProcessing() {
+        final ResultBatch<String, String> mapped = ResultBatch.of( results() ).mapSuccesses( i -> i == 3 ? null : "v" + 10 / i );
+
+        Assert.assertEquals( mapped.get( 0 ).getOutput(), "v10" );
+        Assert.assertTrue( IterableUtils.isEmpty( mapped.get( 0 ).getWarningMessages() ) );
+        Assert.assertTrue( mapped.get( 1 ).isFailed() );
+        Assert.assertEquals( IterableUtils.asList( mapped.get( 1 ).getFailureMessages() ), Arrays.asList( "fetch failed" ) );
+        Assert.assertTrue( mapped.get( 2 ).isFailed() );
+        Assert.assertTrue( mapped.get( 2 ).getThrowables().iterator().next() instanceof ArithmeticException );
+        Assert.assertTrue( mapped.get( 3 ).isFailed() );
+        Assert.assertTrue( mapped.get( 3 ).getThrowables().iterator().next() instanceof IllegalArgumentException );
+        Assert.assertEquals( mapped.getNumSuccess(), 1 );
+    }
+
+    private static void assertSameResult( final Result<String, Integer> actual, final Result<String, Integer> expected ) {
+        Assert.assertEquals( actual.getInput(), expected.getInput() );
+        Assert.assertEquals( actual.getOutput(), expected.getOutput() );
+        Assert.assertEquals( actual.isSuccess(), expected.isSuccess() );
+        Assert.assertEquals( actual.getAllMessages(), expected.getAllMessages() );
+        Assert.assertEquals( IterableUtils.asList( actual.getThrowables() ), IterableUtils.asList( expected.getThrowables() ) );
+    }
+}
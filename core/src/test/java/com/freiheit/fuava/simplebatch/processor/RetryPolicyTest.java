@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.processor;
+
+import com.freiheit.fuava.simplebatch.BatchJob;
+import com.freiheit.fuava.simplebatch.exceptions.AuthorizationException;
+import com.freiheit.fuava.simplebatch.exceptions.FetchFailedException;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.result.Result;
+import com.freiheit.fuava.simplebatch.util.IterableUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testTransientErrorIsRetried() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final RetryPolicy policy = RetryPolicy.builder().setMaxAttempts( 3 ).setBackoff( 1, 1, 1 ).build();
+
+        final String result = policy.call( () -> {
+            if ( calls.incrementAndGet() < 3 ) {
+                throw new IOException( "connection reset" );
+            }
+            return "ok";
+        } );
+
+        Assert.assertEquals( result, "ok" );
+        Assert.assertEquals( calls.get(), 3 );
+    }
+
+    @Test
+    public void testPermanentErrorIsNotRetried() {
+        final AtomicInteger calls = new AtomicInteger();
+        final RetryPolicy policy = RetryPolicy.builder()
+                .setBackoff( 1, 1, 1 )
+                .setTransientErrors( t -> t instanceof IOException )
+                .build();
+        try {
+            policy.call( () -> {
+                calls.incrementAndGet();
+                throw new IllegalArgumentException( "bad row" );
+            } );
+            Assert.fail( "Exception expected" );
+        } catch ( final Exception e ) {
+            Assert.assertTrue( e instanceof IllegalArgumentException );
+        }
+        Assert.assertEquals( calls.get(), 1 );
+    }
+
+    @Test
+    public void testRetryBudgetIsShared() {
+        final AtomicInteger calls = new AtomicInteger();
+        final RetryPolicy policy = RetryPolicy.builder().setMaxAttempts( 5 ).setBackoff( 1, 1, 1 ).setRetryBudget( 3 ).build();
+        for ( int i = 0; i < 3; i++ ) {
+            try {
+                policy.call( () -> {
+                    calls.incrementAndGet();
+                    throw new IOException( "backend down" );
+                } );
+                Assert.fail( "Exception expected" );
+            } catch ( final Exception e ) {
+                Assert.assertTrue( e instanceof IOException );
+            }
+        }
+        // 3 first attempts and the 3 retries of the budget
+        Assert.assertEquals( calls.get(), 6 );
+        Assert.assertEquals( policy.getRemainingRetries(), 0 );
+    }
+
+    @Test
+    public void testOnlyTransientErrorsAreRetriedByDefault() {
+        final RetryPolicy policy = RetryPolicy.builder().setBackoff( 1, 1, 1 ).build();
+        Assert.assertEquals( countCalls( policy, new IOException( "connection reset" ) ), 3 );
+        Assert.assertEquals( countCalls( policy, new UncheckedIOException( new IOException( "connection reset" ) ) ), 3 );
+        Assert.assertEquals( countCalls( policy, new TimeoutException( "no response" ) ), 3 );
+        Assert.assertEquals( countCalls( policy, new FetchFailedException( "unavailable", 503 ) ), 3 );
+        Assert.assertEquals( countCalls( policy, new FetchFailedException( "not found", 404 ) ), 1 );
+        Assert.assertEquals( countCalls( policy, new AuthorizationException( "not allowed" ) ), 1 );
+        Assert.assertEquals( countCalls( policy, new IllegalArgumentException( "bad row" ) ), 1 );
+    }
+
+    @Test
+    public void testRetryBudgetIsPerRun() {
+        final AtomicInteger calls = new AtomicInteger();
+        final RetryPolicy policy = RetryPolicy.builder().setMaxAttempts( 5 ).setBackoff( 1, 1, 1 ).setRetryBudget( 2 ).build();
+        final BatchJob<Integer, Integer> job = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( Arrays.asList( 1 ) ) )
+                .setProcessor( Processors.retryableBatchedFunction( items -> {
+                    calls.incrementAndGet();
+                    throw new UncheckedIOException( new IOException( "backend down" ) );
+                }, BatchRetryMode.SINGLE_ITEMS, policy ) )
+                .build();
+
+        for ( int run = 1; run <= 2; run++ ) {
+            calls.set( 0 );
+            Assert.assertFalse( job.run().isAllSuccess() );
+            // the first attempt and the 2 retries of the budget
+            Assert.assertEquals( calls.get(), 3, "Calls in run " + run );
+        }
+    }
+
+    private static int countCalls( final RetryPolicy policy, final Exception error ) {
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.call( () -> {
+                calls.incrementAndGet();
+                throw error;
+            } );
+            Assert.fail( "Exception expected" );
+        } catch ( final Exception e ) {
+            Assert.assertSame( e, error );
+        }
+        return calls.get();
+    }
+
+    @Test
+    public void testExponentialBackoff() {
+        final RetryPolicy policy = RetryPolicy.builder().setBackoff( 10, 50, 2 ).setJitter( 0 ).build();
+        Assert.assertEquals( policy.getBackoffMs( 1 ), 10 );
+        Assert.assertEquals( policy.getBackoffMs( 2 ), 20 );
+        Assert.assertEquals( policy.getBackoffMs( 3 ), 40 );
+        Assert.assertEquals( policy.getBackoffMs( 4 ), 50 );
+
+        final RetryPolicy jittered = RetryPolicy.builder().setBackoff( 100, 100, 2 ).setJitter( 0.5 ).build();
+        for ( int i = 0; i < 100; i++ ) {
+            final long backoffMs = jittered.getBackoffMs( 1 );
+            Assert.assertTrue( backoffMs >= 50 && backoffMs <= 100, "Backoff out of range: " + backoffMs );
+        }
+    }
+
+    @Test
+    public void testBatchIsRetriedBeforeItIsSplit() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Processor<Integer, Integer, Integer> processor = Processors.retryableBatchedFunction( items -> {
+            if ( calls.incrementAndGet() == 1 ) {
+                throw new UncheckedIOException( new IOException( "connection reset" ) );
+            }
+            return items;
+        }, BatchRetryMode.SINGLE_ITEMS, RetryPolicy.builder().setBackoff( 1, 1, 1 ).build() );
+
+        final List<Result<Integer, Integer>> results = IterableUtils.asList( processor.process(
+                Arrays.asList( Result.success( 1, 1 ), Result.success( 2, 2 ), Result.success( 3, 3 ) ) ) );
+
+        Assert.assertEquals( calls.get(), 2 );
+        Assert.assertEquals( results.size(), 3 );
+        Assert.assertTrue( results.stream().allMatch( Result::isSuccess ) );
+    }
+}
@@ -9,8 +9,10 @@ import org.testng.annotations.Test;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class RetryingProcessorTest {
   @Test
@@ -49,6 +51,35 @@ public class RetryingProcessorTest {
        Assert.assertEquals( result.stream().filter( Result::isSuccess ).map( Result::getOutput).collect( Collectors.toSet() ), CollectionUtils.asSet( 1, 3 ) );
   }
 
+  @Test
+  public void testBisectionFindsBadItemsWithFewCalls() {
+       final AtomicInteger calls = new AtomicInteger();
+       final int[] input = IntStream.range( 0, 64 ).toArray();
+       final List<Result<Integer, Integer>> result = IterableUtils.asList( new RetryingFunctionProcessor<Integer, Integer, Integer>( items -> {
+           calls.incrementAndGet();
+           if ( items.contains( 5 ) || items.contains( 40 ) ) {
+               throw new IllegalArgumentException();
+           }
+           return items;
+       }, BatchRetryMode.BISECTION ).process( prepare( input ) ) );
+
+       Assert.assertEquals( result.size(), 64 );
+       Assert.assertEquals( result.stream().filter( Result::isFailed ).map( Result::getInput ).collect( Collectors.toSet() ), CollectionUtils.asSet( 5, 40 ) );
+       Assert.assertEquals( result.stream().map( Result::getInput ).collect( Collectors.toList() ),
+               IntStream.of( input ).boxed().collect( Collectors.toList() ) );
+       // 1 + 2 * 2 * log2( 64 ) calls at most instead of 65 with single item retries
+       Assert.assertTrue( calls.get() <= 25, "Too many calls: " + calls.get() );
+  }
+
+  @Test
+  public void testBisectionFailAll() {
+       final List<Result<Integer, Integer>> result = IterableUtils.asList( new RetryingFunctionProcessor<Integer, Integer, Integer>( items -> {
+           throw new IllegalArgumentException();
+       }, BatchRetryMode.BISECTION ).process( prepare( 1, 2, 3, 4, 5 ) ) );
+       Assert.assertEquals( result.size(), 5 );
+       Assert.assertTrue( result.stream().allMatch( Result::isFailed ) );
+  }
+
   private List<Result<Integer, Integer>> execute( final Function<List<Integer>, List<Integer>> func, final int...input) {
       return IterableUtils.asList( new RetryingFunctionProcessor<Integer, Integer, Integer>( func )
               .process( prepare( input ) ) );
@@ -138,6 +138,40 @@ public class TimeLoggingProcessorTest {
         assertCountsItems( processor, counts, 2 );
     }
 
+    @Test
+    public void testProcessorChainFusedCounts() {
+        final TimeLoggingProcessor<String, String, String> processor =
+                wrap( new AddA().then( Processors.singleItemFunction( ( final String input ) -> {
+                    if ( Integer.parseInt( input.substring( 0, input.length() - 1 ) ) % 4 == 0 ) {
+                        throw new IllegalArgumentException( input );
+                    }
+                    return input;
+                } ) ).then( new AddB() ) );
+
+        final List<String> values = new ArrayList<>();
+        for ( int i = 0; i < 40; i++ ) {
+            values.add( String.valueOf( i ) );
+        }
+        final List<Result<String, String>> results = new ArrayList<>();
+        processor.process( data( values.toArray( new String[values.size()] ) ) ).forEach( results::add );
+
+        Assert.assertEquals( results.size(), 40 );
+        Assert.assertTrue( results.get( 0 ).isFailed() );
+        Assert.assertEquals( results.get( 1 ).getOutput(), "1ab" );
+        final Map<String, Counts> counts = processor.getCurrentCounts();
+        assertStageCounts( counts.get( "Stage 01" ), 40, 40, 0 );
+        assertStageCounts( counts.get( "Stage 02" ), 40, 30, 10 );
+        assertStageCounts( counts.get( "Stage 03" ), 40, 30, 10 );
+        assertStageCounts( counts.get( processor.getStageIdTotal() ), 40, 30, 10 );
+    }
+
+    private void assertStageCounts( final Counts counts, final long items, final long numSuccess, final long numFailed ) {
+        Assert.assertEquals( counts.getItems(), items );
+        Assert.assertEquals( counts.getNumSuccess(), numSuccess );
+        Assert.assertEquals( counts.getNumFailed(), numFailed );
+        Assert.assertTrue( counts.getDurationNanos() >= 0 );
+    }
+
     private void assertResults( final Iterable<Result<String, String>> results, final String... expected ) {
         int i = 0;
         for ( final Result<String, String> r : results ) {
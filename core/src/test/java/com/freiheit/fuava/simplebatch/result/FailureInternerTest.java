@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.result;
+
+import com.freiheit.fuava.simplebatch.util.RunContext;
+import org.slf4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FailureInternerTest {
+
+    /**
+     * Records the arguments of each error log call.
+     */
+    private static Logger recordingLogger( final List<Object[]> errors ) {
+        return (Logger) Proxy.newProxyInstance( Logger.class.getClassLoader(), new Class<?>[] { Logger.class }, ( proxy, method, args ) -> {
+            if ( method.getName().equals( "error" ) ) {
+                errors.add( args );
+            }
+            return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+        } );
+    }
+
+    private static List<Throwable> throwables( final int num, final String message ) {
+        final List<Throwable> result = new ArrayList<>();
+        for ( int i = 0; i < num; i++ ) {
+            result.add( new IllegalStateException( message ) );
+        }
+        return result;
+    }
+
+    @Test
+    public void testIdenticalThrowablesShareExemplar() {
+        final List<Object[]> errors = new ArrayList<>();
+        final Logger log = recordingLogger( errors );
+        final FailureInterner interner = new FailureInterner( true, 10, 2 );
+
+        final List<Throwable> interned = new ArrayList<>();
+        for ( final Throwable t : throwables( 100, "connection refused" ) ) {
+            interned.add( interner.intern( log, "item", t ) );
+        }
+        final Throwable other = interner.intern( log, "item", new IllegalStateException( "other" ) );
+
+        Assert.assertTrue( interned.stream().allMatch( t -> t == interned.get( 0 ) ) );
+        Assert.assertNotSame( other, interned.get( 0 ) );
+        Assert.assertEquals( interner.getOccurrences().get( interned.get( 0 ) ), Long.valueOf( 100 ) );
+        Assert.assertEquals( interner.getOccurrences().get( other ), Long.valueOf( 1 ) );
+        // two full stack traces, two repetitions and the powers of two 4, 8, 16, 32, 64
+        Assert.assertEquals( errors.size(), 2 + 2 + 5 );
+        Assert.assertEquals( errors.stream().filter( args -> args[args.length - 1] instanceof Throwable && args.length == 2 ).count(), 2 );
+    }
+
+    @Test
+    public void testRetainedExemplarsAreCapped() {
+        final List<Object[]> errors = new ArrayList<>();
+        final Logger log = recordingLogger( errors );
+        final FailureInterner interner = new FailureInterner( true, 1, 0 );
+        interner.intern( log, "item", new IllegalStateException( "first" ) );
+
+        // each further message is unique, they share the exemplar of their class
+        final Throwable t = new IllegalStateException( "second" );
+        Assert.assertSame( interner.intern( log, "item", t ), t );
+        for ( int i = 0; i < 98; i++ ) {
+            Assert.assertSame( interner.intern( log, "item", new IllegalStateException( "item " + i ) ), t );
+        }
+        final Throwable other = new IllegalArgumentException( "other" );
+        Assert.assertSame( interner.intern( log, "item", other ), other );
+
+        Assert.assertEquals( interner.getOccurrences().size(), 3 );
+        Assert.assertEquals( interner.getOccurrences().get( t ), Long.valueOf( 99 ) );
+        // three full stack traces and the powers of two 2, 4, 8, 16, 32, 64
+        Assert.assertEquals( errors.size(), 3 + 6 );
+        Assert.assertEquals( errors.stream().filter( args -> args[args.length - 1] instanceof Throwable && args.length == 2 ).count(), 3 );
+    }
+
+    @Test
+    public void testDisabled() {
+        final List<Object[]> errors = new ArrayList<>();
+        final FailureInterner interner = new FailureInterner( false, 10, 0 );
+        for ( final Throwable t : throwables( 3, "connection refused" ) ) {
+            Assert.assertSame( interner.intern( recordingLogger( errors ), "item", t ), t );
+        }
+        Assert.assertEquals( errors.size(), 3 );
+        Assert.assertTrue( interner.getOccurrences().isEmpty() );
+    }
+
+    private static List<Result<String, String>> failedResults( final List<Throwable> throwables ) {
+        final List<Result<String, String>> results = new ArrayList<>();
+        int i = 0;
+        for ( final Throwable t : throwables ) {
+            results.add( Result.failed( "item" + i++, t ) );
+        }
+        return results;
+    }
+
+    @Test
+    public void testFailedResultsKeepTheirStatus() {
+        final List<Result<String, String>> results = new RunContext().call( () -> failedResults( throwables( 5, "backend down" ) ) );
+        Assert.assertTrue( results.stream().allMatch( Result::isFailed ) );
+        final Throwable exemplar = results.get( 0 ).getThrowables().iterator().next();
+        Assert.assertTrue( results.stream().allMatch( r -> r.getThrowables().iterator().next() == exemplar ) );
+        Assert.assertEquals( results.get( 4 ).getInput(), "item4" );
+    }
+
+    @Test
+    public void testEachRunHasItsOwnInterner() {
+        final List<Throwable> throwables = throwables( 4, "backend down" );
+        final RunContext first = new RunContext();
+        final RunContext second = new RunContext();
+        final FailureInterner firstInterner = first.call( FailureInterner::current );
+
+        final List<Result<String, String>> firstResults = first.call( () -> failedResults( throwables.subList( 0, 2 ) ) );
+        final List<Result<String, String>> secondResults = second.call( () -> failedResults( throwables.subList( 2, 4 ) ) );
+
+        Assert.assertSame( first.call( FailureInterner::current ), firstInterner );
+        Assert.assertNotSame( second.call( FailureInterner::current ), firstInterner );
+        Assert.assertSame( firstResults.get( 1 ).getThrowables().iterator().next(), throwables.get( 0 ) );
+        Assert.assertSame( secondResults.get( 1 ).getThrowables().iterator().next(), throwables.get( 2 ) );
+        Assert.assertEquals( firstInterner.getOccurrences().get( throwables.get( 0 ) ), Long.valueOf( 2 ) );
+    }
+
+    @Test
+    public void testNoInterningOutsideOfARun() {
+        Assert.assertNull( FailureInterner.current() );
+        final List<Throwable> throwables = throwables( 2, "backend down" );
+        final List<Result<String, String>> results = failedResults( throwables );
+        Assert.assertSame( results.get( 1 ).getThrowables().iterator().next(), throwables.get( 1 ) );
+    }
+}
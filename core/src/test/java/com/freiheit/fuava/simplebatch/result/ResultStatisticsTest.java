@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 freiheit.com technologies gmbh
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.freiheit.fuava.simplebatch.result;
+
+import com.freiheit.fuava.simplebatch.BatchJob;
+import com.freiheit.fuava.simplebatch.fetch.FetchedItem;
+import com.freiheit.fuava.simplebatch.fetch.Fetchers;
+import com.freiheit.fuava.simplebatch.processor.Processors;
+import com.freiheit.fuava.simplebatch.processor.TimeLoggingProcessor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ResultStatisticsTest {
+
+    @Test
+    public void testConcurrentResultsAreCounted() throws InterruptedException {
+        final ResultStatistics.Builder<Integer, Integer> builder = ResultStatistics.builder();
+        final FetchedItem<Integer> item = FetchedItem.of( 1, 0 );
+        final int numThreads = 8;
+        final int numResults = 20000;
+        final List<Thread> threads = new ArrayList<>();
+        for ( int t = 0; t < numThreads; t++ ) {
+            threads.add( new Thread( () -> {
+                for ( int i = 0; i < numResults; i++ ) {
+                    builder.onProcessingResult( i % 4 == 0
+                        ? Result.failed( item, "failed" )
+                        : Result.success( item, i ) );
+                }
+            } ) );
+        }
+        threads.forEach( Thread::start );
+        for ( final Thread t : threads ) {
+            t.join();
+        }
+
+        final Counts counts = builder.build().getProcessingCounts();
+        Assert.assertEquals( counts.getSuccessCount(), numThreads * numResults * 3 / 4 );
+        Assert.assertEquals( counts.getErrorCount(), numThreads * numResults / 4 );
+        Assert.assertEquals( counts.getFailureCategories(), Collections.singletonMap( Counts.NO_THROWABLE_CATEGORY, (long) numThreads * numResults / 4 ) );
+    }
+
+    @Test
+    public void testFailureCategoriesAndMerge() {
+        final Counts.Builder builder = Counts.builder();
+        builder.add( Result.failed( "a", new IllegalStateException( "test" ) ) );
+        builder.add( Result.failed( "b", new IllegalStateException( "test" ) ) );
+        builder.add( Result.failed( "c", new IllegalArgumentException( "test" ) ) );
+        builder.add( Result.success( "d", "d" ) );
+        final Counts counts = builder.build();
+
+        Assert.assertEquals( counts.getFailureCategories().get( IllegalStateException.class.getName() ), Long.valueOf( 2 ) );
+        Assert.assertEquals( counts.getFailureCategories().get( IllegalArgumentException.class.getName() ), Long.valueOf( 1 ) );
+
+        final Counts merged = counts.plus( counts );
+        Assert.assertEquals( merged.getSuccessCount(), 2 );
+        Assert.assertEquals( merged.getErrorCount(), 6 );
+        Assert.assertEquals( merged.getFailureCategories().get( IllegalStateException.class.getName() ), Long.valueOf( 4 ) );
+    }
+
+    @Test
+    public void testLargeCountsAreCapped() {
+        final Counts counts = new Counts( Integer.MAX_VALUE + 1L, 0 );
+        Assert.assertEquals( counts.getSuccessCount(), Integer.MAX_VALUE + 1L );
+        Assert.assertEquals( counts.getSuccess(), Integer.MAX_VALUE );
+    }
+
+    @Test
+    public void testStageCounts() {
+        final List<Integer> data = IntStream.range( 0, 10 ).boxed().collect( Collectors.toList() );
+        final BatchJob<Integer, Integer> job = BatchJob.<Integer, Integer>builder()
+                .setFetcher( Fetchers.iterable( data ) )
+                .setProcessor( TimeLoggingProcessor.wrap( Processors.<FetchedItem<Integer>, Integer, Integer>singleItemFunction( i -> i + 1 )
+                        .then( Processors.singleItemFunction( ( final Integer i ) -> {
+                            if ( i % 5 == 0 ) {
+                                throw new IllegalArgumentException( "bad item" );
+                            }
+                            return i;
+                        } ) ) ) )
+                .build();
+
+        for ( int run = 0; run < 2; run++ ) {
+            // the second run reports only its own counts
+            assertStageCounts( job.run() );
+        }
+    }
+
+    private static void assertStageCounts( final ResultStatistics statistics ) {
+        final Map<String, Counts> stageCounts = statistics.getStageCounts();
+        Assert.assertEquals( stageCounts.size(), 2 );
+        final List<Counts> counts = new ArrayList<>( stageCounts.values() );
+        Assert.assertEquals( Arrays.asList( counts.get( 0 ).getSuccessCount(), counts.get( 0 ).getErrorCount() ), Arrays.asList( 10L, 0L ) );
+        Assert.assertEquals( Arrays.asList( counts.get( 1 ).getSuccessCount(), counts.get( 1 ).getErrorCount() ), Arrays.asList( 8L, 2L ) );
+        Assert.assertEquals( statistics.getProcessingCounts().getFailureCategories(),
+                Collections.singletonMap( IllegalArgumentException.class.getName(), 2L ) );
+    }
+}
@@ -5,6 +5,7 @@ import org.testng.annotations.Test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.testng.Assert.assertTrue;
@@ -80,4 +81,32 @@ public class IterableUtilsTest {
                 Arrays.asList( 7, 8, 9 )
         ) );
     }
+
+    @Test
+    public void testPartitionWithChangingBatchSize() {
+        final List<Integer> items = Arrays.asList( 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 );
+        final Iterator<Integer> sizes = Arrays.asList( 1, 2, 0, 4, 5 ).iterator();
+        final Iterable<List<Integer>> batches = IterableUtils.partition( items, sizes::next );
+        assertEquals( IterableUtils.asList( batches ), Arrays.asList(
+                Collections.singletonList( 1 ),
+                Arrays.asList( 2, 3 ),
+                Collections.singletonList( 4 ),
+                Arrays.asList( 5, 6, 7, 8 ),
+                Arrays.asList( 9, 10 )
+        ) );
+    }
+
+    @Test
+    public void testPartitionByLane() {
+        final List<Integer> items = Arrays.asList( 1, 2, 3, 4, 5, 6, 7, 8, 9 );
+        final Iterable<List<Integer>> batches = IterableUtils.partitionByLane( items, () -> 2, 3, i -> i % 3 );
+        assertEquals( IterableUtils.asList( batches ), Arrays.asList(
+                Arrays.asList( 1, 4 ),
+                Arrays.asList( 2, 5 ),
+                Arrays.asList( 3, 6 ),
+                Collections.singletonList( 9 ),
+                Collections.singletonList( 7 ),
+                Collections.singletonList( 8 )
+        ) );
+    }
 }